@@ -210,6 +210,14 @@ resource "mongodbatlas_custom_db_role" "arena_shared_role" {
       collection_name = "scenario_config"
       database_name   = var.common_database_name
     }
+    resources {
+      collection_name = "exercise_history"
+      database_name   = var.common_database_name
+    }
+    resources {
+      collection_name = "change_stream_tokens"
+      database_name   = var.common_database_name
+    }
   }
   actions {
     action = "LIST_COLLECTIONS"
@@ -239,6 +247,14 @@ resource "mongodbatlas_custom_db_role" "arena_shared_role" {
       collection_name = "results_health"
       database_name   = var.common_database_name
     }
+    resources {
+      collection_name = "exercise_history"
+      database_name   = var.common_database_name
+    }
+    resources {
+      collection_name = "change_stream_tokens"
+      database_name   = var.common_database_name
+    }
   }
   actions {
     action = "INSERT"
@@ -250,13 +266,40 @@ resource "mongodbatlas_custom_db_role" "arena_shared_role" {
       collection_name = "results_health"
       database_name   = var.common_database_name
     }
+    resources {
+      collection_name = "exercise_history"
+      database_name   = var.common_database_name
+    }
+    resources {
+      collection_name = "change_stream_tokens"
+      database_name   = var.common_database_name
+    }
   }
   actions {
     action = "UPDATE"
+    resources {
+      collection_name = "results"
+      database_name   = var.common_database_name
+    }
     resources {
       collection_name = "results_health"
       database_name   = var.common_database_name
     }
+    resources {
+      collection_name = "exercise_history"
+      database_name   = var.common_database_name
+    }
+    resources {
+      collection_name = "change_stream_tokens"
+      database_name   = var.common_database_name
+    }
+  }
+  actions {
+    action = "REMOVE"
+    resources {
+      collection_name = "change_stream_tokens"
+      database_name   = var.common_database_name
+    }
   }
 }
 
@@ -93,6 +93,10 @@ resource "helm_release" "user_openvscode" {
           name  = "LOG_PATH"
           value = "/home/workspace/mongodb-airbnb-workshop/server/results"
         },
+        {
+          name  = "LAB_PATH"
+          value = "/home/workspace/mongodb-airbnb-workshop/server/src/lab"
+        },
         {
           name  = "WORKSHOP_USER"
           value = "/app"
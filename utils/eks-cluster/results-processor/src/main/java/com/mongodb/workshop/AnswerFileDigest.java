@@ -0,0 +1,53 @@
+package com.mongodb.workshop;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Content hash of the answer files an exercise is graded on
+ */
+final class AnswerFileDigest {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnswerFileDigest.class);
+
+    private AnswerFileDigest() {
+    }
+
+    /**
+     * Hashes the given files (SHA-256 over name and content, in list order)
+     * @param labPath Directory holding the participant's lab files
+     * @param files File names relative to the lab directory
+     * @return Hex digest, or null when none of the files exist or they cannot be read
+     */
+    static String of(Path labPath, List<String> files) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            boolean found = false;
+            for (String file : files) {
+                Path path = labPath.resolve(file);
+                if (!Files.isRegularFile(path)) {
+                    continue;
+                }
+                digest.update(file.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(Files.readAllBytes(path));
+                found = true;
+            }
+            return found ? HexFormat.of().formatHex(digest.digest()) : null;
+        } catch (IOException e) {
+            logger.warn("Failed to hash answer files {}: {}", files, e.getMessage());
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.mongodb.workshop;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a participant database for DDL events on listingsAndReviews
+ *
+ * Index exercises only depend on database state, so index and collection changes are
+ * mapped to the exercises they affect and handed to a listener. The change stream is
+ * opened on the database (not the collection) so dropping or renaming the collection
+ * does not invalidate it. Dropping the whole database still does: the stream is then
+ * reopened from now, without the token of the invalidate event (which cannot be resumed
+ * after), and every index exercise is re-graded once. Resume tokens are persisted after every event (and periodically
+ * while idle) so a restart continues where the previous process stopped.
+ */
+class ChangeStreamWatcher {
+
+    /**
+     * Receives the exercises affected by a database change
+     */
+    interface Listener {
+        void onChange(String description, Set<String> exercises);
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeStreamWatcher.class);
+
+    static final String WATCHED_COLLECTION = "listingsAndReviews";
+
+    // Server error code when the resume token is no longer in the oplog
+    private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+    // Server error code when the resume token cannot be resumed after (an invalidate event)
+    private static final int INVALID_RESUME_TOKEN = 260;
+
+    private static final long MAX_AWAIT_SECONDS = 5;
+    private static final long RETRY_DELAY_MILLIS = 10000;
+    // Idle streams still persist their position so the token does not fall out of the oplog
+    private static final long TOKEN_SAVE_INTERVAL_MILLIS = 60000;
+
+    private static final List<String> DDL_OPERATIONS = List.of(
+        "createIndexes", "dropIndexes",
+        "createSearchIndexes", "updateSearchIndex", "dropSearchIndex",
+        "create", "drop", "rename", "modify", "shardCollection");
+
+    private static final Set<String> INDEX_EXERCISES = Set.of("crud-index", "search-index", "vector-search-index");
+    private static final Set<String> SEARCH_INDEX_EXERCISES = Set.of("search-index", "vector-search-index");
+
+    private final MongoDatabase participantDatabase;
+    private final MongoCollection<Document> tokenCollection;
+    private final String user;
+    private final Executor executor;
+    private final Listener listener;
+
+    private volatile boolean running;
+
+    /**
+     * @param participantDatabase Database of the participant to watch
+     * @param tokenCollection Collection in arena_shared holding one resume token per user
+     * @param user Participant name, used as the token document id
+     * @param executor Executor running the watch loop
+     * @param listener Receives the affected exercises
+     */
+    ChangeStreamWatcher(MongoDatabase participantDatabase, MongoCollection<Document> tokenCollection, String user,
+                        Executor executor, Listener listener) {
+        this.participantDatabase = participantDatabase;
+        this.tokenCollection = tokenCollection;
+        this.user = user;
+        this.executor = executor;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts watching in the background
+     */
+    void start() {
+        running = true;
+        executor.execute(this::watchLoop);
+    }
+
+    /**
+     * Stops watching; the loop exits within the await time of the cursor
+     */
+    void stop() {
+        running = false;
+    }
+
+    /**
+     * Reopens the change stream after errors until the watcher is stopped
+     */
+    private void watchLoop() {
+        logger.info("Watching {}.{} for index and collection changes", user, WATCHED_COLLECTION);
+        while (running) {
+            try {
+                watch(loadResumeToken());
+            } catch (MongoCommandException e) {
+                if (e.getErrorCode() == CHANGE_STREAM_HISTORY_LOST || e.getErrorCode() == INVALID_RESUME_TOKEN) {
+                    // Events were missed: start over and re-grade every index exercise once
+                    logger.warn("Resume token for {} cannot be resumed ({}) - restarting change stream from now", user, e.getErrorCodeName());
+                    clearResumeToken();
+                    listener.onChange("change stream restarted", INDEX_EXERCISES);
+                    continue;
+                }
+                logger.warn("Change stream for {} failed: {} - retrying in {}s", user, e.getMessage(), RETRY_DELAY_MILLIS / 1000);
+                pause();
+            } catch (Exception e) {
+                if (!running) {
+                    break;
+                }
+                logger.warn("Change stream for {} failed: {} - retrying in {}s", user, e.getMessage(), RETRY_DELAY_MILLIS / 1000);
+                pause();
+            }
+        }
+        logger.info("Stopped watching {}.{}", user, WATCHED_COLLECTION);
+    }
+
+    /**
+     * Consumes the change stream until the watcher is stopped
+     */
+    private void watch(BsonDocument resumeToken) {
+        // Only DDL events (and the invalidate event ending the stream) are sent back; document writes
+        // by the CRUD exercises are filtered on the server
+        ChangeStreamIterable<Document> stream = participantDatabase.watch(List.of(Aggregates.match(Filters.or(
+                Filters.and(
+                    Filters.in("operationType", DDL_OPERATIONS),
+                    Filters.or(Filters.eq("ns.coll", WATCHED_COLLECTION), Filters.eq("to.coll", WATCHED_COLLECTION))),
+                Filters.eq("operationType", "invalidate")))))
+            .showExpandedEvents(true)
+            .maxAwaitTime(MAX_AWAIT_SECONDS, TimeUnit.SECONDS);
+        if (resumeToken != null) {
+            stream = stream.resumeAfter(resumeToken);
+        }
+
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = stream.cursor()) {
+            long lastTokenSave = System.currentTimeMillis();
+            while (running) {
+                ChangeStreamDocument<Document> event = cursor.tryNext();
+                if (event == null) {
+                    if (System.currentTimeMillis() - lastTokenSave >= TOKEN_SAVE_INTERVAL_MILLIS) {
+                        saveResumeToken(cursor.getResumeToken());
+                        lastTokenSave = System.currentTimeMillis();
+                    }
+                    continue;
+                }
+
+                Set<String> exercises = affectedExercises(event.getOperationTypeString());
+                if (!exercises.isEmpty()) {
+                    String description = String.format("change stream: %s on %s", event.getOperationTypeString(), WATCHED_COLLECTION);
+                    logger.info("{} in database {} affects {}", description, user, exercises);
+                    listener.onChange(description, exercises);
+                }
+                if ("invalidate".equals(event.getOperationTypeString())) {
+                    // The cursor is closed and its token cannot be resumed after: reopen from now
+                    logger.warn("Change stream for {} invalidated - restarting change stream from now", user);
+                    clearResumeToken();
+                    return;
+                }
+                saveResumeToken(event.getResumeToken());
+                lastTokenSave = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * Maps a change event type to the exercises it can change the outcome of
+     */
+    static Set<String> affectedExercises(String operationType) {
+        if (operationType == null) {
+            return Set.of();
+        }
+        switch (operationType) {
+            case "createIndexes":
+            case "dropIndexes":
+                return Set.of("crud-index");
+            case "createSearchIndexes":
+            case "updateSearchIndex":
+            case "dropSearchIndex":
+                return SEARCH_INDEX_EXERCISES;
+            case "create":
+            case "drop":
+            case "rename":
+            case "modify":
+            case "shardCollection":
+            case "invalidate":
+                return INDEX_EXERCISES;
+            default:
+                // Document changes (insert, update, delete...) do not affect index exercises
+                return Set.of();
+        }
+    }
+
+    private BsonDocument loadResumeToken() {
+        try {
+            Document tokenDoc = tokenCollection.find(Filters.eq("_id", user)).first();
+            if (tokenDoc != null) {
+                Document token = tokenDoc.get("resume_token", Document.class);
+                return token != null ? token.toBsonDocument() : null;
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to load resume token for {}: {}", user, e.getMessage());
+        }
+        return null;
+    }
+
+    private void saveResumeToken(BsonDocument resumeToken) {
+        if (resumeToken == null) {
+            return;
+        }
+        try {
+            tokenCollection.replaceOne(Filters.eq("_id", user),
+                new Document("_id", user).append("resume_token", resumeToken).append("updated_at", new Date()),
+                new ReplaceOptions().upsert(true));
+        } catch (Exception e) {
+            logger.warn("Failed to save resume token for {}: {}", user, e.getMessage());
+        }
+    }
+
+    private void clearResumeToken() {
+        try {
+            tokenCollection.deleteOne(Filters.eq("_id", user));
+        } catch (Exception e) {
+            logger.warn("Failed to clear resume token for {}: {}", user, e.getMessage());
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(RETRY_DELAY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
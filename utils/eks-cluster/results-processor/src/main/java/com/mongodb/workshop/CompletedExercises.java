@@ -0,0 +1,67 @@
+package com.mongodb.workshop;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Exercises a participant has passed, read from the results collection once per run
+ *
+ * The results collection stays the only record of passed exercises: deleting a result re-opens
+ * the exercise on the next run, and results stored by other writers (the portal) count like
+ * the processor's own. The names are read with a query covered by the unique (username, name)
+ * index and kept in memory for the rest of the run.
+ */
+class CompletedExercises {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompletedExercises.class);
+
+    private final Set<String> exercises;
+
+    private CompletedExercises(Set<String> exercises) {
+        this.exercises = exercises;
+    }
+
+    /**
+     * Loads the completed exercises of a user (none if the read fails, so every exercise is graded)
+     * @param results Results collection, one document per user and passed exercise
+     */
+    static CompletedExercises load(MongoCollection<Document> results, String user) {
+        Set<String> exercises = new TreeSet<>();
+        try {
+            // Only name is projected, so the (username, name) index answers the query alone
+            for (Document result : results.find(Filters.eq("username", user))
+                    .projection(Projections.fields(Projections.include("name"), Projections.excludeId()))) {
+                String name = result.getString("name");
+                if (name != null) {
+                    exercises.add(name);
+                }
+            }
+            logger.info("Found {} completed tests for user {}: {}", exercises.size(), user, exercises);
+        } catch (Exception e) {
+            logger.error("Failed to get completed tests for user {}", user, e);
+            // Empty state on error - will run all tests
+        }
+        return new CompletedExercises(exercises);
+    }
+
+    boolean contains(String exercise) {
+        return exercises.contains(exercise);
+    }
+
+    int size() {
+        return exercises.size();
+    }
+
+    /**
+     * Adds exercises whose results the run stored
+     */
+    void add(Collection<String> passed) {
+        exercises.addAll(passed);
+    }
+}
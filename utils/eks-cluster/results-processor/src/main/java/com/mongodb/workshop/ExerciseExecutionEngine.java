@@ -0,0 +1,305 @@
+package com.mongodb.workshop;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Concurrent execution engine for exercise tests
+ *
+ * Fans out independent exercises to the processor's executor, bounded by a concurrency
+ * limit, and merges their results.
+ * Exercises that mutate listingsAndReviews can be kept in a single serial lane so
+ * they never interfere with each other.
+ * Load exercises start after every other exercise of the run has finished and run one
+ * at a time, so their measurements are not skewed by concurrent grading traffic.
+ *
+ * Exercises are started in the order they are given (the concurrency permits are fair),
+ * and each result is handed to a listener as soon as it is known. Every run has its own
+ * permits, so concurrent runs (one per participant in multi-tenant mode) never wait on
+ * each other's exercises.
+ *
+ * Exercises are scheduled along the prerequisite graph: each one starts as soon as its
+ * prerequisites have passed, and is skipped with a derived failure reason as soon as one
+ * of them fails.
+ *
+ * Every exercise runs as a child task scoped to its own deadline, which is never later
+ * than the deadline of the whole run. A child that outlives its deadline is cancelled
+ * (interrupting in-flight HTTP and MongoDB calls) and recorded as a timeout failure.
+ */
+class ExerciseExecutionEngine {
+
+    /**
+     * Executes a single exercise and must honour the given deadline
+     */
+    interface ExerciseRunner {
+        ExerciseResult run(String exercise, Instant deadline);
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(ExerciseExecutionEngine.class);
+
+    // Exercises that write to listingsAndReviews (insert, update, push, delete)
+    static final Set<String> MUTATING_EXERCISES = Set.of("crud-5", "crud-6", "crud-7", "crud-8");
+
+    private final ExecutorService executor;
+    private final int concurrency;
+    private final boolean serializeMutatingExercises;
+
+    /**
+     * @param executor Executor owned by the processor (one virtual thread per task)
+     * @param concurrency Maximum number of exercises of one run executing at the same time
+     * @param serializeMutatingExercises Whether crud-5 to crud-8 share a single serial lane
+     */
+    ExerciseExecutionEngine(ExecutorService executor, int concurrency, boolean serializeMutatingExercises) {
+        this.executor = executor;
+        this.concurrency = Math.max(1, concurrency);
+        this.serializeMutatingExercises = serializeMutatingExercises;
+
+        logger.info("Exercise execution engine started (concurrency per run: {}, serialize mutating exercises: {})",
+            this.concurrency, this.serializeMutatingExercises);
+    }
+
+    /**
+     * Executes the given exercises and returns their results keyed by exercise name, in input order
+     * @param exercises Exercise names to execute
+     * @param graph Prerequisite graph used to order and prune the exercises
+     * @param knownResults Outcomes of prerequisites that are not executed in this run
+     *                     (already completed exercises, the service availability check)
+     * @param runner Executes a single exercise within its deadline
+     * @param exerciseTimeout Deadline budget for each exercise
+     * @param runTimeout Deadline budget for the whole run
+     * @param onResult Called with each exercise result as soon as it completes
+     */
+    Map<String, ExerciseResult> execute(List<String> exercises, ExerciseGraph graph, Map<String, ExerciseResult> knownResults,
+                                        ExerciseRunner runner, Function<String, Duration> exerciseTimeout, Duration runTimeout,
+                                        BiConsumer<String, ExerciseResult> onResult) {
+        RunContext run = new RunContext(new LinkedHashSet<>(exercises), graph, knownResults, runner, exerciseTimeout,
+            runTimeout, Instant.now().plus(runTimeout), onResult, new Semaphore(concurrency, true));
+
+        // Load exercises last, so they can wait for everything else
+        for (String exercise : exercises) {
+            if (!graph.isLoadExercise(exercise)) {
+                schedule(exercise, run, new HashSet<>());
+            }
+        }
+        for (String exercise : exercises) {
+            if (graph.isLoadExercise(exercise)) {
+                schedule(exercise, run, new HashSet<>());
+            }
+        }
+
+        try {
+            CompletableFuture.allOf(run.futures.values().toArray(new CompletableFuture<?>[0])).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while waiting for exercise tests - cancelling remaining tests");
+            run.futures.values().forEach(f -> f.cancel(true));
+        } catch (ExecutionException e) {
+            logger.error("Unexpected error in exercise worker", e.getCause());
+        }
+
+        // Merge results back in input order
+        Map<String, ExerciseResult> orderedResults = new LinkedHashMap<>();
+        for (String exercise : exercises) {
+            CompletableFuture<ExerciseResult> future = run.futures.get(exercise);
+            if (future != null && future.isDone() && !future.isCompletedExceptionally()) {
+                orderedResults.put(exercise, future.join());
+            }
+        }
+        return orderedResults;
+    }
+
+    /**
+     * Creates the future for an exercise after the futures of its prerequisites
+     * Prerequisites that are scheduled in this run are created first (depth-first)
+     */
+    private CompletableFuture<ExerciseResult> schedule(String exercise, RunContext run, Set<String> visiting) {
+        CompletableFuture<ExerciseResult> existing = run.futures.get(exercise);
+        if (existing != null) {
+            return existing;
+        }
+        visiting.add(exercise);
+
+        // Prerequisites executed in this run gate the start; the others are already decided
+        Map<String, CompletableFuture<ExerciseResult>> prerequisiteFutures = new LinkedHashMap<>();
+        for (String prerequisite : run.graph.getPrerequisites(exercise)) {
+            if (visiting.contains(prerequisite)) {
+                logger.warn("Ignoring cyclic prerequisite {} of exercise {}", prerequisite, exercise);
+                continue;
+            }
+            if (run.scheduled.contains(prerequisite)) {
+                prerequisiteFutures.put(prerequisite, schedule(prerequisite, run, visiting));
+            } else if (run.knownResults.containsKey(prerequisite)) {
+                prerequisiteFutures.put(prerequisite, CompletableFuture.completedFuture(run.knownResults.get(prerequisite)));
+            }
+        }
+        visiting.remove(exercise);
+
+        // Mutating exercises additionally wait for the previous one in their lane (ordering only)
+        List<CompletableFuture<?>> gates = new ArrayList<>(prerequisiteFutures.values());
+        if (serializeMutatingExercises && MUTATING_EXERCISES.contains(exercise)) {
+            if (run.laneTail != null) {
+                gates.add(run.laneTail);
+            }
+        }
+        if (run.graph.isLoadExercise(exercise)) {
+            for (Map.Entry<String, CompletableFuture<ExerciseResult>> scheduled : run.futures.entrySet()) {
+                if (!run.graph.isLoadExercise(scheduled.getKey())) {
+                    gates.add(scheduled.getValue());
+                }
+            }
+            if (run.loadTail != null) {
+                gates.add(run.loadTail);
+            }
+        }
+
+        CompletableFuture<ExerciseResult> future = CompletableFuture.allOf(gates.toArray(new CompletableFuture<?>[0]))
+            .thenApplyAsync(ignored -> {
+                ExerciseResult result;
+                String skipReason = findFailedPrerequisite(prerequisiteFutures);
+                if (skipReason != null) {
+                    logger.info("Skipping exercise {}: {}", exercise, skipReason);
+                    result = ExerciseResult.inconclusive(skipReason);
+                } else {
+                    result = runWithPermit(exercise, run);
+                }
+                notifyResult(exercise, result, run.onResult);
+                return result;
+            }, executor);
+
+        if (serializeMutatingExercises && MUTATING_EXERCISES.contains(exercise)) {
+            run.laneTail = future;
+        }
+        if (run.graph.isLoadExercise(exercise)) {
+            run.loadTail = future;
+        }
+        run.futures.put(exercise, future);
+        return future;
+    }
+
+    /**
+     * Hands a result to the listener, never letting a listener failure affect the run
+     */
+    private void notifyResult(String exercise, ExerciseResult result, BiConsumer<String, ExerciseResult> onResult) {
+        try {
+            onResult.accept(exercise, result);
+        } catch (Exception e) {
+            logger.warn("Result listener failed for exercise {}: {}", exercise, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the derived failure reason for the first prerequisite that did not pass, or null
+     */
+    private String findFailedPrerequisite(Map<String, CompletableFuture<ExerciseResult>> prerequisiteFutures) {
+        for (Map.Entry<String, CompletableFuture<ExerciseResult>> entry : prerequisiteFutures.entrySet()) {
+            ExerciseResult result = entry.getValue().join();
+            if (result.isPassed()) {
+                continue;
+            }
+            if (ExerciseGraph.SERVICE.equals(entry.getKey())) {
+                return result.getFailureReason();
+            }
+            return String.format("Skipped because prerequisite '%s' has not passed - complete %s first", entry.getKey(), entry.getKey());
+        }
+        return null;
+    }
+
+    /**
+     * Waits for a concurrency permit, then runs the exercise within its deadline
+     */
+    private ExerciseResult runWithPermit(String exercise, RunContext run) {
+        try {
+            run.permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ExerciseResult.inconclusive("Exercise execution interrupted");
+        }
+        try {
+            return runWithinDeadline(exercise, run.runner, run.exerciseTimeout.apply(exercise), run.runTimeout, run.runDeadline);
+        } finally {
+            run.permits.release();
+        }
+    }
+
+    /**
+     * Runs a single exercise as a child task bounded by the earlier of its own and the run deadline
+     * The child never outlives this call: it is cancelled on timeout and when the caller is interrupted
+     */
+    private ExerciseResult runWithinDeadline(String exercise, ExerciseRunner runner, Duration exerciseTimeout,
+                                             Duration runTimeout, Instant runDeadline) {
+        Instant now = Instant.now();
+        if (!now.isBefore(runDeadline)) {
+            String failureReason = String.format("Run deadline of %ds exceeded before the exercise could start - other exercises took too long, it will be retried on the next run", runTimeout.toSeconds());
+            logger.warn("Exercise {} skipped: {}", exercise, failureReason);
+            return ExerciseResult.inconclusive(failureReason);
+        }
+
+        Instant exerciseDeadline = now.plus(exerciseTimeout);
+        boolean limitedByRun = runDeadline.isBefore(exerciseDeadline);
+        Instant deadline = limitedByRun ? runDeadline : exerciseDeadline;
+
+        Future<ExerciseResult> child = executor.submit(() -> runner.run(exercise, deadline));
+        try {
+            return child.get(Math.max(1, Duration.between(Instant.now(), deadline).toMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            child.cancel(true);
+            String failureReason = limitedByRun
+                ? String.format("Exercise timed out - the run deadline of %ds was reached while it was still executing, check for slow or hanging endpoints", runTimeout.toSeconds())
+                : String.format("Exercise timed out after %ds - check if your endpoint responds or if it hangs on a slow query", exerciseTimeout.toSeconds());
+            logger.warn("Exercise {} cancelled: {}", exercise, failureReason);
+            return ExerciseResult.inconclusive(failureReason);
+        } catch (InterruptedException e) {
+            child.cancel(true);
+            Thread.currentThread().interrupt();
+            return ExerciseResult.inconclusive("Exercise execution interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            String failureReason = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+            logger.warn("Exercise {} failed unexpectedly: {}", exercise, failureReason);
+            return ExerciseResult.inconclusive(failureReason);
+        }
+    }
+
+    /**
+     * State of a single engine run, shared by the scheduling of all its exercises
+     */
+    private static class RunContext {
+        private final Set<String> scheduled;
+        private final ExerciseGraph graph;
+        private final Map<String, ExerciseResult> knownResults;
+        private final ExerciseRunner runner;
+        private final Function<String, Duration> exerciseTimeout;
+        private final Duration runTimeout;
+        private final Instant runDeadline;
+        private final BiConsumer<String, ExerciseResult> onResult;
+        private final Semaphore permits;
+        private final Map<String, CompletableFuture<ExerciseResult>> futures = new HashMap<>();
+
+        // Last exercise scheduled in the serial mutating lane
+        private CompletableFuture<ExerciseResult> laneTail;
+
+        // Last load exercise scheduled, load exercises never overlap
+        private CompletableFuture<ExerciseResult> loadTail;
+
+        RunContext(Set<String> scheduled, ExerciseGraph graph, Map<String, ExerciseResult> knownResults,
+                   ExerciseRunner runner, Function<String, Duration> exerciseTimeout, Duration runTimeout, Instant runDeadline,
+                   BiConsumer<String, ExerciseResult> onResult, Semaphore permits) {
+            this.scheduled = scheduled;
+            this.graph = graph;
+            this.knownResults = knownResults;
+            this.runner = runner;
+            this.exerciseTimeout = exerciseTimeout;
+            this.runTimeout = runTimeout;
+            this.runDeadline = runDeadline;
+            this.onResult = onResult;
+            this.permits = permits;
+        }
+    }
+}
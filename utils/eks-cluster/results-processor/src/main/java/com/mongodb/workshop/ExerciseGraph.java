@@ -0,0 +1,99 @@
+package com.mongodb.workshop;
+
+import com.mongodb.workshop.tests.LoadTest;
+
+import java.util.*;
+
+/**
+ * Declared prerequisite graph over exercise names
+ *
+ * An exercise only runs once all of its prerequisites have passed. The pseudo-exercise
+ * {@link #SERVICE} stands for the participant backend being reachable. The graph also marks
+ * load exercises, which the execution engine schedules after everything else.
+ */
+class ExerciseGraph {
+
+    // Pseudo-exercise satisfied when the participant service answers the availability check
+    static final String SERVICE = "service";
+
+    private static final List<String> ENDPOINT_EXERCISES = List.of(
+        "crud-1", "crud-2", "crud-3", "crud-4",
+        "crud-5", "crud-6", "crud-7", "crud-8",
+        "pipeline-1", "pipeline-2",
+        "search-1", "search-2",
+        "vector-search-1"
+    );
+
+    private final Map<String, List<String>> prerequisites;
+
+    private ExerciseGraph(Map<String, List<String>> prerequisites) {
+        this.prerequisites = prerequisites;
+    }
+
+    /**
+     * Builds the default workshop graph, with optional per-exercise overrides from scenario_config
+     * @param overrides Replacement prerequisite lists keyed by exercise, may be empty
+     */
+    static ExerciseGraph create(Map<String, List<String>> overrides) {
+        Map<String, List<String>> prerequisites = new HashMap<>();
+
+        // Endpoint exercises need the participant backend to be reachable
+        for (String exercise : ENDPOINT_EXERCISES) {
+            prerequisites.put(exercise, List.of(SERVICE));
+        }
+
+        // Search exercises cannot pass without their indexes
+        prerequisites.put("search-1", List.of(SERVICE, "search-index"));
+        prerequisites.put("search-2", List.of(SERVICE, "search-index"));
+        prerequisites.put("vector-search-1", List.of(SERVICE, "vector-search-index"));
+
+        // Load grading only measures an endpoint that already answers correctly
+        for (String exercise : ENDPOINT_EXERCISES) {
+            prerequisites.put(exercise + LoadTest.NAME_SUFFIX, List.of(exercise));
+        }
+
+        prerequisites.putAll(overrides);
+        return new ExerciseGraph(Map.copyOf(prerequisites));
+    }
+
+    /**
+     * Checks whether an exercise grades another one under load
+     * Load exercises start after every other exercise of a run and never overlap each other
+     */
+    boolean isLoadExercise(String exercise) {
+        return LoadTest.isLoadExercise(exercise);
+    }
+
+    /**
+     * Gets the direct prerequisites of an exercise
+     */
+    List<String> getPrerequisites(String exercise) {
+        return prerequisites.getOrDefault(exercise, List.of());
+    }
+
+    /**
+     * Extends a set of exercises with every candidate that transitively depends on one of them
+     * @param exercises Exercises to start from
+     * @param candidates Exercises that may be added
+     */
+    Set<String> withDependents(Set<String> exercises, Collection<String> candidates) {
+        Set<String> result = new LinkedHashSet<>(exercises);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (String candidate : candidates) {
+                if (result.contains(candidate)) {
+                    continue;
+                }
+                for (String prerequisite : getPrerequisites(candidate)) {
+                    if (result.contains(prerequisite)) {
+                        result.add(candidate);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
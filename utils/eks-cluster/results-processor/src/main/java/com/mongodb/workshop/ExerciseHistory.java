@@ -0,0 +1,208 @@
+package com.mongodb.workshop;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOptions;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Recent outcome history of a participant's exercises, stored as one document per user
+ *
+ * Used to schedule the exercises the participant is working on first:
+ * recently edited exercises, then recently failed ones, then never evaluated ones,
+ * then everything else in scenario order.
+ *
+ * It also keeps the content hash of each exercise's answer files, so a signal only
+ * re-grades the exercises whose inputs changed and carries over the other results.
+ */
+class ExerciseHistory {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExerciseHistory.class);
+
+    private final MongoCollection<Document> collection;
+    private final String user;
+    private final Map<String, Document> exercises;
+
+    private ExerciseHistory(MongoCollection<Document> collection, String user, Map<String, Document> exercises) {
+        this.collection = collection;
+        this.user = user;
+        this.exercises = exercises;
+    }
+
+    /**
+     * Loads the history document of a user (empty history if none exists or the read fails)
+     */
+    static ExerciseHistory load(MongoCollection<Document> collection, String user) {
+        Map<String, Document> exercises = new HashMap<>();
+        try {
+            Document historyDoc = collection.find(Filters.eq("_id", user)).first();
+            if (historyDoc != null) {
+                Document exercisesDoc = historyDoc.get("exercises", Document.class);
+                if (exercisesDoc != null) {
+                    for (String exercise : exercisesDoc.keySet()) {
+                        Object entry = exercisesDoc.get(exercise);
+                        if (entry instanceof Document) {
+                            exercises.put(exercise, (Document) entry);
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to load exercise history for user {}: {}", user, e.getMessage());
+        }
+        return new ExerciseHistory(collection, user, exercises);
+    }
+
+    /**
+     * Orders exercises so the participant's current work gets feedback first
+     * @param pending Exercises in scenario order
+     * @param labPath Directory holding the participant's lab files, or null when unknown
+     */
+    List<String> prioritize(List<String> pending, Path labPath) {
+        Map<String, Integer> tiers = new HashMap<>();
+        Map<String, Long> recency = new HashMap<>();
+
+        for (String exercise : pending) {
+            Document entry = exercises.get(exercise);
+            long lastRunAt = entry != null ? toMillis(entry.get("last_run_at")) : 0;
+            long editedAt = lastModified(labPath, exercise);
+
+            if (editedAt > 0 && editedAt > lastRunAt) {
+                // Edited since it was last evaluated
+                tiers.put(exercise, 0);
+                recency.put(exercise, editedAt);
+            } else if (entry != null && Boolean.FALSE.equals(entry.getBoolean("passed"))) {
+                tiers.put(exercise, 1);
+                recency.put(exercise, toMillis(entry.get("last_failed_at")));
+            } else if (entry == null) {
+                tiers.put(exercise, 2);
+                recency.put(exercise, 0L);
+            } else {
+                tiers.put(exercise, 3);
+                recency.put(exercise, 0L);
+            }
+        }
+
+        // Stable sort keeps scenario order within a tier when recency is equal
+        List<String> ordered = new ArrayList<>(pending);
+        ordered.sort(Comparator.<String>comparingInt(tiers::get)
+            .thenComparing(Comparator.<String>comparingLong(recency::get).reversed()));
+        return ordered;
+    }
+
+    /**
+     * Selects the exercises that need re-grading; the others keep their previous result
+     * An exercise is re-graded when its answer files changed, it was never conclusively
+     * evaluated, it has no answer files to compare (indexes), its last evaluation passed,
+     * or one of its prerequisites is re-graded
+     * @param pending Exercises that have not passed yet
+     * @param inputHashes Current answer file hashes keyed by exercise (missing when unknown)
+     * @param graph Prerequisite graph of the run
+     */
+    Set<String> selectForRegrading(List<String> pending, Map<String, String> inputHashes, ExerciseGraph graph) {
+        Set<String> selected = new LinkedHashSet<>();
+        for (String exercise : pending) {
+            Document entry = exercises.get(exercise);
+            String inputHash = inputHashes.get(exercise);
+            if (inputHash == null || entry == null || hasPassed(exercise)
+                || !Boolean.TRUE.equals(entry.getBoolean("conclusive"))
+                || !inputHash.equals(entry.getString("input_hash"))) {
+                selected.add(exercise);
+            }
+        }
+
+        // Dependents of re-graded exercises may change outcome too
+        return graph.withDependents(selected, pending);
+    }
+
+    /**
+     * Checks whether the last evaluation of an exercise passed
+     * A pending exercise that passed has no stored result (its run commit failed, or the result
+     * was deleted to re-open it), so it is always re-graded rather than carried over
+     */
+    boolean hasPassed(String exercise) {
+        Document entry = exercises.get(exercise);
+        return entry != null && Boolean.TRUE.equals(entry.getBoolean("passed"));
+    }
+
+    /**
+     * Rebuilds the previous result of an exercise that is not re-graded
+     */
+    ExerciseResult carryOver(String exercise) {
+        Document entry = exercises.get(exercise);
+        if (entry == null) {
+            return ExerciseResult.inconclusive("Not evaluated yet");
+        }
+        return new ExerciseResult(Boolean.TRUE.equals(entry.getBoolean("passed")), entry.getString("failure_reason"));
+    }
+
+    /**
+     * Records the outcome of the exercises executed in a run and persists them in one update
+     * @param inputHashes Answer file hashes the exercises were graded on, keyed by exercise
+     */
+    void record(Map<String, ExerciseResult> results, Map<String, String> inputHashes) {
+        if (results.isEmpty()) {
+            return;
+        }
+
+        Document set = new Document();
+        for (Map.Entry<String, ExerciseResult> result : results.entrySet()) {
+            String exercise = result.getKey();
+            ExerciseResult outcome = result.getValue();
+            Document previous = exercises.get(exercise);
+
+            Document entry = new Document()
+                .append("passed", outcome.isPassed())
+                .append("last_run_at", outcome.getCompletedAt())
+                .append("conclusive", outcome.isConclusive())
+                .append("input_hash", inputHashes.get(exercise));
+            if (outcome.isPassed()) {
+                entry.append("consecutive_failures", 0);
+                if (previous != null && previous.get("last_failed_at") != null) {
+                    entry.append("last_failed_at", previous.get("last_failed_at"));
+                }
+            } else {
+                int previousFailures = previous != null && previous.get("consecutive_failures") instanceof Number
+                    ? ((Number) previous.get("consecutive_failures")).intValue() : 0;
+                entry.append("failure_reason", outcome.getFailureReason())
+                    .append("last_failed_at", outcome.getCompletedAt())
+                    .append("consecutive_failures", previousFailures + 1);
+            }
+
+            exercises.put(exercise, entry);
+            set.append("exercises." + exercise, entry);
+        }
+
+        try {
+            collection.updateOne(Filters.eq("_id", user), new Document("$set", set), new UpdateOptions().upsert(true));
+        } catch (Exception e) {
+            logger.warn("Failed to store exercise history for user {}: {}", user, e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the modification time of an exercise's lab file, or 0 when unknown
+     */
+    private static long lastModified(Path labPath, String exercise) {
+        if (labPath == null) {
+            return 0;
+        }
+        Path labFile = labPath.resolve(exercise + ".lab.js");
+        try {
+            return Files.exists(labFile) ? Files.getLastModifiedTime(labFile).toMillis() : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long toMillis(Object value) {
+        return value instanceof Date ? ((Date) value).getTime() : 0;
+    }
+}
@@ -0,0 +1,54 @@
+package com.mongodb.workshop;
+
+import java.util.Date;
+
+/**
+ * Helper class to store exercise test results with failure reasons
+ */
+class ExerciseResult {
+    private final boolean passed;
+    private final String failureReason;
+    private final Date completedAt;
+    private final boolean conclusive;
+
+    public ExerciseResult(boolean passed, String failureReason) {
+        this(passed, failureReason, true);
+    }
+
+    private ExerciseResult(boolean passed, String failureReason, boolean conclusive) {
+        this.passed = passed;
+        this.failureReason = failureReason;
+        this.completedAt = new Date();
+        this.conclusive = conclusive;
+    }
+
+    /**
+     * Creates a failure that says nothing about the participant's answer
+     * (skipped, timed out, service unreachable), so it is never carried over to a later run
+     */
+    static ExerciseResult inconclusive(String failureReason) {
+        return new ExerciseResult(false, failureReason, false);
+    }
+
+    public boolean isPassed() {
+        return passed;
+    }
+
+    public String getFailureReason() {
+        return failureReason;
+    }
+
+    /**
+     * Gets the time at which this result was produced
+     */
+    public Date getCompletedAt() {
+        return completedAt;
+    }
+
+    /**
+     * Whether the test actually evaluated the participant's answer
+     */
+    public boolean isConclusive() {
+        return conclusive;
+    }
+}
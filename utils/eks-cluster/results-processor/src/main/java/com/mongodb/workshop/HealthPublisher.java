@@ -0,0 +1,266 @@
+package com.mongodb.workshop;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind publisher of results_health documents
+ *
+ * Grading threads update a participant's {@link HealthState} in memory and mark it dirty,
+ * without waiting on the database. A single publisher thread writes the delta of each dirty
+ * document, so every update made to a document between two flushes is coalesced into one
+ * write. It flushes once the interval passed, or right away when a run ends without being
+ * committed (a run commit writes the run's outcome itself, see {@link RunCommitter}).
+ *
+ * Pending state is never more than the latest value of each document, so a slow cluster
+ * cannot build up a queue. Instead, the interval stretches to twice the time the last flush
+ * took (up to {@link #MAX_INTERVAL}), and failed writes are retried on the next flush.
+ * On close, pending documents are written before the thread exits, failed writes are retried
+ * a few times with a doubling delay, and users left unwritten are reported by name.
+ */
+final class HealthPublisher implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HealthPublisher.class);
+
+    static final Duration MAX_INTERVAL = Duration.ofSeconds(30);
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration INTERRUPT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration MIN_RETRY_INTERVAL = Duration.ofSeconds(1);
+    private static final int FINAL_FLUSH_ATTEMPTS = 5;
+
+    private final Duration baseInterval;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Set<HealthState> dirty = new LinkedHashSet<>();
+    // Documents taken by the flush in progress
+    private final Set<HealthState> flushing = new LinkedHashSet<>();
+    private boolean flushRequested;
+    private boolean closed;
+    private volatile Duration interval;
+    private final Thread thread;
+
+    // Counters to make the coalescing measurable
+    private final AtomicLong updatesReceived = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+
+    HealthPublisher(Duration interval) {
+        this.baseInterval = interval;
+        this.interval = interval;
+        this.thread = Thread.ofVirtual().name("health-publisher").start(this::run);
+    }
+
+    /**
+     * Schedules a document for the next flush
+     * @param flushNow Whether to flush without waiting for the interval (end of a run)
+     */
+    void publish(HealthState state, boolean flushNow) {
+        updatesReceived.incrementAndGet();
+        lock.lock();
+        try {
+            dirty.add(state);
+            if (flushNow) {
+                flushRequested = true;
+            }
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes every pending document and stops the publisher thread
+     * Waits for the thread to exit, interrupting it when the final flush takes too long, and
+     * reports the users whose documents could not be written
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            if (!thread.join(CLOSE_TIMEOUT)) {
+                logger.warn("Health publisher did not finish its final flush within {} s - interrupting it", CLOSE_TIMEOUT.toSeconds());
+                thread.interrupt();
+                if (!thread.join(INTERRUPT_TIMEOUT)) {
+                    logger.error("Health publisher is still running after being interrupted");
+                }
+            }
+        } catch (InterruptedException e) {
+            thread.interrupt();
+            Thread.currentThread().interrupt();
+        }
+        List<String> unflushed = getPendingUsers();
+        if (!unflushed.isEmpty()) {
+            logger.error("Health updates of {} users were not written before shutdown: {}", unflushed.size(), unflushed);
+        }
+        logger.info("Health publisher stopped: {} updates coalesced into {} writes ({} failed)",
+            updatesReceived.get(), writes.get(), failedWrites.get());
+    }
+
+    private void run() {
+        while (true) {
+            boolean last;
+            lock.lock();
+            try {
+                while (dirty.isEmpty() && !closed) {
+                    changed.await();
+                }
+                // Let further updates to the same documents accumulate, unless a run just ended
+                long remaining = interval.toNanos();
+                while (!flushRequested && !closed && remaining > 0) {
+                    remaining = changed.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                // Stop waiting, but still write what is pending
+                logger.warn("Health publisher interrupted - flushing pending health updates");
+                closed = true;
+            } finally {
+                last = closed;
+                lock.unlock();
+            }
+
+            if (last) {
+                flushRemaining();
+                return;
+            }
+            long start = System.nanoTime();
+            boolean failed = flush(takeBatch());
+            adaptInterval(Duration.ofNanos(System.nanoTime() - start), failed);
+        }
+    }
+
+    /**
+     * Writes every pending document, retrying failed writes with a doubling delay
+     * Gives up after {@link #FINAL_FLUSH_ATTEMPTS} attempts; close() reports what is left
+     */
+    private void flushRemaining() {
+        long delay = MIN_RETRY_INTERVAL.toMillis();
+        for (int attempt = 1; ; attempt++) {
+            if (!flush(takeBatch())) {
+                return;
+            }
+            if (attempt >= FINAL_FLUSH_ATTEMPTS) {
+                return;
+            }
+            logger.warn("Final health flush failed for {} (attempt {}/{}) - retrying in {} ms", getPendingUsers(),
+                attempt, FINAL_FLUSH_ATTEMPTS, delay);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                return;
+            }
+            delay *= 2;
+        }
+    }
+
+    /**
+     * Takes the pending documents for a flush
+     */
+    private List<HealthState> takeBatch() {
+        lock.lock();
+        try {
+            List<HealthState> batch = new ArrayList<>(dirty);
+            dirty.clear();
+            flushRequested = false;
+            flushing.addAll(batch);
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes each document of a batch; documents whose write failed are put back for the next flush
+     * @return Whether any write failed
+     */
+    private boolean flush(List<HealthState> batch) {
+        boolean failed = false;
+        for (HealthState state : batch) {
+            boolean written = false;
+            try {
+                if (state.flush()) {
+                    writes.incrementAndGet();
+                }
+                written = true;
+            } catch (Exception e) {
+                failedWrites.incrementAndGet();
+                failed = true;
+                logger.warn("Failed to update health information for user {}: {}", state.getUser(), e.getMessage());
+            }
+            lock.lock();
+            try {
+                flushing.remove(state);
+                if (!written) {
+                    dirty.add(state);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Lists the users whose latest health state is not written yet
+     */
+    List<String> getPendingUsers() {
+        lock.lock();
+        try {
+            List<String> users = new ArrayList<>();
+            flushing.forEach(state -> users.add(state.getUser()));
+            dirty.forEach(state -> users.add(state.getUser()));
+            return users;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Backs off while the cluster is slow or failing, and returns to the base interval once it recovers
+     */
+    private void adaptInterval(Duration flushTime, boolean failed) {
+        Duration previous = interval;
+        Duration next = failed ? max(previous, MIN_RETRY_INTERVAL).multipliedBy(2) : flushTime.multipliedBy(2);
+        if (next.compareTo(baseInterval) < 0) {
+            next = baseInterval;
+        }
+        if (next.compareTo(MAX_INTERVAL) > 0) {
+            next = MAX_INTERVAL;
+        }
+        interval = next;
+        if (next.toMillis() / 1000 != previous.toMillis() / 1000) {
+            logger.info("Health flush interval is now {} ms (last flush took {} ms{})", next.toMillis(),
+                flushTime.toMillis(), failed ? ", failed" : "");
+        }
+    }
+
+    private static Duration max(Duration a, Duration b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    long getUpdatesReceived() {
+        return updatesReceived.get();
+    }
+
+    long getWrites() {
+        return writes.get();
+    }
+
+    Duration getInterval() {
+        return interval;
+    }
+}
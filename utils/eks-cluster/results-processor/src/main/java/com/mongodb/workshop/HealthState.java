@@ -0,0 +1,330 @@
+package com.mongodb.workshop;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOptions;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Latest and last published state of a participant's results_health document
+ *
+ * Grading threads only update the latest state in memory; {@link HealthPublisher} writes the
+ * difference to the published state while a run is in progress. When the run ends, its outcome
+ * is written together with the run's results (see {@link RunCommitter}). The portal reads results_health heavily, so writes only
+ * carry the fields that changed: changed exercise entries are set in place through array
+ * filters, summary fields only when their value differs, and nothing is written when nothing
+ * changed. Statistics (endpoint traffic, latency, load tests) ride along with those writes and are
+ * otherwise refreshed at most once per statistics interval.
+ */
+class HealthState {
+
+    private static final Logger logger = LoggerFactory.getLogger(HealthState.class);
+
+    static final String EXERCISE_RESULTS = "exercise_results";
+    private static final String EXERCISE_NAME = "exercise_name";
+    private static final String EXECUTION_STATUS = "execution_status";
+    // Process-wide statistics, now kept in the processor's own document
+    private static final List<String> OBSOLETE_FIELDS = List.of("http_client_stats", "health_publisher");
+
+    private final MongoCollection<Document> collection;
+    private final String user;
+    private final Duration statsInterval;
+    // Held while the document is written, by the publisher or by the run commit
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // Latest state: exercise entries in display order, summary fields and statistics
+    private final Map<String, Document> exercises = new LinkedHashMap<>();
+    private final Document fields = new Document();
+    private final Document stats = new Document();
+    private long generation;
+    private boolean runStarted;
+
+    // State last written to the database
+    private Map<String, Document> publishedExercises = new LinkedHashMap<>();
+    private final Document publishedFields = new Document();
+    private long statsPublishedAt;
+
+    private HealthState(MongoCollection<Document> collection, String user, Duration statsInterval) {
+        this.collection = collection;
+        this.user = user;
+        this.statsInterval = statsInterval;
+    }
+
+    /**
+     * Publishes the startup fields of a user's health document, keeping its exercise results
+     * The existing document is read once to seed the published state
+     * @param startupFields Fields describing the processor (version, environment)
+     */
+    static HealthState start(MongoCollection<Document> collection, String user, Duration statsInterval, Document startupFields) {
+        HealthState state = new HealthState(collection, user, statsInterval);
+        Document existing = collection.find(Filters.eq("_id", user))
+            .projection(Projections.exclude("lab_request_latency", "load_test_results", "endpoint_traffic"))
+            .first();
+        Document unset = new Document();
+        if (existing != null) {
+            for (String field : OBSOLETE_FIELDS) {
+                if (existing.remove(field) != null) {
+                    unset.append(field, "");
+                }
+            }
+            List<Document> entries = existing.getList(EXERCISE_RESULTS, Document.class);
+            if (entries != null) {
+                for (Document entry : entries) {
+                    state.publishedExercises.put(entry.getString(EXERCISE_NAME), entry);
+                }
+            }
+            existing.remove("_id");
+            existing.remove(EXERCISE_RESULTS);
+            state.publishedFields.putAll(existing);
+        }
+
+        Document set = state.changedFields(new Document(startupFields).append(EXECUTION_STATUS, "started"));
+        if (!set.isEmpty() || !unset.isEmpty()) {
+            Document update = new Document("$setOnInsert", new Document(EXERCISE_RESULTS, new ArrayList<>()));
+            if (!set.isEmpty()) {
+                update.append("$set", set);
+            }
+            if (!unset.isEmpty()) {
+                update.append("$unset", unset);
+            }
+            collection.updateOne(Filters.eq("_id", user), update, new UpdateOptions().upsert(true));
+            state.publishedFields.putAll(set);
+        }
+        state.exercises.putAll(state.publishedExercises);
+        state.fields.putAll(state.publishedFields);
+        return state;
+    }
+
+    String getUser() {
+        return user;
+    }
+
+    /**
+     * Starts a new run; it is marked as running with the first result that changes
+     */
+    synchronized void beginRun(long generation) {
+        this.generation = generation;
+        this.runStarted = false;
+    }
+
+    /**
+     * Records the entry of an exercise that just completed
+     * Replaces the exercise's entry, or appends it when not present yet
+     * @return Whether the entry changed and needs publishing
+     */
+    synchronized boolean updateExercise(Document entry) {
+        String name = entry.getString(EXERCISE_NAME);
+        if (entry.equals(exercises.get(name))) {
+            return false;
+        }
+        exercises.put(name, entry);
+        if (!runStarted) {
+            fields.put(EXECUTION_STATUS, "running");
+            runStarted = true;
+        }
+        return true;
+    }
+
+    /**
+     * Records the outcome of a run
+     * @param entries Exercise entries in scenario order
+     * @param summary Summary fields (status, counts, version)
+     * @param runStats Statistics fields, published when other fields change or the interval passed
+     */
+    synchronized void updateRun(List<Document> entries, Document summary, Document runStats) {
+        exercises.clear();
+        entries.forEach(entry -> exercises.put(entry.getString(EXERCISE_NAME), entry));
+        fields.putAll(summary);
+        stats.clear();
+        stats.putAll(runStats);
+    }
+
+    /**
+     * Writes the difference between the latest and the published state in one update
+     * Only called from the publisher thread, so the database write happens outside the state lock.
+     * A document whose run is being committed is skipped: the commit writes its latest state.
+     * @return Whether anything was written
+     */
+    boolean flush() {
+        if (!writeLock.tryLock()) {
+            return false;
+        }
+        try {
+            Delta delta = delta();
+            if (delta.isEmpty()) {
+                return false;
+            }
+            long matched = collection.updateOne(delta.getFilter(), delta.getUpdate(),
+                new UpdateOptions().arrayFilters(delta.getArrayFilters())).getMatchedCount();
+            if (matched == 0) {
+                // The document disappeared: publish everything again
+                collection.updateOne(delta.getFilter(), delta.getReplacement(), new UpdateOptions().upsert(true));
+                delta.replaced();
+            }
+            published(delta);
+            logger.debug("Updated {} health fields for user {}", delta.set.size(), user);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the outcome of a run through the run commit, together with the run's results
+     * The publisher does not write this document meanwhile; once the commit succeeds, the state
+     * it wrote counts as published, so the publisher has nothing left to write for the run.
+     * @param commit Writes the delta (possibly empty) and tells whether it succeeded
+     * @return Whether the commit succeeded
+     */
+    boolean commitRun(Predicate<Delta> commit) {
+        writeLock.lock();
+        try {
+            Delta delta = delta();
+            if (!commit.test(delta)) {
+                return false;
+            }
+            published(delta);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Computes the difference between the latest and the published state
+     */
+    private synchronized Delta delta() {
+        Document set = new Document();
+        List<Bson> arrayFilters = new ArrayList<>();
+        long nowMillis = System.currentTimeMillis();
+
+        if (!new ArrayList<>(exercises.keySet()).equals(new ArrayList<>(publishedExercises.keySet()))) {
+            // Exercises were added, removed or reordered: the array is rewritten as a whole
+            set.append(EXERCISE_RESULTS, new ArrayList<>(exercises.values()));
+        } else {
+            for (Document entry : exercises.values()) {
+                String name = entry.getString(EXERCISE_NAME);
+                if (!entry.equals(publishedExercises.get(name))) {
+                    String id = "e" + arrayFilters.size();
+                    set.append(EXERCISE_RESULTS + ".$[" + id + "]", entry);
+                    arrayFilters.add(Filters.eq(id + "." + EXERCISE_NAME, name));
+                }
+            }
+        }
+        set.putAll(changedFields(fields));
+        boolean statsIncluded = !set.isEmpty() || nowMillis - statsPublishedAt >= statsInterval.toMillis();
+        if (statsIncluded) {
+            set.putAll(changedFields(stats));
+        }
+        if (set.isEmpty()) {
+            return new Delta(user, set, arrayFilters, null, Map.of(), false, nowMillis);
+        }
+        set.append("last_updated", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
+            .append("run_generation", generation);
+
+        Document full = new Document(fields).append(EXERCISE_RESULTS, new ArrayList<>(exercises.values()));
+        full.putAll(stats);
+        full.append("last_updated", set.get("last_updated")).append("run_generation", generation);
+        return new Delta(user, set, arrayFilters, full, new LinkedHashMap<>(exercises), statsIncluded, nowMillis);
+    }
+
+    /**
+     * Records a written delta as the published state
+     */
+    private synchronized void published(Delta delta) {
+        if (delta.isEmpty()) {
+            return;
+        }
+        publishedExercises = delta.exercises;
+        for (Map.Entry<String, Object> field : delta.set.entrySet()) {
+            if (!field.getKey().startsWith(EXERCISE_RESULTS)) {
+                publishedFields.put(field.getKey(), field.getValue());
+            }
+        }
+        if (delta.statsIncluded) {
+            statsPublishedAt = delta.nowMillis;
+        }
+    }
+
+    /**
+     * Selects the fields whose value differs from the published one
+     */
+    private Document changedFields(Document desired) {
+        Document changed = new Document();
+        for (Map.Entry<String, Object> field : desired.entrySet()) {
+            if (!Objects.equals(publishedFields.get(field.getKey()), field.getValue())) {
+                changed.append(field.getKey(), field.getValue());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Changes of one health document: the fields to set, the array filters selecting the changed
+     * exercise entries, and the whole document to publish again when it disappeared
+     */
+    static final class Delta {
+        private final String user;
+        private Document set;
+        private final List<Bson> arrayFilters;
+        private final Document full;
+        private final Map<String, Document> exercises;
+        private final boolean statsIncluded;
+        private final long nowMillis;
+
+        private Delta(String user, Document set, List<Bson> arrayFilters, Document full, Map<String, Document> exercises,
+                      boolean statsIncluded, long nowMillis) {
+            this.user = user;
+            this.set = set;
+            this.arrayFilters = arrayFilters;
+            this.full = full;
+            this.exercises = exercises;
+            this.statsIncluded = statsIncluded;
+            this.nowMillis = nowMillis;
+        }
+
+        boolean isEmpty() {
+            return set.isEmpty();
+        }
+
+        Bson getFilter() {
+            return Filters.eq("_id", user);
+        }
+
+        /**
+         * Gets the update setting the changed fields, applied with {@link #getArrayFilters()}
+         */
+        Document getUpdate() {
+            return new Document("$set", new Document(set));
+        }
+
+        List<Bson> getArrayFilters() {
+            return arrayFilters;
+        }
+
+        /**
+         * Gets the update setting every field, upserted when the document disappeared
+         */
+        Document getReplacement() {
+            return new Document("$set", new Document(full));
+        }
+
+        /**
+         * Records that the replacement was written instead of the update
+         */
+        void replaced() {
+            set = full;
+        }
+    }
+}
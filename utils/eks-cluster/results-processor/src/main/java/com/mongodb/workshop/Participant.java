@@ -0,0 +1,58 @@
+package com.mongodb.workshop;
+
+import java.nio.file.Path;
+
+/**
+ * A workshop participant graded by this processor
+ * The name is both the MongoDB username and the name of the participant's database
+ */
+final class Participant {
+
+    // Placeholder replaced with the participant name in per-participant settings
+    static final String NAME_PLACEHOLDER = "PARTICIPANT_NAME";
+
+    private final String name;
+    private final String serviceName;
+    private final Path labPath;
+
+    Participant(String name, String serviceName, Path labPath) {
+        this.name = name;
+        this.serviceName = serviceName;
+        this.labPath = labPath;
+    }
+
+    /**
+     * Creates a participant from setting templates that may contain {@link #NAME_PLACEHOLDER}
+     * @param name Participant name
+     * @param serviceNameTemplate Backend URL template
+     * @param labPathTemplate Lab directory template, or null when lab files are not reachable
+     */
+    static Participant fromTemplates(String name, String serviceNameTemplate, String labPathTemplate) {
+        Path labPath = labPathTemplate != null && !labPathTemplate.isEmpty()
+            ? Path.of(labPathTemplate.replace(NAME_PLACEHOLDER, name)) : null;
+        return new Participant(name, serviceNameTemplate.replace(NAME_PLACEHOLDER, name), labPath);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the base URL of the participant's backend
+     */
+    String getServiceName() {
+        return serviceName;
+    }
+
+    /**
+     * Gets the directory holding the participant's lab files, or null when unknown
+     */
+    Path getLabPath() {
+        return labPath;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -14,27 +14,39 @@ import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.nio.file.*;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.time.Instant;
 
 import com.mongodb.client.model.Filters;
-import com.mongodb.client.model.Sorts;
-import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.MongoCommandException;
 
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.URI;
+import java.net.InetAddress;
 import java.time.Duration;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
-import java.security.cert.X509Certificate;
 
 /**
  * MongoDB Results Processor
  * 
  * This application connects to MongoDB and processes results from the arena_shared database.
  * It executes test methods for each exercise based on environment configuration.
+ * 
+ * By default one processor grades the participant owning MONGODB_URI. With
+ * PROCESSOR_MODE=multi-tenant a single processor grades every participant listed in
+ * arena_shared.participants through one shared MongoClient.
  */
 public class ResultsProcessor {
     
@@ -45,7 +57,14 @@ public class ResultsProcessor {
     // Database and collection constants
     private static final String DB_NAME = "arena_shared";
     private static final String RESULTS_COLLECTION = "results";
+    private static final String RESULTS_INDEX = "username_1_name_1";
+    private static final int DUPLICATE_KEY_ERROR = 11000;
     private static final String HEALTH_COLLECTION = "results_health";
+    private static final String HISTORY_COLLECTION = "exercise_history";
+    private static final String PARTICIPANTS_COLLECTION = "participants";
+    private static final String CHANGE_STREAM_TOKENS_COLLECTION = "change_stream_tokens";
+    
+    private static final String MULTI_TENANT_MODE = "multi-tenant";
     
     // Exercise test identifiers
     private static final List<String> EXERCISE_TESTS = Arrays.asList(
@@ -62,16 +81,51 @@ public class ResultsProcessor {
     
     private MongoClient mongoClient;
     private MongoDatabase database;
+    private final ExerciseExecutionEngine executionEngine;
+    private final ScenarioConfigCache scenarioConfigCache;
+    
+    // Virtual-thread executor owning all trigger handling, test execution and I/O waits
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicBoolean shutdown = new AtomicBoolean(false);
+    private static final long EXECUTOR_SHUTDOWN_TIMEOUT_SECONDS = 60;
     
     // Signal file constants (will be set from environment variables)
     private final String signalFilePath;
     private final String lastSignalFilePath;
     private final boolean isSignalMode;
     
-    // Execution control
-    private volatile boolean isExecuting = false;
-    private volatile boolean pendingExecution = false;
-    private final Object executionLock = new Object();
+    // Multi-tenant mode grades every participant from this process
+    private final boolean isMultiTenant;
+    
+    // Participant graded in single-tenant mode (null in multi-tenant mode)
+    private final Participant participant;
+    
+    // Execution control - signals are collapsed into generation-tagged runs, one coalescer per participant
+    private final Map<String, TriggerCoalescer<RunRequest>> triggerCoalescers = new ConcurrentHashMap<>();
+    private final Duration triggerDebounce;
+    
+    // Fair (FIFO) permits bounding the grading runs in flight across all participants
+    private final Semaphore runPermits;
+    
+    // Optional change-stream triggers re-grading index exercises on DDL events, one watcher per participant
+    private final boolean changeStreamTriggers;
+    private final Map<String, ChangeStreamWatcher> changeStreamWatchers = new ConcurrentHashMap<>();
+    
+    // Last published results_health state per participant, so only changed fields are written
+    private final Map<String, HealthState> healthStates = new ConcurrentHashMap<>();
+    private final Duration healthStatsInterval;
+    private final HealthPublisher healthPublisher;
+    private final RunCommitter runCommitter;
+    
+    // Process-wide statistics (shared HTTP client, health publisher) live in one document per processor
+    private final String processorId = "processor:" + getHostName();
+    private final AtomicLong processorStatsPublishedAt = new AtomicLong();
+    
+    // Readiness polling after restart signals, and the outcome of each participant's last check
+    private final Duration readinessTimeout;
+    private final int warmConnections;
+    private final Map<String, ServiceReadiness> serviceReadiness = new ConcurrentHashMap<>();
+    private static final Duration PREWARM_TIMEOUT = Duration.ofSeconds(10);
     
     private static final String SEPARATOR = "============================================================";
     private static final String STEP = "➡️ ";
@@ -83,13 +137,21 @@ public class ResultsProcessor {
     private static final String SIGNAL = "📡";
     
     public ResultsProcessor() {
+        this.isMultiTenant = MULTI_TENANT_MODE.equalsIgnoreCase(System.getenv("PROCESSOR_MODE"));
+        
         // Initialize signal mode configuration
-        String signalDir = getEnvironmentVariable("SIGNAL_FILE_PATH");
+        String signalDir = isMultiTenant ? null : getEnvironmentVariable("SIGNAL_FILE_PATH");
         if (signalDir != null && !signalDir.isEmpty()) {
             this.signalFilePath = signalDir + "/server_restart_signal.txt";
             this.lastSignalFilePath = signalDir + "/last_processed_signal.txt";
             this.isSignalMode = true;
             logger.info("{} Signal mode enabled - watching for signals at: {}", SIGNAL, this.signalFilePath);
+        } else if (isMultiTenant) {
+            // Participants' signal files are not reachable from a shared processor
+            this.signalFilePath = null;
+            this.lastSignalFilePath = null;
+            this.isSignalMode = false;
+            logger.info("{} Multi-tenant mode enabled - grading all participants from {}.{}", INFO, DB_NAME, PARTICIPANTS_COLLECTION);
         } else {
             // When SIGNAL_FILE_PATH is empty or null, run in one-shot mode
             this.signalFilePath = null;
@@ -98,6 +160,13 @@ public class ResultsProcessor {
             logger.info("{} SIGNAL_FILE_PATH is empty or null - running in one-shot mode", INFO);
         }
         
+        String labDir = System.getenv("LAB_PATH");
+        if (labDir != null && !labDir.isEmpty()) {
+            logger.info("{} Lab files read from: {}", INFO, labDir);
+        } else {
+            logger.info("{} LAB_PATH is empty or null - exercises are not prioritized by recent edits", INFO);
+        }
+        
         // Initialize MongoDB connection
         String mongoUri = getEnvironmentVariable("MONGODB_URI");
         if (mongoUri == null || mongoUri.isEmpty()) {
@@ -112,6 +181,73 @@ public class ResultsProcessor {
             logger.error("Failed to connect to MongoDB", e);
             throw new RuntimeException("MongoDB connection failed", e);
         }
+        
+        // Scenario settings are read from memory on every run and refreshed by a cheap version check
+        this.scenarioConfigCache = new ScenarioConfigCache(database.getCollection("scenario_config"),
+            Duration.ofSeconds(getIntEnvironmentVariable("SCENARIO_CONFIG_CHECK_SECONDS", 60)));
+        scenarioConfigCache.load();
+        
+        ensureResultsIndex();
+        this.runCommitter = new RunCommitter(mongoClient, database, RESULTS_COLLECTION, HEALTH_COLLECTION);
+        
+        // One pooled HTTP client for every test and the availability probe, on the same virtual-thread executor
+        LabHttpClient.initialize(executor, openTrafficArchive());
+        ServiceCircuitBreaker.configure(getIntEnvironmentVariable("CIRCUIT_BREAKER_FAILURES", ServiceCircuitBreaker.DEFAULT_FAILURE_THRESHOLD));
+        
+        // Initialize the concurrent exercise execution engine
+        int testConcurrency = getIntEnvironmentVariable("TEST_CONCURRENCY", 4);
+        this.executionEngine = new ExerciseExecutionEngine(executor, testConcurrency,
+            getBooleanEnvironmentVariable("SERIALIZE_MUTATING_TESTS", true));
+        
+        this.readinessTimeout = Duration.ofSeconds(Math.max(0, getIntEnvironmentVariable("READINESS_TIMEOUT_SECONDS", 60)));
+        this.warmConnections = Math.max(0, getIntEnvironmentVariable("READINESS_WARM_CONNECTIONS", testConcurrency));
+        
+        this.triggerDebounce = Duration.ofMillis(getIntEnvironmentVariable("TRIGGER_DEBOUNCE_MS", 1000));
+        this.runPermits = new Semaphore(Math.max(1, getIntEnvironmentVariable("MAX_CONCURRENT_RUNS", 8)), true);
+        this.changeStreamTriggers = getBooleanEnvironmentVariable("CHANGE_STREAM_TRIGGERS", false);
+        this.healthStatsInterval = Duration.ofSeconds(Math.max(0, getIntEnvironmentVariable("HEALTH_STATS_INTERVAL_SECONDS", 300)));
+        this.healthPublisher = new HealthPublisher(Duration.ofMillis(Math.max(0, getIntEnvironmentVariable("HEALTH_FLUSH_INTERVAL_MS", 500))));
+        
+        if (isMultiTenant) {
+            this.participant = null;
+            if (!getEnvironmentVariable("SERVICE_NAME").contains(Participant.NAME_PLACEHOLDER)) {
+                logger.warn("{} SERVICE_NAME does not contain {} - every participant will be graded against the same backend", 
+                    WARNING, Participant.NAME_PLACEHOLDER);
+            }
+        } else {
+            this.participant = new Participant(extractUsernameFromMongoUri(), getEnvironmentVariable("SERVICE_NAME"), 
+                labDir != null && !labDir.isEmpty() ? Paths.get(labDir) : null);
+            registerParticipant(participant);
+        }
+    }
+    
+    /**
+     * Opens the lab traffic archive selected by LAB_TRAFFIC_MODE (off, record or replay)
+     * @return The archive, or null when lab traffic only goes to the network
+     */
+    private LabTrafficArchive openTrafficArchive() {
+        String modeName = System.getenv("LAB_TRAFFIC_MODE");
+        if (modeName == null || modeName.isBlank()) {
+            return null;
+        }
+        LabTrafficArchive.Mode mode;
+        try {
+            mode = LabTrafficArchive.Mode.valueOf(modeName.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            logger.warn("{} Invalid LAB_TRAFFIC_MODE '{}' (expected off, record or replay) - lab traffic is not archived", WARNING, modeName);
+            return null;
+        }
+        String archivePath = System.getenv("LAB_TRAFFIC_ARCHIVE");
+        Path path = Paths.get(archivePath != null && !archivePath.isBlank() ? archivePath : "lab-traffic.jsonl.gz");
+        try {
+            return LabTrafficArchive.open(mode, path);
+        } catch (IOException e) {
+            if (mode == LabTrafficArchive.Mode.REPLAY) {
+                throw new RuntimeException("Cannot replay lab traffic from " + path, e);
+            }
+            logger.warn("{} Cannot record lab traffic to {} - continuing without recording: {}", WARNING, path, e.getMessage());
+            return null;
+        }
     }
     
     /**
@@ -123,6 +259,10 @@ public class ResultsProcessor {
         
         try {
             ResultsProcessor processor = new ResultsProcessor();
+            
+            // Drain in-flight runs and close connections when the container is stopped
+            Runtime.getRuntime().addShutdownHook(new Thread(processor::shutdown, "results-processor-shutdown"));
+            
             processor.run();
         } catch (Exception e) {
             logger.error("Application failed to run", e);
@@ -137,11 +277,18 @@ public class ResultsProcessor {
      */
     public void run() {
         try {
+            if (isMultiTenant) {
+                logger.info("{} Running in multi-tenant mode - continuous operation for all participants", INFO);
+                runMultiTenantMode();
+                return;
+            }
+            
             // Log health information
-            logHealthInformation();
+            logHealthInformation(participant);
             
             if (isSignalMode) {
                 logger.info("{} Running in signal mode - continuous operation with signal watching", SIGNAL);
+                startChangeStreamWatcher(participant);
                 runSignalMode();
             } else {
                 logger.info("{} Running in one-off mode - single execution", INFO);
@@ -152,11 +299,47 @@ public class ResultsProcessor {
             logger.error("Error during processing", e);
             throw e;
         } finally {
-            // Close MongoDB connection
-            if (mongoClient != null) {
-                mongoClient.close();
-                logger.info("MongoDB connection closed");
+            shutdown();
+        }
+    }
+    
+    /**
+     * Stops the executor, waiting for in-flight runs to finish, then closes the MongoDB connection
+     * Safe to call more than once (run completion and JVM shutdown hook)
+     */
+    private void shutdown() {
+        if (!shutdown.compareAndSet(false, true)) {
+            return;
+        }
+        
+        changeStreamWatchers.values().forEach(ChangeStreamWatcher::stop);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(EXECUTOR_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("{} In-flight executions did not finish within {}s - cancelling them", WARNING, EXECUTOR_SHUTDOWN_TIMEOUT_SECONDS);
+                executor.shutdownNow();
             }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        
+        // Final flush of health updates the runs left pending
+        if (healthPublisher != null) {
+            healthPublisher.close();
+            publishProcessorStats(true);
+        }
+        
+        // Complete the recorded lab traffic so the archive ends cleanly
+        LabTrafficArchive trafficArchive = LabHttpClient.getTrafficArchive();
+        if (trafficArchive != null) {
+            trafficArchive.close();
+        }
+        
+        // Close MongoDB connection
+        if (mongoClient != null) {
+            mongoClient.close();
+            logger.info("MongoDB connection closed");
         }
     }
     
@@ -165,10 +348,132 @@ public class ResultsProcessor {
      */
     private void runOneOffMode() {
         logger.info("{} Executing one-off test cycle", STEP);
-        executeExerciseTests();
+        try {
+            executor.submit(() -> executeExerciseTests(participant, 1, false, null, true)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("One-off execution interrupted");
+            return;
+        } catch (ExecutionException e) {
+            logger.error("One-off execution failed", e.getCause());
+            return;
+        }
         logger.info("{} One-off execution completed", SUCCESS);
     }
     
+    /**
+     * Runs in multi-tenant mode - grades every participant from this process
+     * Refreshes the participant list periodically and schedules a full run per participant
+     * every polling interval; runs of different participants are admitted in FIFO order
+     */
+    private void runMultiTenantMode() {
+        long refreshMillis = getIntEnvironmentVariable("PARTICIPANT_REFRESH_SECONDS", 60) * 1000L;
+        long pollMillis = getIntEnvironmentVariable("MULTI_TENANT_POLL_SECONDS", 3600) * 1000L;
+        Map<String, Participant> participants = new HashMap<>();
+        Map<String, Long> nextScheduledRuns = new HashMap<>();
+        
+        logger.info("{} Refreshing participants every {}s, polling each participant every {}s", 
+            INFO, refreshMillis / 1000, pollMillis / 1000);
+        
+        while (!shutdown.get()) {
+            try {
+                Set<String> activeParticipants = discoverParticipants();
+                
+                // Stop grading participants that were released or decommissioned
+                for (String name : new ArrayList<>(participants.keySet())) {
+                    if (!activeParticipants.contains(name)) {
+                        participants.remove(name);
+                        triggerCoalescers.remove(name);
+                        stopChangeStreamWatcher(name);
+                        nextScheduledRuns.remove(name);
+                        logger.info("{} Participant {} is no longer active - stopped grading", INFO, name);
+                    }
+                }
+                
+                long now = System.currentTimeMillis();
+                for (String name : activeParticipants) {
+                    Participant existing = participants.get(name);
+                    if (existing == null) {
+                        Participant newParticipant = Participant.fromTemplates(name, 
+                            getEnvironmentVariable("SERVICE_NAME"), System.getenv("LAB_PATH"));
+                        logHealthInformation(newParticipant);
+                        registerParticipant(newParticipant);
+                        participants.put(name, newParticipant);
+                        startChangeStreamWatcher(newParticipant);
+                        logger.info("{} Participant {} discovered (service: {})", INFO, name, newParticipant.getServiceName());
+                        submitTriggeredExecution(newParticipant, "participant discovered", false);
+                        nextScheduledRuns.put(name, now + pollMillis);
+                    } else if (now >= nextScheduledRuns.getOrDefault(name, 0L)) {
+                        submitTriggeredExecution(existing, "scheduled polling", false);
+                        nextScheduledRuns.put(name, now + pollMillis);
+                    }
+                }
+                
+                Thread.sleep(refreshMillis);
+                
+            } catch (InterruptedException e) {
+                logger.warn("Multi-tenant loop interrupted - shutting down gracefully");
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                logger.error("Error in multi-tenant cycle: {}", e.getMessage());
+                try {
+                    Thread.sleep(5000); // Short delay before retrying
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Reads the participants that currently hold a workspace
+     * Matches the portal's definition: taken (or never assigned) and not decommissioned
+     */
+    private Set<String> discoverParticipants() {
+        Set<String> names = new LinkedHashSet<>();
+        MongoCollection<Document> participantsCollection = database.getCollection(PARTICIPANTS_COLLECTION);
+        for (Document doc : participantsCollection.find(Filters.and(
+                Filters.or(Filters.eq("taken", true), Filters.exists("taken", false)),
+                Filters.ne("decommissioned", true)))
+                .projection(new Document("_id", 1))) {
+            names.add(String.valueOf(doc.get("_id")));
+        }
+        return names;
+    }
+    
+    /**
+     * Creates the trigger coalescer of a participant, so its runs never overlap
+     */
+    private void registerParticipant(Participant participant) {
+        triggerCoalescers.computeIfAbsent(participant.getName(), name -> new TriggerCoalescer<>(executor, triggerDebounce,
+            RunRequest::merge, (generation, request) -> handleTriggeredExecution(participant, generation, request)));
+    }
+    
+    /**
+     * Starts watching the participant database for index and collection changes, when enabled
+     * Affected exercises are re-graded through the participant's coalescer like any other trigger
+     */
+    private void startChangeStreamWatcher(Participant participant) {
+        if (!changeStreamTriggers) {
+            return;
+        }
+        ChangeStreamWatcher watcher = new ChangeStreamWatcher(mongoClient.getDatabase(participant.getName()),
+            database.getCollection(CHANGE_STREAM_TOKENS_COLLECTION), participant.getName(), executor,
+            (description, exercises) -> submitTriggeredExecution(participant, RunRequest.targeted(description, exercises)));
+        if (changeStreamWatchers.putIfAbsent(participant.getName(), watcher) == null) {
+            watcher.start();
+        }
+    }
+    
+    private void stopChangeStreamWatcher(String name) {
+        ChangeStreamWatcher watcher = changeStreamWatchers.remove(name);
+        if (watcher != null) {
+            watcher.stop();
+        }
+    }
+    
     /**
      * Runs in signal mode - continuous operation with signal watching
      */
@@ -176,7 +481,7 @@ public class ResultsProcessor {
         // Check for immediate signal and run once if signal exists
         if (checkForServerRestartSignal()) {
             logger.info("{} Server restart signal detected - running immediate cycle", SIGNAL);
-            handleTriggeredExecution("initial signal", true);
+            submitTriggeredExecution("initial signal", true);
         }
         
         // Continue with hourly polling loop
@@ -228,7 +533,7 @@ public class ResultsProcessor {
             // Initial check for existing signal
             if (checkForServerRestartSignal()) {
                 logger.info("{} Found existing signal file on startup", SIGNAL);
-                handleTriggeredExecution("startup signal", true);
+                submitTriggeredExecution("startup signal", true);
             }
             
             // Watch for file changes
@@ -241,7 +546,7 @@ public class ResultsProcessor {
                     if (key == null) {
                         // Timeout - run regular polling cycle
                         logger.info("Running scheduled polling cycle at {}", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME));
-                        handleTriggeredExecution("scheduled timeout");
+                        submitTriggeredExecution("scheduled timeout", false);
                         continue;
                     }
                     
@@ -266,7 +571,7 @@ public class ResultsProcessor {
                             
                             if (checkForServerRestartSignal()) {
                                 logger.info("{} Server restart signal detected via file watching - triggering execution", SIGNAL);
-                                handleTriggeredExecution("file watching", true);
+                                submitTriggeredExecution("file watching", true);
                             }
                         }
                     }
@@ -307,7 +612,7 @@ public class ResultsProcessor {
                 // Check for server restart signal first
                 if (checkForServerRestartSignal()) {
                     logger.info("{} Server restart signal detected during polling - triggering execution", SIGNAL);
-                    handleTriggeredExecution("polling signal", true);
+                    submitTriggeredExecution("polling signal", true);
                 }
                 
                 // Wait for 1 hour before next check
@@ -315,7 +620,7 @@ public class ResultsProcessor {
                 
                 // Run regular polling cycle
                 logger.info("Running scheduled polling cycle at {}", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME));
-                handleTriggeredExecution("scheduled polling");
+                submitTriggeredExecution("scheduled polling", false);
                 
             } catch (InterruptedException e) {
                 logger.warn("Polling interrupted - shutting down gracefully");
@@ -335,56 +640,74 @@ public class ResultsProcessor {
     }
     
     /**
-     * Handles execution requests with concurrency control
+     * Hands a trigger for the single-tenant participant to its coalescer
+     * @param trigger Description of what triggered this execution
+     * @param isNewSignal Whether this execution was triggered by a new signal detection
      */
-    private void handleTriggeredExecution(String trigger) {
-        handleTriggeredExecution(trigger, false);
+    private void submitTriggeredExecution(String trigger, boolean isNewSignal) {
+        submitTriggeredExecution(participant, trigger, isNewSignal);
     }
     
     /**
-     * Handles execution requests with concurrency control
+     * Hands a trigger to the participant's coalescer so the watcher never blocks on a run
+     * Bursts of triggers collapse into a single run against the latest state
+     * @param participant Participant to grade
      * @param trigger Description of what triggered this execution
      * @param isNewSignal Whether this execution was triggered by a new signal detection
      */
-    private void handleTriggeredExecution(String trigger, boolean isNewSignal) {
-        synchronized (executionLock) {
-            if (isExecuting) {
-                logger.info("{} Tests are currently running (triggered by {}), marking pending execution", WARNING, trigger);
-                pendingExecution = true;
-                return;
-            }
-            
-            // Reset the last-execution.log file ONLY when processing a new signal
-            if (isNewSignal) {
-                resetLastExecutionLog();
-            }
-            
-            logger.info("{} Starting test execution (triggered by {})", STEP, trigger);
-            isExecuting = true;
+    private void submitTriggeredExecution(Participant participant, String trigger, boolean isNewSignal) {
+        submitTriggeredExecution(participant, RunRequest.of(trigger, isNewSignal));
+    }
+    
+    /**
+     * Hands a run request to the participant's coalescer
+     */
+    private void submitTriggeredExecution(Participant participant, RunRequest request) {
+        if (shutdown.get()) {
+            logger.warn("{} Ignoring trigger {} - processor is shutting down", WARNING, request);
+            return;
+        }
+        TriggerCoalescer<RunRequest> coalescer = triggerCoalescers.get(participant.getName());
+        if (coalescer == null) {
+            logger.warn("{} Ignoring trigger {} - participant {} is not graded anymore", WARNING, request, participant);
+            return;
+        }
+        long generation = coalescer.signal(request);
+        logger.debug("Trigger {} for {} assigned generation {}", request, participant, generation);
+    }
+    
+    /**
+     * Executes one coalesced run on behalf of every trigger up to the given generation
+     * Called by the participant's trigger coalescer, which guarantees runs never overlap;
+     * runs of different participants wait for a fair run permit
+     * @param participant Participant to grade
+     * @param generation Latest signal generation this run satisfies
+     * @param request Merged request of all coalesced triggers
+     */
+    private void handleTriggeredExecution(Participant participant, long generation, RunRequest request) {
+        // Reset the last-execution.log file ONLY when processing a new signal
+        if (request.isNewSignal()) {
+            resetLastExecutionLog();
         }
         
         try {
-            executeExerciseTests();
-            
-            // Check if another execution was requested while we were running
-            synchronized (executionLock) {
-                if (pendingExecution) {
-                    logger.info("{} Pending execution detected - running additional cycle", SIGNAL);
-                    pendingExecution = false;
-                    executeExerciseTests();
-                }
-            }
-            
+            runPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Run for {} interrupted while waiting for a run permit", participant);
+            return;
+        }
+        try {
+            logger.info("{} Starting test execution for {} generation {} (triggered by {})", STEP, participant, generation, request);
+            executeExerciseTests(participant, generation, !request.isFullRun(), request.getTargetExercises(), request.isNewSignal());
         } finally {
-            synchronized (executionLock) {
-                isExecuting = false;
-                if (pendingExecution) {
-                    // If there's still a pending execution, schedule it
-                    logger.info("{} Scheduling pending execution", SIGNAL);
-                    // Use a separate thread to avoid deep recursion
-                    new Thread(() -> handleTriggeredExecution("pending", false)).start();
-                }
-            }
+            runPermits.release();
+        }
+        
+        TriggerCoalescer<RunRequest> coalescer = triggerCoalescers.get(participant.getName());
+        if (coalescer != null) {
+            logger.info("{} Generation {} of {} completed - {} signals received, {} runs executed, {} signals coalesced", INFO, 
+                generation, participant, coalescer.getSignalsReceived(), coalescer.getRunsExecuted(), coalescer.getSignalsCoalesced());
         }
     }
     
@@ -463,31 +786,25 @@ public class ResultsProcessor {
     
     /**
      * Logs health information to the health collection
+     * Only startup fields that differ from the stored document are written; exercise results are kept
      */
-    private void logHealthInformation() {
+    private void logHealthInformation(Participant participant) {
         try {
-            String currentUser = extractUsernameFromMongoUri();
-            MongoCollection<Document> healthCollection = database.getCollection(HEALTH_COLLECTION);
-            
-            // Create minimal health document for application startup
-            Document healthDoc = new Document();
-            healthDoc.append("_id", currentUser);
-            healthDoc.append("version", VERSION);
+            String currentUser = participant.getName();
             
             // Add environment information
-            Map<String, String> envInfo = new HashMap<>();
+            Document envInfo = new Document();
             envInfo.put("environment", getEnvironmentVariable("ENVIRONMENT"));
             envInfo.put("log_level", getEnvironmentVariable("LOG_LEVEL"));
-            envInfo.put("service_name", getEnvironmentVariable("SERVICE_NAME"));
-            healthDoc.append("environment_info", envInfo);
+            envInfo.put("service_name", participant.getServiceName());
+            envInfo.put("processor_mode", isMultiTenant ? MULTI_TENANT_MODE : "single-tenant");
             
-            // Initialize empty exercise results - will be updated after execution
-            healthDoc.append("exercise_results", new ArrayList<>());
-            healthDoc.append("execution_status", "started");
+            Document startupFields = new Document()
+                .append("version", VERSION)
+                .append("environment_info", envInfo);
             
-            // Upsert health document (replace if exists, insert if not)
-            healthCollection.replaceOne(Filters.eq("_id", currentUser), healthDoc, 
-                new ReplaceOptions().upsert(true));
+            healthStates.put(currentUser, HealthState.start(database.getCollection(HEALTH_COLLECTION), currentUser,
+                healthStatsInterval, startupFields));
             logger.info("Health information logged to {} collection for user {}", HEALTH_COLLECTION, currentUser);
             
         } catch (Exception e) {
@@ -496,95 +813,338 @@ public class ResultsProcessor {
         }
     }
     
+    /**
+     * Starts a new generation in the health state; it is published as running with its first changed result
+     */
+    private void markHealthRunning(String user, long generation) {
+        HealthState healthState = healthStates.get(user);
+        if (healthState != null) {
+            healthState.beginRun(generation);
+        }
+    }
+    
+    /**
+     * Streams a single exercise result into the health document as soon as it completes
+     * Unchanged results are not written; changed ones are coalesced by the health publisher
+     */
+    private void publishExerciseResult(String user, String testName, ExerciseResult result) {
+        HealthState healthState = healthStates.get(user);
+        if (healthState != null && healthState.updateExercise(toExerciseResultDocument(testName, result))) {
+            healthPublisher.publish(healthState, false);
+        }
+    }
+    
+    /**
+     * Converts an exercise result to its results_health representation
+     */
+    private static Document toExerciseResultDocument(String testName, ExerciseResult result) {
+        Document resultDoc = new Document();
+        resultDoc.append("exercise_name", testName);
+        resultDoc.append("passed", result.isPassed());
+        if (!result.isPassed() && result.getFailureReason() != null) {
+            resultDoc.append("failure_reason", result.getFailureReason());
+        }
+        return resultDoc;
+    }
+    
     /**
      * Updates health information with exercise results and failure reasons
+     * Written behind by the health publisher, right away since the run ended
+     */
+    private void updateHealthWithExerciseResults(String currentUser, Map<String, ExerciseResult> exerciseResults, long generation) {
+        HealthState healthState = recordRunHealth(currentUser, exerciseResults, generation);
+        if (healthState != null) {
+            healthPublisher.publish(healthState, true);
+        }
+        publishProcessorStats(false);
+    }
+    
+    /**
+     * Records the outcome of a run in the user's health state, without writing it
+     * @return The health state, or null when no health information is logged for the user
      */
-    private void updateHealthWithExerciseResults(Map<String, ExerciseResult> exerciseResults) {
+    private HealthState recordRunHealth(String currentUser, Map<String, ExerciseResult> exerciseResults, long generation) {
+        HealthState healthState = healthStates.get(currentUser);
+        if (healthState == null) {
+            logger.warn("No health information logged for user {} - skipped the update", currentUser);
+            return null;
+        }
         try {
-            String currentUser = extractUsernameFromMongoUri();
-            MongoCollection<Document> healthCollection = database.getCollection(HEALTH_COLLECTION);
+            TriggerCoalescer<RunRequest> coalescer = triggerCoalescers.get(currentUser);
             
             // Convert exercise results to documents
             List<Document> exerciseResultDocs = new ArrayList<>();
             for (Map.Entry<String, ExerciseResult> entry : exerciseResults.entrySet()) {
-                Document resultDoc = new Document();
-                resultDoc.append("exercise_name", entry.getKey());
-                resultDoc.append("passed", entry.getValue().isPassed());
-                if (!entry.getValue().isPassed() && entry.getValue().getFailureReason() != null) {
-                    resultDoc.append("failure_reason", entry.getValue().getFailureReason());
-                }
-                exerciseResultDocs.add(resultDoc);
+                exerciseResultDocs.add(toExerciseResultDocument(entry.getKey(), entry.getValue()));
             }
             
-            // Update the health document with exercise results
-            Document update = new Document("$set", new Document()
+            // Summary fields are compared with the published ones; statistics change on every run
+            Document summary = new Document()
                 .append("version", VERSION)
-                .append("exercise_results", exerciseResultDocs)
                 .append("execution_status", "completed")
-                .append("last_updated", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
                 .append("total_exercises", exerciseResults.size())
-                .append("passed_exercises", exerciseResults.values().stream().mapToInt(r -> r.isPassed() ? 1 : 0).sum()));
+                .append("passed_exercises", exerciseResults.values().stream().mapToInt(r -> r.isPassed() ? 1 : 0).sum());
+            Document stats = new Document();
+            if (coalescer != null) {
+                stats.append("trigger_stats", new Document()
+                    .append("signals_received", coalescer.getSignalsReceived())
+                    .append("runs_executed", coalescer.getRunsExecuted())
+                    .append("signals_coalesced", coalescer.getSignalsCoalesced()));
+            }
+            stats.append("endpoint_traffic", endpointTrafficStats(currentUser));
+            stats.append("lab_request_latency", labRequestLatencyStats(currentUser));
+            stats.append("load_test_results", loadTestResults(currentUser));
+            ServiceReadiness readiness = serviceReadiness.get(currentUser);
+            if (readiness != null) {
+                stats.append("service_readiness", new Document()
+                    .append("ready", readiness.isReady())
+                    .append("polled", readiness.isPolled())
+                    .append("attempts", readiness.getAttempts())
+                    .append("time_to_ready_ms", readiness.getElapsed().toMillis())
+                    .append("checked_at", readiness.getCheckedAt().toString()));
+            }
             
-            healthCollection.updateOne(Filters.eq("_id", currentUser), update);
-            logger.info("Updated health information with exercise results for user {}", currentUser);
+            healthState.updateRun(exerciseResultDocs, summary, stats);
             
         } catch (Exception e) {
             logger.error("Failed to update health information with exercise results", e);
             // Don't throw - we want to continue even if health update fails
         }
+        return healthState;
+    }
+    
+    /**
+     * Writes the process-wide statistics to the processor's own results_health document
+     * Participants' documents only hold their own share; this one is refreshed at most once per
+     * statistics interval, and on shutdown
+     * @param force Whether to write regardless of the interval (shutdown)
+     */
+    private void publishProcessorStats(boolean force) {
+        long now = System.currentTimeMillis();
+        long publishedAt = processorStatsPublishedAt.get();
+        if (!force && (now - publishedAt < healthStatsInterval.toMillis() || !processorStatsPublishedAt.compareAndSet(publishedAt, now))) {
+            return;
+        }
+        try {
+            Document processorDoc = new Document()
+                .append("version", VERSION)
+                .append("processor_mode", isMultiTenant ? MULTI_TENANT_MODE : "single-tenant")
+                .append("http_client_stats", new Document()
+                    .append("requests_sent", LabHttpClient.getRequestsSent())
+                    .append("tls_handshakes", LabHttpClient.getTlsHandshakes())
+                    .append("http2_responses", LabHttpClient.getHttp2Responses())
+                    .append("streamed_responses", LabHttpClient.getStreamedResponses())
+                    .append("streams_stopped_early", LabHttpClient.getStreamsStoppedEarly())
+                    .append("peak_response_chars", LabHttpClient.getPeakResponseChars())
+                    .append("responses_too_large", LabHttpClient.getResponsesTooLarge())
+                    .append("traffic_archive", trafficArchiveStats()))
+                .append("health_publisher", new Document()
+                    .append("updates_received", healthPublisher.getUpdatesReceived())
+                    .append("writes", healthPublisher.getWrites())
+                    .append("flush_interval_ms", healthPublisher.getInterval().toMillis()))
+                .append("last_updated", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+            database.getCollection(HEALTH_COLLECTION).updateOne(Filters.eq("_id", processorId),
+                new Document("$set", processorDoc), new UpdateOptions().upsert(true));
+        } catch (Exception e) {
+            logger.warn("{} Failed to update processor statistics: {}", WARNING, e.getMessage());
+        }
+    }
+    
+    /**
+     * Gets the name of the host (the pod name on Kubernetes) identifying this processor
+     */
+    private static String getHostName() {
+        String hostName = System.getenv("HOSTNAME");
+        if (hostName != null && !hostName.isEmpty()) {
+            return hostName;
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+    
+    /**
+     * Lists the latency percentiles, status codes and response sizes of a user's lab requests
+     * per exercise and endpoint, accumulated since the processor started
+     */
+    private static List<Document> labRequestLatencyStats(String user) {
+        List<Document> stats = new ArrayList<>();
+        for (LabRequestStats requestStats : LabHttpClient.getRequestStats(user)) {
+            LatencyHistogram latency = requestStats.getLatency();
+            stats.add(new Document()
+                .append("exercise", requestStats.getExercise())
+                .append("endpoint", requestStats.getEndpoint())
+                .append("requests", latency.getCount())
+                .append("p50_ms", toMillis(latency.getPercentileMicros(50)))
+                .append("p95_ms", toMillis(latency.getPercentileMicros(95)))
+                .append("p99_ms", toMillis(latency.getPercentileMicros(99)))
+                .append("max_ms", toMillis(latency.getMaxMicros()))
+                .append("mean_ms", toMillis(latency.getMeanMicros()))
+                .append("status_codes", new Document(new LinkedHashMap<>(requestStats.getStatusCodes())))
+                .append("response_bytes", requestStats.getResponseBytes())
+                .append("max_response_bytes", requestStats.getMaxResponseBytes()));
+        }
+        return stats;
+    }
+    
+    /**
+     * Describes the lab traffic archive in use, or null when lab traffic is not archived
+     */
+    private static Document trafficArchiveStats() {
+        LabTrafficArchive archive = LabHttpClient.getTrafficArchive();
+        if (archive == null) {
+            return null;
+        }
+        return new Document()
+            .append("mode", archive.getMode().name().toLowerCase(Locale.ROOT))
+            .append("path", archive.getPath().toString())
+            .append("exchanges", archive.getExchanges())
+            .append("misses", archive.getMisses());
+    }
+    
+    /**
+     * Lists the measured numbers and outcome of the latest load grading run of each load exercise
+     */
+    private static List<Document> loadTestResults(String user) {
+        List<Document> results = new ArrayList<>();
+        for (LoadTestReport report : LoadTest.getReports(user)) {
+            LoadProfile profile = report.getProfile();
+            LatencyHistogram latency = report.getLatency();
+            results.add(new Document()
+                .append("exercise", report.getExercise())
+                .append("endpoint", report.getEndpoint())
+                .append("target", new Document()
+                    .append("rate_per_second", profile.isOpenLoop() ? profile.getRatePerSecond() : null)
+                    .append("concurrency", profile.getConcurrency())
+                    .append("duration_seconds", profile.getDuration().toSeconds())
+                    .append("max_p95_ms", profile.getMaxP95Millis())
+                    .append("max_p99_ms", profile.getMaxP99Millis())
+                    .append("min_throughput_rps", profile.getMinThroughputPerSecond())
+                    .append("max_error_rate", profile.getMaxErrorRate()))
+                .append("requests", report.getRequests())
+                .append("successes", report.getSuccesses())
+                .append("failures", report.getFailures())
+                .append("dropped", report.getDropped())
+                .append("elapsed_seconds", Math.round(report.getElapsedSeconds() * 10) / 10.0)
+                .append("throughput_rps", Math.round(report.getThroughputPerSecond() * 10) / 10.0)
+                .append("error_rate", Math.round(report.getErrorRate() * 10000) / 10000.0)
+                .append("p50_ms", toMillis(latency.getPercentileMicros(50)))
+                .append("p95_ms", toMillis(latency.getPercentileMicros(95)))
+                .append("p99_ms", toMillis(latency.getPercentileMicros(99)))
+                .append("max_ms", toMillis(latency.getMaxMicros()))
+                .append("status_codes", new Document(new LinkedHashMap<>(report.getStatusCodes())))
+                .append("passed", report.isPassed())
+                .append("failure_reason", report.getFailureReason())
+                .append("completed_at", Date.from(report.getCompletedAt())));
+        }
+        return results;
+    }
+    
+    /**
+     * Converts microseconds to milliseconds rounded to 0.1 ms
+     */
+    private static double toMillis(double micros) {
+        return Math.round(micros / 100.0) / 10.0;
+    }
+    
+    /**
+     * Lists the response traffic of each of a user's lab endpoints, wire (possibly compressed) versus decoded bytes
+     */
+    private static List<Document> endpointTrafficStats(String user) {
+        List<Document> stats = new ArrayList<>();
+        new TreeMap<>(LabHttpClient.getEndpointTraffic(user)).forEach((endpoint, traffic) -> stats.add(new Document()
+            .append("endpoint", endpoint)
+            .append("responses", traffic.getResponses())
+            .append("compressed_responses", traffic.getCompressedResponses())
+            .append("wire_bytes", traffic.getWireBytes())
+            .append("raw_bytes", traffic.getRawBytes())));
+        return stats;
     }
     
     /**
      * Executes all exercise tests based on scenario configuration from MongoDB
+     * @param participant Participant to grade
+     * @param generation Signal generation this run satisfies, recorded in the health document
+     * @param incremental Whether exercises with unchanged answer files keep their previous result
+     * @param targetExercises Exercises the run is limited to (plus dependents), or null for all
+     * @param awaitReadiness Whether to poll the service until it is up (the backend was just (re)started)
      */
-    private void executeExerciseTests() {
+    private void executeExerciseTests(Participant participant, long generation, boolean incremental, Set<String> targetExercises, boolean awaitReadiness) {
+        // Read the scenario once per run for the exercise list and deadlines
+        ScenarioSettings settings = loadScenarioSettings();
+        
         // Get the exercise list from scenario_config collection or fallback to hardcoded list
-        List<String> exercisesToTest = getExerciseListFromConfig();
+        List<String> exercisesToTest = getExerciseListFromConfig(settings);
         
         logger.info("\n{}\n{} Starting test execution for {} exercises \n{}", SEPARATOR, STEP, exercisesToTest.size(), SEPARATOR);
         
         // Get service name and environment
         String environment = getEnvironmentVariable("ENVIRONMENT");
-        String serviceName = getEnvironmentVariable("SERVICE_NAME");
-        String currentUser = extractUsernameFromMongoUri();
+        String serviceName = participant.getServiceName();
+        String currentUser = participant.getName();
         
         if (serviceName == null || serviceName.isEmpty()) {
             logger.error("SERVICE_NAME environment variable not configured. Cannot proceed with testing.");
             // Update health with error status
             Map<String, ExerciseResult> errorResults = new HashMap<>();
             for (String testName : exercisesToTest) {
-                errorResults.put(testName, new ExerciseResult(false, "SERVICE_NAME not configured"));
+                errorResults.put(testName, ExerciseResult.inconclusive("SERVICE_NAME not configured"));
             }
-            updateHealthWithExerciseResults(errorResults);
+            updateHealthWithExerciseResults(currentUser, errorResults, generation);
             return;
         }
         
         // Check if service is available before running tests
-        if (!checkServiceAvailability(serviceName)) {
-            logger.error("Service {} is not available. Cannot proceed with testing.", serviceName);
-            // Update health with service unavailable status
-            Map<String, ExerciseResult> errorResults = new HashMap<>();
-            for (String testName : exercisesToTest) {
-                errorResults.put(testName, new ExerciseResult(false, "Service not available: " + serviceName));
-            }
-            updateHealthWithExerciseResults(errorResults);
-            return;
+        // Endpoint exercises depend on it; database-only exercises (indexes) still run without it
+        // A circuit breaker opened by an earlier run lets this check through as its probe
+        ServiceCircuitBreaker.forService(serviceName).halfOpen();
+        ServiceReadiness readiness = checkServiceReadiness(serviceName, awaitReadiness);
+        serviceReadiness.put(currentUser, readiness);
+        ExerciseResult serviceResult;
+        if (readiness.isReady()) {
+            serviceResult = new ExerciseResult(true, null);
+            prewarmConnections(serviceName);
+        } else if (readiness.isPolled()) {
+            logger.error("Service {} did not become ready within {} s. Only database exercises will be tested.", 
+                serviceName, readinessTimeout.toSeconds());
+            serviceResult = ExerciseResult.inconclusive("Service not ready within " + readinessTimeout.toSeconds() + " s: " + serviceName);
+        } else {
+            logger.error("Service {} is not available. Only database exercises will be tested.", serviceName);
+            serviceResult = ExerciseResult.inconclusive("Service not available: " + serviceName);
         }
         
         logger.info("Executing tests for {} environment with service: {}", environment, serviceName);
         
-        // Execute tests and collect both regular results and exercise results
-        Map<String, ExerciseResult> exerciseResults = new HashMap<>();
-        List<Document> testResults = executeTestsForEnvironment(exercisesToTest, serviceName, environment, currentUser, exerciseResults);
+        // Already passed exercises are read once and kept up to date for the rest of the run
+        CompletedExercises completed = CompletedExercises.load(database.getCollection(RESULTS_COLLECTION), currentUser);
         
-        // Store results in MongoDB
-        storeResults(testResults, currentUser);
+        // Execute tests and collect both regular results and exercise results
+        Map<String, ExerciseResult> exerciseResults = new LinkedHashMap<>();
+        List<Document> testResults = executeTestsForEnvironment(exercisesToTest, participant, environment, exerciseResults, settings, serviceResult, generation, incremental, targetExercises, completed);
         
-        // Update health collection with exercise results
-        updateHealthWithExerciseResults(exerciseResults);
+        // New results and the run's health summary are committed together before the run ends
+        String runId = UUID.randomUUID().toString();
+        HealthState healthState = recordRunHealth(currentUser, exerciseResults, generation);
+        boolean committed = healthState != null
+            ? healthState.commitRun(delta -> runCommitter.commit(currentUser, runId, testResults, delta))
+            : runCommitter.commit(currentUser, runId, testResults, null);
+        List<String> passed = new ArrayList<>();
+        testResults.forEach(result -> passed.add(result.getString("name")));
+        if (committed) {
+            completed.add(passed);
+        } else {
+            // Health must not show results that are not stored; the publisher writes it once the cluster recovers
+            passed.forEach(testName -> exerciseResults.put(testName, ExerciseResult.inconclusive("Result could not be stored - graded again on the next run")));
+            if (recordRunHealth(currentUser, exerciseResults, generation) != null) {
+                healthPublisher.publish(healthState, true);
+            }
+        }
+        publishProcessorStats(false);
 
         int totalTests = exercisesToTest.size();
-        int passedTests = getCompletedTests(currentUser).size();
+        int passedTests = completed.size();
 
         logger.info("{} Summary: Total tests: {}, Passed tests: {}", INFO, totalTests, passedTests);
 
@@ -599,35 +1159,95 @@ public class ResultsProcessor {
     
     /**
      * Executes all exercise tests for a specific environment using Java test methods
+     * Pending exercises are fanned out to the execution engine along the prerequisite graph
+     * and merged back in list order
+     * In incremental runs, pending exercises whose answer files did not change keep their previous result;
+     * in targeted runs, only the target exercises and their dependents are re-graded
      */
-    private List<Document> executeTestsForEnvironment(List<String> exerciseTests, String serviceName, String environment, String user, Map<String, ExerciseResult> exerciseResults) {
+    private List<Document> executeTestsForEnvironment(List<String> exerciseTests, Participant participant, String environment, Map<String, ExerciseResult> exerciseResults, ScenarioSettings settings, ExerciseResult serviceResult, long generation, boolean incremental, Set<String> targetExercises, CompletedExercises completed) {
         List<Document> testResults = new ArrayList<>();
+        String user = participant.getName();
+        Path labPath = participant.getLabPath();
         
-        // Get existing results to check what's already passed
-        Set<String> completedTests = getCompletedTests(user);
-        
+        List<String> pendingTests = new ArrayList<>();
         for (String testName : exerciseTests) {
             // Check if test was already completed
-            if (completedTests.contains(testName)) {
+            if (completed.contains(testName)) {
                 logger.info("Test {} already completed for user {}, marking as passed", testName, user);
                 exerciseResults.put(testName, new ExerciseResult(true, null));
+            } else {
+                pendingTests.add(testName);
+            }
+        }
+        
+        // Prerequisites decided outside this run: the service check and already completed exercises
+        Map<String, ExerciseResult> knownResults = new HashMap<>(exerciseResults);
+        knownResults.put(ExerciseGraph.SERVICE, serviceResult);
+        
+        ExerciseGraph graph = ExerciseGraph.create(settings.getPrerequisites());
+        ExerciseHistory history = ExerciseHistory.load(database.getCollection(HISTORY_COLLECTION), user);
+        Map<String, String> inputHashes = hashAnswerFiles(pendingTests, settings, labPath);
+        
+        // Exercises whose answer files did not change (or that were not targeted) keep their previous result
+        Map<String, ExerciseResult> carriedOver = new HashMap<>();
+        Set<String> regrade = null;
+        if (targetExercises != null) {
+            // Passed exercises without a stored result are re-graded along with the targets
+            Set<String> targets = new LinkedHashSet<>(targetExercises);
+            pendingTests.stream().filter(history::hasPassed).forEach(targets::add);
+            regrade = graph.withDependents(targets, pendingTests);
+            regrade.retainAll(pendingTests);
+        } else if (incremental && labPath != null) {
+            regrade = history.selectForRegrading(pendingTests, inputHashes, graph);
+        }
+        if (regrade != null) {
+            for (String testName : pendingTests) {
+                if (!regrade.contains(testName)) {
+                    carriedOver.put(testName, history.carryOver(testName));
+                }
+            }
+            List<String> regradeInOrder = new ArrayList<>(pendingTests);
+            regradeInOrder.retainAll(regrade);
+            pendingTests = regradeInOrder;
+            knownResults.putAll(carriedOver);
+            logger.info("{} Re-grading {} changed or targeted exercises, carrying over {} unchanged results", 
+                INFO, pendingTests.size(), carriedOver.size());
+        }
+        
+        // Recently edited and recently failed exercises run first so their feedback arrives first
+        pendingTests = history.prioritize(pendingTests, labPath);
+        logger.info("{} Execution order: {}", INFO, pendingTests);
+        
+        markHealthRunning(user, generation);
+        
+        // Results are streamed into results_health as each exercise completes
+        Map<String, ExerciseResult> pendingResults = executionEngine.execute(pendingTests, graph, knownResults,
+            (testName, deadline) -> executeTest(testName, participant, settings, deadline),
+            settings::getExerciseTimeout, settings.getRunTimeout(),
+            (testName, result) -> publishExerciseResult(user, testName, result));
+        
+        history.record(pendingResults, inputHashes);
+        
+        for (String testName : exerciseTests) {
+            ExerciseResult carried = carriedOver.get(testName);
+            if (carried != null) {
+                exerciseResults.put(testName, carried);
                 continue;
             }
             
-            Document testResult = executeTest(testName, serviceName, environment, user, exerciseResults);
-            
-            // Only add successful test results
-            if (testResult != null) {
-                testResults.add(testResult);
+            ExerciseResult result = pendingResults.get(testName);
+            if (result == null) {
+                continue;
             }
+            exerciseResults.put(testName, result);
             
-            // Small delay between tests
-            try {
-                Thread.sleep(500); // 500ms delay
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                logger.warn("Thread interrupted during test execution delay");
-                break; // Exit if interrupted
+            // Only create result document if test passes (first time)
+            if (result.isPassed()) {
+                Document testResult = new Document();
+                testResult.append("name", testName);
+                testResult.append("username", user);
+                testResult.append("timestamp", result.getCompletedAt());
+                testResults.add(testResult);
             }
         }
         
@@ -635,36 +1255,42 @@ public class ResultsProcessor {
     }
 
     /**
-     * Gets the exercise list from scenario_config collection or falls back to hardcoded list
+     * Hashes the answer files of each exercise, skipping exercises without any answer file
      */
-    private List<String> getExerciseListFromConfig() {
-        try {
-            MongoCollection<Document> scenarioCollection = database.getCollection("scenario_config");
-            
-            // Find the scenario configuration document
-            Document scenarioDoc = scenarioCollection.find().first();
-            
-            if (scenarioDoc != null) {
-                Document neededAnswerFiles = scenarioDoc.get("needed_answer_files", Document.class);
-                if (neededAnswerFiles != null) {
-                    Document analysis = neededAnswerFiles.get("analysis", Document.class);
-                    if (analysis != null) {
-                        @SuppressWarnings("unchecked")
-                        List<String> listedExercises = analysis.get("listed_exercises", List.class);
-                        if (listedExercises != null && !listedExercises.isEmpty()) {
-                            logger.info("{} Using exercise list from scenario_config: {}", INFO, listedExercises);
-                            return new ArrayList<>(listedExercises);
-                        }
-                    }
-                }
+    private Map<String, String> hashAnswerFiles(List<String> exercises, ScenarioSettings settings, Path labPath) {
+        Map<String, String> inputHashes = new HashMap<>();
+        if (labPath == null) {
+            return inputHashes;
+        }
+        for (String exercise : exercises) {
+            String inputHash = AnswerFileDigest.of(labPath, settings.getAnswerFiles(exercise));
+            if (inputHash != null) {
+                inputHashes.put(exercise, inputHash);
             }
-            
-            logger.info("{} No exercises found in scenario_config, falling back to hardcoded list", WARNING);
-            
-        } catch (Exception e) {
-            logger.warn("{} Failed to fetch exercises from scenario_config, using fallback: {}", WARNING, e.getMessage());
+        }
+        return inputHashes;
+    }
+    
+    /**
+     * Gets the results processor settings from the scenario configuration cache
+     * Falls back to default settings when the configuration has never been readable
+     */
+    private ScenarioSettings loadScenarioSettings() {
+        return scenarioConfigCache.get();
+    }
+    
+    /**
+     * Gets the exercise list from scenario_config collection or falls back to hardcoded list
+     */
+    private List<String> getExerciseListFromConfig(ScenarioSettings settings) {
+        List<String> listedExercises = settings.getListedExercises();
+        if (listedExercises != null) {
+            logger.info("{} Using exercise list from scenario_config: {}", INFO, listedExercises);
+            return new ArrayList<>(listedExercises);
         }
         
+        logger.info("{} No exercises found in scenario_config, falling back to hardcoded list", WARNING);
+        
         // Fallback to hardcoded exercise list
         logger.info("{} Using fallback hardcoded exercise list: {}", INFO, EXERCISE_TESTS);
         return new ArrayList<>(EXERCISE_TESTS);
@@ -672,8 +1298,10 @@ public class ResultsProcessor {
     
     /**
      * Executes a single test using Java test methods
+     * Safe to call concurrently from the execution engine workers
+     * @param deadline Point in time by which HTTP and MongoDB work for this test must finish
      */
-    private Document executeTest(String testName, String serviceName, String environment, String user, Map<String, ExerciseResult> exerciseResults) {
+    private ExerciseResult executeTest(String testName, Participant participant, ScenarioSettings settings, Instant deadline) {
         String failureReason = null;
         boolean testSuccess = false;
         
@@ -681,28 +1309,23 @@ public class ResultsProcessor {
             logger.info("{} Executing test: {}", STEP, testName);
             
             // Execute the specific test method based on test name
-            BaseTest.TestResult testResult = executeSpecificTest(testName, user);
+            BaseTest.TestResult testResult = executeSpecificTest(testName, participant, settings, deadline);
             testSuccess = testResult.isSuccess();
             
             logger.info("{} Test {} {}", testSuccess ? SUCCESS : FAIL, testName, testSuccess ? "passed" : "failed");
             
             // Record the exercise result
             if (testSuccess) {
-                exerciseResults.put(testName, new ExerciseResult(true, null));
-                
-                // Only create result document if test passes (first time)
-                Document result = new Document();
-                result.append("name", testName);
-                result.append("username", user);
-                result.append("timestamp", new Date());
-                return result;
-            } else {
-                failureReason = testResult.getErrorMessage();
-                if (failureReason == null || failureReason.isEmpty()) {
-                    failureReason = "Test execution returned false with no specific reason";
-                }
-                exerciseResults.put(testName, new ExerciseResult(false, failureReason));
-                logger.warn("{} Test {} failed: {}", WARNING, testName, failureReason);
+                return new ExerciseResult(true, null);
+            }
+            
+            failureReason = testResult.getErrorMessage();
+            if (failureReason == null || failureReason.isEmpty()) {
+                failureReason = "Test execution returned false with no specific reason";
+            }
+            logger.warn("{} Test {} failed: {}", WARNING, testName, failureReason);
+            if (testResult.isInconclusive()) {
+                return ExerciseResult.inconclusive(failureReason);
             }
             
         } catch (Exception e) {
@@ -712,25 +1335,29 @@ public class ResultsProcessor {
                 failureReason = e.getClass().getSimpleName();
             }
             
-            // Record the exercise result with failure reason
-            exerciseResults.put(testName, new ExerciseResult(false, failureReason));
-            
             // Log the error
             logger.warn("{} Failed to execute test {} (error): {}", WARNING, testName, failureReason);
+            
+            // The answer was not evaluated, so this failure must not be carried over
+            return ExerciseResult.inconclusive(failureReason);
         }
         
-        // Return null if test failed or had error - will be filtered out
-        return null;
+        return new ExerciseResult(false, failureReason);
     }
     
     /**
      * Executes the specific test based on test name using separate test classes
      */
-    private BaseTest.TestResult executeSpecificTest(String testName, String user) {
+    private BaseTest.TestResult executeSpecificTest(String testName, Participant participant, ScenarioSettings settings, Instant deadline) {
         try {
-            BaseTest test = createTest(testName, user);
+            BaseTest test = createTest(testName, participant, settings, deadline);
             if (test != null) {
-                return test.execute();
+                BaseTest.TestResult result = test.execute();
+                // A test cut short by the circuit breaker did not evaluate the answer
+                if (!result.isSuccess() && test.getServiceUnavailableReason() != null) {
+                    return BaseTest.TestResult.inconclusive(test.getServiceUnavailableReason());
+                }
+                return result;
             } else {
                 String errorMessage = "Unknown test: " + testName;
                 logger.warn(errorMessage);
@@ -745,98 +1372,165 @@ public class ResultsProcessor {
     
     /**
      * Creates the appropriate test instance based on test name
+     * The test's database handle and lab requests are bounded by the deadline and its response byte budget
      */
-    private BaseTest createTest(String testName, String user) {
-        String serviceName = getEnvironmentVariable("SERVICE_NAME");
-        MongoDatabase database = mongoClient.getDatabase(user);
+    private BaseTest createTest(String testName, Participant participant, ScenarioSettings settings, Instant deadline) {
+        BaseTest test = createTest(testName, participant.getServiceName(), settings,
+            mongoClient.getDatabase(participant.getName()).withTimeout(remainingMillis(deadline), TimeUnit.MILLISECONDS));
+        if (test != null) {
+            test.setDeadline(deadline);
+            test.setMaxResponseBytes(settings.getMaxResponseBytes(testName));
+        }
+        return test;
+    }
+    
+    /**
+     * Milliseconds left until the deadline (at least 1 so the driver never treats it as infinite)
+     */
+    private static long remainingMillis(Instant deadline) {
+        return Math.max(1, Duration.between(Instant.now(), deadline).toMillis());
+    }
+    
+    /**
+     * Creates the appropriate test instance based on test name
+     * The scenario can override the endpoint each exercise is graded against
+     */
+    private BaseTest createTest(String testName, String serviceName, ScenarioSettings settings, MongoDatabase database) {
         String endpoint = "api/listingsAndReviews";
 
+        // Load exercises drive the exercise they are named after
+        if (LoadTest.isLoadExercise(testName)) {
+            BaseTest target = createTest(LoadTest.baseExercise(testName), serviceName, settings, database);
+            return target != null ? new LoadTest(target, settings.getLoadProfile(testName)) : null;
+        }
+
         switch (testName) {
             case "crud-index":
-                return new IndexTest(database, serviceName, endpoint);
+                return new IndexTest(database, serviceName, settings.getEndpoint(testName, endpoint));
             case "crud-1":
-                return new Crud1Test(database, serviceName, endpoint);
+                return new Crud1Test(database, serviceName, settings.getEndpoint(testName, endpoint));
             case "crud-2":
-                return new Crud2Test(database, serviceName, endpoint);
+                return new Crud2Test(database, serviceName, settings.getEndpoint(testName, endpoint));
             case "crud-3":
-                return new Crud3Test(database, serviceName, String.format("%s/distinct", endpoint));
+                return new Crud3Test(database, serviceName, settings.getEndpoint(testName, String.format("%s/distinct", endpoint)));
             case "crud-4":
-                return new Crud4Test(database, serviceName, String.format("%s/filter", endpoint));
+                return new Crud4Test(database, serviceName, settings.getEndpoint(testName, String.format("%s/filter", endpoint)));
             case "crud-5":
-                return new Crud5Test(database, serviceName, endpoint);
+                return new Crud5Test(database, serviceName, settings.getEndpoint(testName, endpoint));
             case "crud-6":
-                return new Crud6Test(database, serviceName, endpoint);
+                return new Crud6Test(database, serviceName, settings.getEndpoint(testName, endpoint));
             case "crud-7":
-                return new Crud7Test(database, serviceName, endpoint);
+                return new Crud7Test(database, serviceName, settings.getEndpoint(testName, endpoint));
             case "crud-8":
-                return new Crud8Test(database, serviceName, endpoint);
+                return new Crud8Test(database, serviceName, settings.getEndpoint(testName, endpoint));
             case "pipeline-1":
-                return new Pipeline1Test(database, serviceName, String.format("%s/statistics", endpoint));
+                return new Pipeline1Test(database, serviceName, settings.getEndpoint(testName, String.format("%s/statistics", endpoint)));
             case "pipeline-2":
-                return new Pipeline2Test(database, serviceName, String.format("%s/hostAnalytics", endpoint));
+                return new Pipeline2Test(database, serviceName, settings.getEndpoint(testName, String.format("%s/hostAnalytics", endpoint)));
             case "search-index":
-                return new SearchIndexTest(database, serviceName, endpoint);
+                return new SearchIndexTest(database, serviceName, settings.getEndpoint(testName, endpoint));
             case "search-1":
-                return new Search1Test(database, serviceName, String.format("%s/autocomplete", endpoint));
+                return new Search1Test(database, serviceName, settings.getEndpoint(testName, String.format("%s/autocomplete", endpoint)));
             case "search-2":
-                return new Search2Test(database, serviceName, String.format("%s/facet", endpoint));
+                return new Search2Test(database, serviceName, settings.getEndpoint(testName, String.format("%s/facet", endpoint)));
             case "vector-search-index":
-                return new VectorSearchIndexTest(database, serviceName, endpoint);
+                return new VectorSearchIndexTest(database, serviceName, settings.getEndpoint(testName, endpoint));
             case "vector-search-1":
-                return new VectorSearch1Test(database, serviceName, String.format("%s/vectorsearch", endpoint));
+                return new VectorSearch1Test(database, serviceName, settings.getEndpoint(testName, String.format("%s/vectorsearch", endpoint)));
             default:
                 return null;
         }
     }
     
+    /**
+     * Checks the service before a run
+     * After a restart signal the check is retried with backoff until the service answers
+     * or READINESS_TIMEOUT_SECONDS pass; otherwise (or with a timeout of 0) it is checked once
+     */
+    private ServiceReadiness checkServiceReadiness(String serviceName, boolean awaitReadiness) {
+        ServiceReadiness.Probe probe = timeout -> checkServiceAvailability(serviceName, timeout);
+        if (!awaitReadiness || readinessTimeout.isZero()) {
+            return ServiceReadiness.checkOnce(probe);
+        }
+        logger.info("{} Waiting up to {} s for service {} to become ready", STEP, readinessTimeout.toSeconds(), serviceName);
+        try {
+            return ServiceReadiness.await(probe, readinessTimeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while waiting for service {}", serviceName);
+            return ServiceReadiness.checkOnce(timeout -> false);
+        }
+    }
+    
+    /**
+     * Opens pooled connections to a service that just answered, so the first exercises
+     * do not each pay for a TCP and TLS handshake
+     * Concurrent requests make the HTTP/1.1 pool open one connection each; an HTTP/2
+     * service multiplexes them over the connection the availability check opened
+     */
+    private void prewarmConnections(String serviceName) {
+        if (warmConnections <= 1 || LabHttpClient.getTrafficArchive() != null) {
+            return;
+        }
+        long start = System.nanoTime();
+        HttpRequest request = buildWhoamiRequest(serviceName, ServiceReadiness.PROBE_TIMEOUT);
+        CompletableFuture<?>[] warmups = new CompletableFuture<?>[warmConnections];
+        for (int i = 0; i < warmConnections; i++) {
+            warmups[i] = LabHttpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+        }
+        try {
+            CompletableFuture.allOf(warmups).get(PREWARM_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            logger.info("{} Pre-warmed {} connections to {} in {} ms", INFO, warmConnections, serviceName, 
+                (System.nanoTime() - start) / 1_000_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // Tests open whatever connections are still missing
+            logger.warn("{} Pre-warming connections to {} did not complete: {}", WARNING, serviceName, e.toString());
+        }
+    }
+    
+    /**
+     * Builds the request for the service's whoami endpoint
+     */
+    private HttpRequest buildWhoamiRequest(String serviceName, Duration timeout) {
+        // Build the whoami endpoint URL - support both http and https
+        String baseUrl;
+        if (serviceName.startsWith("http://") || serviceName.startsWith("https://")) {
+            baseUrl = serviceName;
+        } else {
+            // Default to https if no protocol specified
+            baseUrl = "https://" + serviceName;
+        }
+        
+        if (!baseUrl.endsWith("/")) {
+            baseUrl += "/";
+        }
+        return LabHttpClient.newRequest(URI.create(baseUrl + "api/results/whoami"))
+            .timeout(timeout)
+            .header("User-Agent", "ResultsProcessor/1.0.0")
+            .GET()
+            .build();
+    }
+    
     /**
      * Checks if the service is available by calling the whoami endpoint
+     * @param timeout How long to wait for the answer
      */
-    private boolean checkServiceAvailability(String serviceName) {
+    private boolean checkServiceAvailability(String serviceName, Duration timeout) {
         try {
-            // Build the whoami endpoint URL - support both http and https
-            String baseUrl;
-            if (serviceName.startsWith("http://") || serviceName.startsWith("https://")) {
-                baseUrl = serviceName;
-            } else {
-                // Default to https if no protocol specified
-                baseUrl = "https://" + serviceName;
-            }
-            
-            if (!baseUrl.endsWith("/")) {
-                baseUrl += "/";
-            }
-            String whoamiUrl = baseUrl + "api/results/whoami";
-            
-            logger.info("Checking service availability at: {}", whoamiUrl);
-            
-            HttpClient.Builder clientBuilder = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(10));
-            
-            // Only set SSL context for HTTPS URLs
-            if (whoamiUrl.startsWith("https://")) {
-                // Create trust-all SSL context to ignore certificate issues
-                SSLContext sslContext = SSLContext.getInstance("TLS");
-                sslContext.init(null, new TrustManager[] {
-                    new X509TrustManager() {
-                        public void checkClientTrusted(X509Certificate[] chain, String authType) {}
-                        public void checkServerTrusted(X509Certificate[] chain, String authType) {}
-                        public X509Certificate[] getAcceptedIssuers() { return new X509Certificate[0]; }
-                    }
-                }, null);
-                clientBuilder.sslContext(sslContext);
-            }
-            
-            HttpClient client = clientBuilder.build();
-                
-            HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(whoamiUrl))
-                .timeout(Duration.ofSeconds(30))
-                .header("User-Agent", "ResultsProcessor/1.0.0")
-                .GET()
-                .build();
+            // The probe warms up the shared client's connection for the tests that follow
+            HttpRequest request = buildWhoamiRequest(serviceName, timeout);
+            logger.info("Checking service availability at: {}", request.uri());
                 
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> response;
+            try {
+                response = LabHttpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            } catch (Exception e) {
+                ServiceCircuitBreaker.forService(serviceName).recordError(e);
+                throw e;
+            }
+            ServiceCircuitBreaker.forService(serviceName).recordResponse(response.statusCode());
             
             if (response.statusCode() == 200) {
                 logger.info("Service is available. Response: {}", response.body());
@@ -847,56 +1541,30 @@ public class ResultsProcessor {
             }
             
         } catch (Exception e) {
-            logger.error("Failed to check service availability at {}: {}", serviceName, e.getMessage());
+            logger.warn("Failed to check service availability at {}: {}", serviceName, e.getMessage());
             return false;
         }
     }
 
     /**
-     * Gets the set of test names that have already been completed for a user
-     */
-    private Set<String> getCompletedTests(String user) {
-        Set<String> completedTests = new LinkedHashSet<>();
-        
-        try {
-            MongoCollection<Document> resultsCollection = database.getCollection(RESULTS_COLLECTION);
-            
-            // Query for all results for this user
-            for (Document result : resultsCollection.find(Filters.eq("username", user)).sort(Sorts.ascending("name"))) {
-                String testName = result.getString("name");
-                if (testName != null) {
-                    completedTests.add(testName);
-                }
-            }
-            
-            logger.info("Found {} completed tests for user {}: {}", 
-                completedTests.size(), user, completedTests);
-            
-        } catch (Exception e) {
-            logger.error("Failed to get completed tests for user {}", user, e);
-            // Return empty set on error - will run all tests
-        }
-        
-        return completedTests;
-    }
-
-    /**
-     * Stores results directly in the results collection
+     * Creates the unique (username, name) index that keeps one result per user and exercise
+     * It also covers the query that reads a user's completed exercises at the start of each run
      */
-    private void storeResults(List<Document> testResults, String user) {
+    private void ensureResultsIndex() {
         try {
-            MongoCollection<Document> resultsCollection = database.getCollection(RESULTS_COLLECTION);
-            
-            // Store each result individually in the results collection
-            for (Document result : testResults) {
-                resultsCollection.insertOne(result);
+            database.getCollection(RESULTS_COLLECTION).createIndex(
+                Indexes.ascending("username", "name"),
+                new IndexOptions().unique(true).name(RESULTS_INDEX));
+            logger.info("Ensured unique index {} on {}.{}", RESULTS_INDEX, DB_NAME, RESULTS_COLLECTION);
+        } catch (MongoCommandException e) {
+            if (e.getErrorCode() == DUPLICATE_KEY_ERROR) {
+                logger.warn("{} Cannot create unique index {}: {}.{} already holds duplicate results - remove them so repeated runs stay idempotent", 
+                    WARNING, RESULTS_INDEX, DB_NAME, RESULTS_COLLECTION);
+            } else {
+                logger.warn("{} Failed to create index {} on {}.{}: {}", WARNING, RESULTS_INDEX, DB_NAME, RESULTS_COLLECTION, e.getErrorMessage());
             }
-            
-            logger.info("Stored {} new test results for user {}", testResults.size(), user);
-            
         } catch (Exception e) {
-            logger.error("Failed to store results", e);
-            // Don't throw - we want to continue even if storage fails
+            logger.warn("{} Failed to create index {} on {}.{}: {}", WARNING, RESULTS_INDEX, DB_NAME, RESULTS_COLLECTION, e.getMessage());
         }
     }
     
@@ -971,7 +1639,8 @@ public class ResultsProcessor {
         }
 
         // Replace PARTICIPANT_NAME placeholder with actual username from MongoDB URI
-        if (value.contains("PARTICIPANT_NAME")) {
+        // In multi-tenant mode the placeholder is kept and resolved per participant
+        if (!isMultiTenant && value.contains("PARTICIPANT_NAME")) {
             String username = extractUsernameFromMongoUri();
             value = value.replace("PARTICIPANT_NAME", username);
             if (!participantNameLogged) {
@@ -984,23 +1653,29 @@ public class ResultsProcessor {
     }
     
     /**
-     * Helper class to store exercise test results with failure reasons
+     * Reads an integer environment variable, falling back to the default when unset or invalid
      */
-    private static class ExerciseResult {
-        private final boolean passed;
-        private final String failureReason;
-        
-        public ExerciseResult(boolean passed, String failureReason) {
-            this.passed = passed;
-            this.failureReason = failureReason;
+    private int getIntEnvironmentVariable(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
         }
-        
-        public boolean isPassed() {
-            return passed;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid integer value '{}' for {}, using default {}", value, name, defaultValue);
+            return defaultValue;
         }
-        
-        public String getFailureReason() {
-            return failureReason;
+    }
+    
+    /**
+     * Reads a boolean environment variable, falling back to the default when unset
+     */
+    private boolean getBooleanEnvironmentVariable(String name, boolean defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
         }
+        return Boolean.parseBoolean(value.trim());
     }
 }
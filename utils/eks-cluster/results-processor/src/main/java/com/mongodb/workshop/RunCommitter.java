@@ -0,0 +1,210 @@
+package com.mongodb.workshop;
+
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.model.bulk.ClientBulkWriteOptions;
+import com.mongodb.client.model.bulk.ClientBulkWriteResult;
+import com.mongodb.client.model.bulk.ClientNamespacedWriteModel;
+import com.mongodb.client.model.bulk.ClientUpdateOneOptions;
+import com.mongodb.client.model.bulk.ClientUpdateResult;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Commits the end of a run: new results and the run's outcome on the health document
+ *
+ * Called on the grading thread when a run ends, so results never wait on (or depend on) the
+ * write-behind health publisher, which only streams progress while the run is in progress.
+ * On a replica set or sharded cluster the writes run in one transaction, so the collections
+ * never disagree. From MongoDB 8.0 they also go out as one client bulk write across both
+ * collections, which makes the commit two round trips (the bulk write and the commit).
+ * Without transactions the writes are ordered, results first and the health document last.
+ * Every write is an idempotent upsert or set, so a failed commit is retried a few times with
+ * backoff before it is reported.
+ */
+class RunCommitter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RunCommitter.class);
+
+    // First wire version of MongoDB 8.0, which added the bulkWrite command
+    private static final int CLIENT_BULK_WRITE_WIRE_VERSION = 25;
+
+    private static final int COMMIT_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final MongoClient client;
+    private final MongoCollection<Document> results;
+    private final MongoCollection<Document> health;
+    private final boolean transactions;
+    private final boolean clientBulkWrite;
+
+    RunCommitter(MongoClient client, MongoDatabase database, String resultsCollection, String healthCollection) {
+        this.client = client;
+        this.results = database.getCollection(resultsCollection);
+        this.health = database.getCollection(healthCollection);
+
+        boolean transactions = false;
+        boolean clientBulkWrite = false;
+        try {
+            Document hello = database.runCommand(new Document("hello", 1));
+            transactions = hello.containsKey("setName") || "isdbgrid".equals(hello.getString("msg"));
+            clientBulkWrite = hello.get("maxWireVersion") instanceof Number
+                && ((Number) hello.get("maxWireVersion")).intValue() >= CLIENT_BULK_WRITE_WIRE_VERSION;
+        } catch (Exception e) {
+            logger.warn("Failed to detect the deployment type, runs are committed with ordered writes: {}", e.getMessage());
+        }
+        this.transactions = transactions;
+        this.clientBulkWrite = clientBulkWrite;
+        logger.info("Runs are committed {}{}", transactions ? "in a transaction" : "with ordered writes",
+            clientBulkWrite ? " as one bulk write across collections" : "");
+    }
+
+    /**
+     * Stores the results a run passed with the run's health update, retrying failed attempts with a doubling delay
+     * @param runId Run the results were graded in
+     * @param newResults Results of newly passed exercises (name, username, timestamp)
+     * @param delta Changes of the user's health document, or null when the user has none
+     * @return Whether the results and health update are stored (true when there is nothing to store)
+     */
+    boolean commit(String user, String runId, List<Document> newResults, HealthState.Delta delta) {
+        if (newResults.isEmpty() && (delta == null || delta.isEmpty())) {
+            return true;
+        }
+        List<String> names = new ArrayList<>();
+        newResults.forEach(result -> names.add(result.getString("name")));
+
+        long delay = RETRY_DELAY_MILLIS;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                boolean replaced;
+                if (!transactions) {
+                    replaced = write(null, user, runId, newResults, delta);
+                } else {
+                    try (ClientSession session = client.startSession()) {
+                        // Transient errors (write conflicts with a concurrent run) are retried by withTransaction
+                        replaced = session.withTransaction(() -> write(session, user, runId, newResults, delta));
+                    }
+                }
+                if (replaced) {
+                    delta.replaced();
+                }
+                return true;
+            } catch (Exception e) {
+                if (attempt >= COMMIT_ATTEMPTS) {
+                    logger.error("Failed to commit run {} for user {} after {} attempts - {} will be graded again on the next run",
+                        runId, user, attempt, names, e);
+                    return false;
+                }
+                logger.warn("Failed to commit run {} for user {} (attempt {}/{}): {} - retrying in {} ms",
+                    runId, user, attempt, COMMIT_ATTEMPTS, e.getMessage(), delay);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    logger.error("Interrupted while committing run {} for user {} - {} will be graded again on the next run",
+                        runId, user, names);
+                    return false;
+                }
+                delay *= 2;
+            }
+        }
+    }
+
+    /**
+     * Writes the results and the health update once
+     * @return Whether the health document disappeared and was published again as a whole
+     */
+    private boolean write(ClientSession session, String user, String runId, List<Document> newResults, HealthState.Delta delta) {
+        Bson healthFilter = delta != null ? delta.getFilter() : Filters.eq("_id", user);
+        Document healthUpdate = delta != null ? delta.getUpdate() : new Document("$set", new Document());
+        healthUpdate.get("$set", Document.class).append("last_run_id", runId);
+        List<Bson> arrayFilters = delta != null ? delta.getArrayFilters() : List.of();
+        long start = System.nanoTime();
+        long newCount;
+        boolean healthMatched;
+
+        if (clientBulkWrite) {
+            List<ClientNamespacedWriteModel> models = new ArrayList<>();
+            for (Document result : newResults) {
+                models.add(ClientNamespacedWriteModel.updateOne(results.getNamespace(), resultFilter(result), resultUpdate(result, runId),
+                    ClientUpdateOneOptions.clientUpdateOneOptions().upsert(true)));
+            }
+            models.add(ClientNamespacedWriteModel.updateOne(health.getNamespace(), healthFilter, healthUpdate,
+                ClientUpdateOneOptions.clientUpdateOneOptions().arrayFilters(arrayFilters)));
+
+            ClientBulkWriteOptions options = ClientBulkWriteOptions.clientBulkWriteOptions().ordered(true).verboseResults(true);
+            ClientBulkWriteResult result = session != null ? client.bulkWrite(session, models, options) : client.bulkWrite(models, options);
+            Map<Integer, ClientUpdateResult> updates = result.getVerboseResults().orElseThrow().getUpdateResults();
+            newCount = 0;
+            for (int i = 0; i < newResults.size(); i++) {
+                if (updates.get(i).getUpsertedId().isPresent()) {
+                    newCount++;
+                }
+            }
+            healthMatched = updates.get(newResults.size()).getMatchedCount() > 0;
+        } else {
+            List<WriteModel<Document>> upserts = new ArrayList<>();
+            for (Document result : newResults) {
+                upserts.add(new UpdateOneModel<>(resultFilter(result), resultUpdate(result, runId), new UpdateOptions().upsert(true)));
+            }
+            BulkWriteOptions ordered = new BulkWriteOptions().ordered(true);
+            UpdateOptions healthOptions = new UpdateOptions().arrayFilters(arrayFilters);
+            if (session != null) {
+                newCount = upserts.isEmpty() ? 0 : results.bulkWrite(session, upserts, ordered).getUpserts().size();
+                healthMatched = health.updateOne(session, healthFilter, healthUpdate, healthOptions).getMatchedCount() > 0;
+            } else {
+                newCount = upserts.isEmpty() ? 0 : results.bulkWrite(upserts, ordered).getUpserts().size();
+                healthMatched = health.updateOne(healthFilter, healthUpdate, healthOptions).getMatchedCount() > 0;
+            }
+        }
+
+        boolean replaced = !healthMatched && delta != null && !delta.isEmpty();
+        if (replaced) {
+            // The health document disappeared: publish everything again, still within the commit
+            Document replacement = delta.getReplacement();
+            replacement.get("$set", Document.class).append("last_run_id", runId);
+            UpdateOptions upsert = new UpdateOptions().upsert(true);
+            if (session != null) {
+                health.updateOne(session, healthFilter, replacement, upsert);
+            } else {
+                health.updateOne(healthFilter, replacement, upsert);
+            }
+        }
+
+        logger.info("Committed run {} for user {}: {} new test results ({} already recorded) in {} ms", runId, user,
+            newCount, newResults.size() - newCount, (System.nanoTime() - start) / 1_000_000);
+        return replaced;
+    }
+
+    /**
+     * Keys a result by user and exercise
+     */
+    private static Bson resultFilter(Document result) {
+        return Filters.and(Filters.eq("username", result.getString("username")), Filters.eq("name", result.getString("name")));
+    }
+
+    /**
+     * Inserts a result the first time its exercise passes; later runs leave it (and its timestamp) in place
+     */
+    private static Bson resultUpdate(Document result, String runId) {
+        Document insertOnly = new Document(result);
+        insertOnly.remove("username");
+        insertOnly.remove("name");
+        insertOnly.append("run_id", runId);
+        return new Document("$setOnInsert", insertOnly);
+    }
+}
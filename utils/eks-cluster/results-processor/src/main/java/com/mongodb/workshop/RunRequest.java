@@ -0,0 +1,89 @@
+package com.mongodb.workshop;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Describes what a grading run was asked to do
+ * Requests are merged when the trigger coalescer collapses several signals into one run
+ */
+final class RunRequest {
+    private final Set<String> triggers;
+    private final boolean newSignal;
+    private final boolean fullRun;
+    // Exercises the run is limited to, or null for every pending exercise
+    private final Set<String> targetExercises;
+
+    private RunRequest(Set<String> triggers, boolean newSignal, boolean fullRun, Set<String> targetExercises) {
+        this.triggers = Collections.unmodifiableSet(triggers);
+        this.newSignal = newSignal;
+        this.fullRun = fullRun;
+        this.targetExercises = targetExercises != null ? Collections.unmodifiableSet(targetExercises) : null;
+    }
+
+    /**
+     * Creates a request for a single trigger
+     * @param trigger Description of what triggered this execution
+     * @param newSignal Whether this execution was triggered by a new signal detection
+     *                  Signals re-grade changed exercises only; scheduled runs re-grade everything
+     */
+    static RunRequest of(String trigger, boolean newSignal) {
+        Set<String> triggers = new LinkedHashSet<>();
+        triggers.add(trigger);
+        return new RunRequest(triggers, newSignal, !newSignal, null);
+    }
+
+    /**
+     * Creates a request that only re-grades the given exercises (and their dependents)
+     * @param trigger Description of what triggered this execution
+     * @param exercises Exercises affected by the trigger
+     */
+    static RunRequest targeted(String trigger, Set<String> exercises) {
+        Set<String> triggers = new LinkedHashSet<>();
+        triggers.add(trigger);
+        return new RunRequest(triggers, false, false, new LinkedHashSet<>(exercises));
+    }
+
+    /**
+     * Combines two requests into one that satisfies both
+     */
+    static RunRequest merge(RunRequest first, RunRequest second) {
+        Set<String> triggers = new LinkedHashSet<>(first.triggers);
+        triggers.addAll(second.triggers);
+        // An untargeted request covers every exercise, so it absorbs targeted ones
+        Set<String> targetExercises = null;
+        if (first.targetExercises != null && second.targetExercises != null) {
+            targetExercises = new LinkedHashSet<>(first.targetExercises);
+            targetExercises.addAll(second.targetExercises);
+        }
+        return new RunRequest(triggers, first.newSignal || second.newSignal, first.fullRun || second.fullRun, targetExercises);
+    }
+
+    Set<String> getTriggers() {
+        return triggers;
+    }
+
+    boolean isNewSignal() {
+        return newSignal;
+    }
+
+    /**
+     * Whether every pending exercise must be re-graded, regardless of unchanged answer files
+     */
+    boolean isFullRun() {
+        return fullRun;
+    }
+
+    /**
+     * Gets the exercises this run is limited to, or null when every pending exercise is considered
+     */
+    Set<String> getTargetExercises() {
+        return targetExercises;
+    }
+
+    @Override
+    public String toString() {
+        return String.join(", ", triggers);
+    }
+}
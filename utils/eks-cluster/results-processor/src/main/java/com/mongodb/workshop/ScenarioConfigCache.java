@@ -0,0 +1,92 @@
+package com.mongodb.workshop;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Projections;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory copy of the results processor settings from scenario_config
+ *
+ * Filled once at startup with a projection of the fields the processor uses. Afterwards
+ * runs read the cached settings; at most once per check interval a run fetches only the
+ * version fields (created_at, processed_at) and reloads the settings when they changed.
+ * The scenario definition job rewrites created_at on every update.
+ */
+class ScenarioConfigCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScenarioConfigCache.class);
+
+    private static final Bson SETTINGS_PROJECTION = Projections.include(
+        "needed_answer_files.analysis.listed_exercises", "results_processor", "created_at", "processed_at");
+    private static final Bson VERSION_PROJECTION = Projections.include("created_at", "processed_at");
+
+    private final MongoCollection<Document> collection;
+    private final long checkIntervalMillis;
+
+    private volatile ScenarioSettings settings = ScenarioSettings.defaults();
+    private volatile Document version;
+    private final AtomicLong lastCheck = new AtomicLong();
+
+    /**
+     * @param collection The scenario_config collection
+     * @param checkInterval Minimum time between two version checks
+     */
+    ScenarioConfigCache(MongoCollection<Document> collection, Duration checkInterval) {
+        this.collection = collection;
+        this.checkIntervalMillis = checkInterval.toMillis();
+    }
+
+    /**
+     * Loads the settings, keeping the previous ones when the read fails
+     */
+    void load() {
+        lastCheck.set(System.currentTimeMillis());
+        try {
+            Document scenarioDoc = collection.find().projection(SETTINGS_PROJECTION).first();
+            settings = ScenarioSettings.from(scenarioDoc);
+            version = versionOf(scenarioDoc);
+            logger.info("Loaded scenario configuration (version: {})", version != null ? version.toJson() : "none");
+        } catch (Exception e) {
+            logger.warn("Failed to load scenario_config, keeping current settings: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the cached settings, reloading them first when a due version check finds a change
+     * Only one caller performs the check; the others read the current settings
+     */
+    ScenarioSettings get() {
+        long last = lastCheck.get();
+        long now = System.currentTimeMillis();
+        if (now - last >= checkIntervalMillis && lastCheck.compareAndSet(last, now)) {
+            try {
+                Document current = versionOf(collection.find().projection(VERSION_PROJECTION).first());
+                // Without version fields there is nothing cheap to compare, so reload
+                if (current == null || !Objects.equals(current, version)) {
+                    logger.info("Scenario configuration changed - reloading");
+                    load();
+                }
+            } catch (Exception e) {
+                logger.warn("Failed to check scenario_config version, keeping current settings: {}", e.getMessage());
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * Extracts the version fields of a scenario document, or null when it has none
+     */
+    private static Document versionOf(Document scenarioDoc) {
+        if (scenarioDoc == null || (scenarioDoc.get("created_at") == null && scenarioDoc.get("processed_at") == null)) {
+            return null;
+        }
+        return new Document("created_at", scenarioDoc.get("created_at")).append("processed_at", scenarioDoc.get("processed_at"));
+    }
+}
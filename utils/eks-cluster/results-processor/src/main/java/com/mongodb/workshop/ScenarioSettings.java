@@ -0,0 +1,297 @@
+package com.mongodb.workshop;
+
+import com.mongodb.workshop.tests.BaseTest;
+import com.mongodb.workshop.tests.LoadProfile;
+import com.mongodb.workshop.tests.LoadTest;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Results processor settings read from the scenario_config document
+ *
+ * Expected layout (all fields optional):
+ * <pre>
+ * needed_answer_files.analysis.listed_exercises: [ "crud-1", ... ]
+ * results_processor:
+ *   exercise_timeout_seconds: 60
+ *   run_timeout_seconds: 180
+ *   exercise_timeouts: { "search-1": 90 }
+ *   prerequisites: { "search-1": [ "service", "search-index" ] }
+ *   answer_files: { "pipeline-1": [ "pipeline-1.lab.js", "shared.js" ] }
+ *   endpoints: { "crud-3": "api/listingsAndReviews/distinct" }
+ *   max_response_bytes: 8388608
+ *   response_byte_limits: { "crud-4": 16777216 }
+ *   load_tests:
+ *     "crud-1-load": { rate_per_second: 200, concurrency: 50, duration_seconds: 20, max_p95_ms: 50,
+ *                      max_p99_ms: 200, min_throughput_rps: 190, max_error_rate: 0.01 }
+ * </pre>
+ */
+class ScenarioSettings {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScenarioSettings.class);
+
+    static final Duration DEFAULT_EXERCISE_TIMEOUT = Duration.ofSeconds(60);
+    static final Duration DEFAULT_RUN_TIMEOUT = Duration.ofSeconds(180);
+
+    private final List<String> listedExercises;
+    private final Duration exerciseTimeout;
+    private final Duration runTimeout;
+    private final Map<String, Duration> exerciseTimeouts;
+    private final Map<String, List<String>> prerequisites;
+    private final Map<String, List<String>> answerFiles;
+    private final Map<String, String> endpoints;
+    private final long maxResponseBytes;
+    private final Map<String, Long> responseByteLimits;
+    private final Map<String, LoadProfile> loadProfiles;
+
+    private ScenarioSettings(List<String> listedExercises, Duration exerciseTimeout, Duration runTimeout,
+                             Map<String, Duration> exerciseTimeouts, Map<String, List<String>> prerequisites,
+                             Map<String, List<String>> answerFiles, Map<String, String> endpoints,
+                             long maxResponseBytes, Map<String, Long> responseByteLimits,
+                             Map<String, LoadProfile> loadProfiles) {
+        this.listedExercises = listedExercises;
+        this.exerciseTimeout = exerciseTimeout;
+        this.runTimeout = runTimeout;
+        this.exerciseTimeouts = exerciseTimeouts;
+        this.prerequisites = prerequisites;
+        this.answerFiles = answerFiles;
+        this.endpoints = endpoints;
+        this.maxResponseBytes = maxResponseBytes;
+        this.responseByteLimits = responseByteLimits;
+        this.loadProfiles = loadProfiles;
+    }
+
+    /**
+     * Settings used when no scenario configuration is available
+     */
+    static ScenarioSettings defaults() {
+        return new ScenarioSettings(null, DEFAULT_EXERCISE_TIMEOUT, DEFAULT_RUN_TIMEOUT, Map.of(), Map.of(), Map.of(), Map.of(),
+            BaseTest.DEFAULT_MAX_RESPONSE_BYTES, Map.of(), Map.of());
+    }
+
+    /**
+     * Parses settings from a scenario_config document
+     * @param scenarioDoc The scenario configuration, may be null
+     */
+    static ScenarioSettings from(Document scenarioDoc) {
+        if (scenarioDoc == null) {
+            return defaults();
+        }
+
+        List<String> listedExercises = null;
+        Document neededAnswerFiles = scenarioDoc.get("needed_answer_files", Document.class);
+        if (neededAnswerFiles != null) {
+            Document analysis = neededAnswerFiles.get("analysis", Document.class);
+            if (analysis != null) {
+                List<String> exercises = analysis.getList("listed_exercises", String.class);
+                if (exercises != null && !exercises.isEmpty()) {
+                    listedExercises = List.copyOf(exercises);
+                }
+            }
+        }
+
+        Duration exerciseTimeout = DEFAULT_EXERCISE_TIMEOUT;
+        Duration runTimeout = DEFAULT_RUN_TIMEOUT;
+        Map<String, Duration> exerciseTimeouts = new HashMap<>();
+        Map<String, List<String>> prerequisites = new HashMap<>();
+        Map<String, List<String>> answerFiles = new HashMap<>();
+        Map<String, String> endpoints = new HashMap<>();
+        long maxResponseBytes = BaseTest.DEFAULT_MAX_RESPONSE_BYTES;
+        Map<String, Long> responseByteLimits = new HashMap<>();
+        Map<String, LoadProfile> loadProfiles = new HashMap<>();
+
+        Document processorConfig = scenarioDoc.get("results_processor", Document.class);
+        if (processorConfig != null) {
+            exerciseTimeout = readSeconds(processorConfig, "exercise_timeout_seconds", DEFAULT_EXERCISE_TIMEOUT);
+            runTimeout = readSeconds(processorConfig, "run_timeout_seconds", DEFAULT_RUN_TIMEOUT);
+
+            Document timeouts = processorConfig.get("exercise_timeouts", Document.class);
+            if (timeouts != null) {
+                for (String exercise : timeouts.keySet()) {
+                    exerciseTimeouts.put(exercise, readSeconds(timeouts, exercise, exerciseTimeout));
+                }
+            }
+
+            readExerciseLists(processorConfig, "prerequisites", prerequisites);
+            readExerciseLists(processorConfig, "answer_files", answerFiles);
+
+            Document endpointOverrides = processorConfig.get("endpoints", Document.class);
+            if (endpointOverrides != null) {
+                for (String exercise : endpointOverrides.keySet()) {
+                    Object endpoint = endpointOverrides.get(exercise);
+                    if (endpoint instanceof String && !((String) endpoint).isEmpty()) {
+                        endpoints.put(exercise, (String) endpoint);
+                    } else {
+                        logger.warn("Ignoring invalid scenario_config endpoint for {}: {}", exercise, endpoint);
+                    }
+                }
+            }
+
+            maxResponseBytes = readBytes(processorConfig, "max_response_bytes", BaseTest.DEFAULT_MAX_RESPONSE_BYTES);
+            Document byteLimits = processorConfig.get("response_byte_limits", Document.class);
+            if (byteLimits != null) {
+                for (String exercise : byteLimits.keySet()) {
+                    responseByteLimits.put(exercise, readBytes(byteLimits, exercise, maxResponseBytes));
+                }
+            }
+
+            Document loadTests = processorConfig.get("load_tests", Document.class);
+            if (loadTests != null) {
+                for (String exercise : loadTests.keySet()) {
+                    Object loadTest = loadTests.get(exercise);
+                    if (loadTest instanceof Document && LoadTest.isLoadExercise(exercise)) {
+                        loadProfiles.put(exercise, readLoadProfile((Document) loadTest));
+                    } else {
+                        logger.warn("Ignoring invalid scenario_config load test for {}: {}", exercise, loadTest);
+                    }
+                }
+            }
+        }
+
+        return new ScenarioSettings(listedExercises, exerciseTimeout, runTimeout, Map.copyOf(exerciseTimeouts),
+            Map.copyOf(prerequisites), Map.copyOf(answerFiles), Map.copyOf(endpoints),
+            maxResponseBytes, Map.copyOf(responseByteLimits), Map.copyOf(loadProfiles));
+    }
+
+    /**
+     * Reads the load and thresholds of a load exercise, falling back to the defaults for invalid values
+     */
+    private static LoadProfile readLoadProfile(Document loadTest) {
+        Double ratePerSecond = readPositive(loadTest, "rate_per_second");
+        Double concurrency = readPositive(loadTest, "concurrency");
+        Double maxErrorRate = readPositive(loadTest, "max_error_rate");
+        if (maxErrorRate != null && maxErrorRate > 1) {
+            logger.warn("Ignoring invalid scenario_config value for max_error_rate: {}", maxErrorRate);
+            maxErrorRate = null;
+        }
+        return new LoadProfile(
+            ratePerSecond != null ? ratePerSecond : 0,
+            concurrency != null ? concurrency.intValue() : LoadProfile.DEFAULT_CONCURRENCY,
+            readSeconds(loadTest, "duration_seconds", LoadProfile.DEFAULT_DURATION),
+            readPositive(loadTest, "max_p95_ms"),
+            readPositive(loadTest, "max_p99_ms"),
+            readPositive(loadTest, "min_throughput_rps"),
+            maxErrorRate != null ? maxErrorRate : LoadProfile.DEFAULT_MAX_ERROR_RATE);
+    }
+
+    /**
+     * Reads a subdocument mapping exercise names to lists of strings, skipping invalid entries
+     */
+    private static void readExerciseLists(Document processorConfig, String key, Map<String, List<String>> target) {
+        Document lists = processorConfig.get(key, Document.class);
+        if (lists == null) {
+            return;
+        }
+        for (String exercise : lists.keySet()) {
+            try {
+                target.put(exercise, List.copyOf(lists.getList(exercise, String.class)));
+            } catch (Exception e) {
+                logger.warn("Ignoring invalid scenario_config {} for {}: {}", key, exercise, lists.get(exercise));
+            }
+        }
+    }
+
+    /**
+     * Reads a positive number of seconds, falling back to the default when missing or invalid
+     */
+    private static Duration readSeconds(Document doc, String key, Duration defaultValue) {
+        Object value = doc.get(key);
+        if (value instanceof Number && ((Number) value).doubleValue() > 0) {
+            return Duration.ofMillis((long) (((Number) value).doubleValue() * 1000));
+        }
+        if (value != null) {
+            logger.warn("Ignoring invalid scenario_config value for {}: {}", key, value);
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Reads an optional positive number, null when missing or invalid
+     */
+    private static Double readPositive(Document doc, String key) {
+        Object value = doc.get(key);
+        if (value instanceof Number && ((Number) value).doubleValue() > 0) {
+            return ((Number) value).doubleValue();
+        }
+        if (value != null) {
+            logger.warn("Ignoring invalid scenario_config value for {}: {}", key, value);
+        }
+        return null;
+    }
+
+    /**
+     * Reads a positive number of bytes, falling back to the default when missing or invalid
+     */
+    private static long readBytes(Document doc, String key, long defaultValue) {
+        Object value = doc.get(key);
+        if (value instanceof Number && ((Number) value).longValue() > 0) {
+            return ((Number) value).longValue();
+        }
+        if (value != null) {
+            logger.warn("Ignoring invalid scenario_config value for {}: {}", key, value);
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Gets the exercises listed in the scenario, or null when the scenario does not list any
+     */
+    List<String> getListedExercises() {
+        return listedExercises;
+    }
+
+    /**
+     * Gets the deadline budget for a single exercise
+     */
+    Duration getExerciseTimeout(String exercise) {
+        return exerciseTimeouts.getOrDefault(exercise, exerciseTimeout);
+    }
+
+    /**
+     * Gets the deadline budget for a whole grading run
+     */
+    Duration getRunTimeout() {
+        return runTimeout;
+    }
+
+    /**
+     * Gets the prerequisite overrides keyed by exercise name
+     */
+    Map<String, List<String>> getPrerequisites() {
+        return prerequisites;
+    }
+
+    /**
+     * Gets the answer files an exercise is graded on, relative to the lab directory
+     * Defaults to the exercise's own lab file, the driven exercise's one for load exercises
+     */
+    List<String> getAnswerFiles(String exercise) {
+        return answerFiles.getOrDefault(exercise, List.of(LoadTest.baseExercise(exercise) + ".lab.js"));
+    }
+
+    /**
+     * Gets the backend endpoint an exercise is graded against
+     * @param defaultEndpoint Endpoint used when the scenario does not override it
+     */
+    String getEndpoint(String exercise, String defaultEndpoint) {
+        return endpoints.getOrDefault(exercise, defaultEndpoint);
+    }
+
+    /**
+     * Gets how many response bytes an exercise may receive from the backend
+     */
+    long getMaxResponseBytes(String exercise) {
+        return responseByteLimits.getOrDefault(exercise, maxResponseBytes);
+    }
+
+    /**
+     * Gets the load a load exercise applies and the thresholds it is graded against
+     */
+    LoadProfile getLoadProfile(String exercise) {
+        return loadProfiles.getOrDefault(exercise, LoadProfile.defaults());
+    }
+}
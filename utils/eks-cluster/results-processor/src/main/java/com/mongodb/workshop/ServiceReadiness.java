@@ -0,0 +1,115 @@
+package com.mongodb.workshop;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Outcome of waiting for a participant service to answer its availability check
+ *
+ * After a restart signal the backend may still be booting, so the check is retried with
+ * exponential backoff and jitter (each wait is drawn between half and all of the current
+ * backoff, so processors polling many backends do not probe in lockstep) until it answers
+ * or the readiness deadline passes.
+ */
+final class ServiceReadiness {
+
+    /**
+     * Checks the service once, within the given timeout
+     */
+    interface Probe {
+        boolean check(Duration timeout);
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(ServiceReadiness.class);
+
+    static final Duration INITIAL_BACKOFF = Duration.ofMillis(250);
+    static final Duration MAX_BACKOFF = Duration.ofSeconds(5);
+    // Longest a single probe may wait for an answer
+    static final Duration PROBE_TIMEOUT = Duration.ofSeconds(30);
+
+    private final boolean ready;
+    private final boolean polled;
+    private final int attempts;
+    private final Duration elapsed;
+    private final Instant checkedAt = Instant.now();
+
+    private ServiceReadiness(boolean ready, boolean polled, int attempts, Duration elapsed) {
+        this.ready = ready;
+        this.polled = polled;
+        this.attempts = attempts;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * Checks the service a single time
+     */
+    static ServiceReadiness checkOnce(Probe probe) {
+        long start = System.nanoTime();
+        boolean ready = probe.check(PROBE_TIMEOUT);
+        return new ServiceReadiness(ready, false, 1, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * Polls the service until it answers or the timeout passes
+     * @param probe Availability check
+     * @param timeout How long to wait for the service in total
+     */
+    static ServiceReadiness await(Probe probe, Duration timeout) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + timeout.toNanos();
+        long backoff = INITIAL_BACKOFF.toNanos();
+        int attempts = 0;
+
+        while (true) {
+            attempts++;
+            long remaining = deadline - System.nanoTime();
+            Duration probeTimeout = Duration.ofNanos(Math.max(Math.min(remaining, PROBE_TIMEOUT.toNanos()), Duration.ofSeconds(1).toNanos()));
+            if (probe.check(probeTimeout)) {
+                ServiceReadiness readiness = new ServiceReadiness(true, true, attempts, Duration.ofNanos(System.nanoTime() - start));
+                if (attempts > 1) {
+                    logger.info("Service ready after {} attempts in {} ms", attempts, readiness.elapsed.toMillis());
+                }
+                return readiness;
+            }
+
+            remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return new ServiceReadiness(false, true, attempts, Duration.ofNanos(System.nanoTime() - start));
+            }
+            long wait = Math.min(ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1), remaining);
+            logger.info("Service not ready yet (attempt {}) - checking again in {} ms", attempts, wait / 1_000_000);
+            Thread.sleep(Duration.ofNanos(wait));
+            backoff = Math.min(backoff * 2, MAX_BACKOFF.toNanos());
+        }
+    }
+
+    boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Whether the service was polled until ready, rather than checked once
+     */
+    boolean isPolled() {
+        return polled;
+    }
+
+    int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Time from the first check until the service answered (or the wait gave up)
+     */
+    Duration getElapsed() {
+        return elapsed;
+    }
+
+    Instant getCheckedAt() {
+        return checkedAt;
+    }
+}
@@ -0,0 +1,137 @@
+package com.mongodb.workshop;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BinaryOperator;
+
+/**
+ * Lock-free trigger coalescer built on generation counters
+ *
+ * Every signal bumps the requested generation and merges its request into the pending one.
+ * A single drainer waits for the debounce window, then runs once against the merged request
+ * and records the generation it satisfied. Any number of signals that arrive during a run
+ * collapse into exactly one follow-up run.
+ */
+class TriggerCoalescer<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(TriggerCoalescer.class);
+
+    /**
+     * Callback executing one coalesced run
+     */
+    interface RunHandler<T> {
+        void run(long generation, T request);
+    }
+
+    private final Executor executor;
+    private final Duration debounce;
+    private final BinaryOperator<T> merge;
+    private final RunHandler<T> handler;
+
+    private final AtomicLong requestedGeneration = new AtomicLong();
+    private final AtomicLong completedGeneration = new AtomicLong();
+    private final AtomicReference<T> pending = new AtomicReference<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    // Counters to make redundant work measurable
+    private final AtomicLong signalsReceived = new AtomicLong();
+    private final AtomicLong runsExecuted = new AtomicLong();
+
+    TriggerCoalescer(Executor executor, Duration debounce, BinaryOperator<T> merge, RunHandler<T> handler) {
+        this.executor = executor;
+        this.debounce = debounce;
+        this.merge = merge;
+        this.handler = handler;
+    }
+
+    /**
+     * Records a signal and makes sure a drainer is scheduled
+     * @return the generation assigned to this signal
+     */
+    long signal(T request) {
+        // Publish the request before the generation so a drainer that observes the
+        // generation is guaranteed to also observe the request
+        pending.accumulateAndGet(request, (current, update) -> current == null ? update : merge.apply(current, update));
+        long generation = requestedGeneration.incrementAndGet();
+        signalsReceived.incrementAndGet();
+
+        if (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+                logger.warn("Dropping signal generation {} - executor is shutting down", generation);
+            }
+        } else {
+            logger.info("Signal generation {} coalesced into the pending run", generation);
+        }
+        return generation;
+    }
+
+    /**
+     * Runs until every requested generation has been satisfied
+     */
+    private void drain() {
+        while (true) {
+            try {
+                // Let bursts of signals settle before starting the run
+                Thread.sleep(debounce.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                draining.set(false);
+                return;
+            }
+
+            long target = requestedGeneration.get();
+            T request = pending.getAndSet(null);
+
+            if (request != null) {
+                runsExecuted.incrementAndGet();
+                try {
+                    handler.run(target, request);
+                } catch (Exception e) {
+                    logger.error("Run for generation {} failed", target, e);
+                }
+            }
+            completedGeneration.set(target);
+
+            if (requestedGeneration.get() == target) {
+                draining.set(false);
+                // A signal may have arrived between the check and the release - reclaim the drainer role if so
+                if (requestedGeneration.get() == target || !draining.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    long getRequestedGeneration() {
+        return requestedGeneration.get();
+    }
+
+    long getCompletedGeneration() {
+        return completedGeneration.get();
+    }
+
+    long getSignalsReceived() {
+        return signalsReceived.get();
+    }
+
+    long getRunsExecuted() {
+        return runsExecuted.get();
+    }
+
+    /**
+     * Number of signals that did not need a run of their own
+     */
+    long getSignalsCoalesced() {
+        return Math.max(0, signalsReceived.get() - runsExecuted.get());
+    }
+}
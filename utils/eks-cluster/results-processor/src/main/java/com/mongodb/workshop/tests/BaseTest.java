@@ -6,19 +6,21 @@ import org.bson.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.http.HttpClient;
+import java.io.InputStream;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.net.URI;
 import java.time.Duration;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
-import java.security.cert.X509Certificate;
+import java.time.Instant;
 import org.json.JSONObject;
 import org.json.JSONArray;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Base class for all exercise tests
@@ -30,41 +32,56 @@ public abstract class BaseTest {
     protected final MongoDatabase database;
     protected final String serviceName;
     protected final String endpoint;
-    protected final HttpClient httpClient;
+    
+    // Per-call timeout for lab requests, further limited by the test deadline
+    private static final Duration LAB_REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private volatile Instant deadline;
+    
+    // Bytes an exercise may receive across its lab responses unless the scenario sets a budget
+    public static final long DEFAULT_MAX_RESPONSE_BYTES = 8L * 1024 * 1024;
+    private volatile ResponseBudget responseBudget = new ResponseBudget(DEFAULT_MAX_RESPONSE_BYTES);
+    private volatile String serviceUnavailableReason;
     
     public BaseTest(MongoDatabase database, String serviceName, String endpoint) {
         this.database = database;
         this.serviceName = serviceName;
         this.endpoint = endpoint;
-        this.httpClient = createHttpClient();
     }
     
     /**
-     * Creates an HTTP client with SSL trust-all configuration for HTTPS endpoints
+     * Sets the point in time by which this test must finish
+     * Lab requests made after the deadline fail immediately
      */
-    private HttpClient createHttpClient() {
-        try {
-            HttpClient.Builder clientBuilder = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(10));
-            
-            // Create trust-all SSL context to ignore certificate issues
-            SSLContext sslContext = SSLContext.getInstance("TLS");
-            sslContext.init(null, new TrustManager[] {
-                new X509TrustManager() {
-                    public void checkClientTrusted(X509Certificate[] chain, String authType) {}
-                    public void checkServerTrusted(X509Certificate[] chain, String authType) {}
-                    public X509Certificate[] getAcceptedIssuers() { return new X509Certificate[0]; }
-                }
-            }, null);
-            clientBuilder.sslContext(sslContext);
-            
-            return clientBuilder.build();
-        } catch (Exception e) {
-            logger.error("Failed to create HTTP client with SSL context", e);
-            return HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(10))
-                .build();
+    public void setDeadline(Instant deadline) {
+        this.deadline = deadline;
+    }
+    
+    /**
+     * Gets the point in time by which this test must finish, or null when it has none
+     */
+    Instant getDeadline() {
+        return deadline;
+    }
+    
+    /**
+     * Sets how many response bytes this test may receive before its requests fail as too large
+     */
+    public void setMaxResponseBytes(long maxResponseBytes) {
+        this.responseBudget = new ResponseBudget(maxResponseBytes);
+    }
+    
+    /**
+     * Gets the timeout for the next lab request - the per-call timeout or what is left until the deadline
+     */
+    private Duration labRequestTimeout() throws HttpTimeoutException {
+        if (deadline == null) {
+            return LAB_REQUEST_TIMEOUT;
         }
+        Duration remaining = Duration.between(Instant.now(), deadline);
+        if (remaining.isNegative() || remaining.isZero()) {
+            throw new HttpTimeoutException("Test deadline reached before the lab request could be sent");
+        }
+        return remaining.compareTo(LAB_REQUEST_TIMEOUT) < 0 ? remaining : LAB_REQUEST_TIMEOUT;
     }
     
     /**
@@ -85,6 +102,205 @@ public abstract class BaseTest {
      * Makes an HTTP request to the lab endpoint with specified method
      */
     protected HttpResponse<String> makeLabRequest(String endpoint, Object requestBody, String httpMethod) throws Exception {
+        LabRequestSample sample = startSample();
+        try {
+            HttpResponse<String> response = send(buildLabRequest(endpoint, requestBody, httpMethod), stringHandler(sample));
+            sample.complete(response.statusCode());
+            return response;
+        } catch (Exception e) {
+            sample.fail(e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Starts an HTTP GET request to the lab endpoint without waiting for the response
+     */
+    protected CompletableFuture<HttpResponse<String>> makeLabRequestAsync(String endpoint) throws Exception {
+        return makeLabRequestAsync(endpoint, null, "GET");
+    }
+    
+    /**
+     * Starts an HTTP request to the lab endpoint without waiting for the response
+     * Use {@link #join} to wait for it, so independent calls and reference queries overlap
+     */
+    protected CompletableFuture<HttpResponse<String>> makeLabRequestAsync(String endpoint, Object requestBody, String httpMethod) throws Exception {
+        LabRequestSample sample = startSample();
+        CompletableFuture<HttpResponse<String>> pending;
+        try {
+            pending = sendAsync(buildLabRequest(endpoint, requestBody, httpMethod), stringHandler(sample));
+        } catch (Exception e) {
+            sample.fail(e);
+            throw e;
+        }
+        pending.whenComplete((response, error) -> {
+            if (error != null) {
+                sample.fail(error);
+            } else {
+                sample.complete(response.statusCode());
+            }
+        });
+        return pending;
+    }
+    
+    /**
+     * Makes an HTTP request to the lab endpoint without reading the body
+     * Parse it with {@link #streamJsonArray} and close it when done so the connection is released
+     */
+    protected HttpResponse<InputStream> makeStreamingLabRequest(String endpoint, Object requestBody, String httpMethod) throws Exception {
+        LabRequestSample sample = startSample();
+        try {
+            return send(buildLabRequest(endpoint, requestBody, httpMethod), streamHandler(sample));
+        } catch (Exception e) {
+            sample.fail(e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Starts an HTTP request to the lab endpoint whose body is read as a stream
+     */
+    protected CompletableFuture<HttpResponse<InputStream>> makeStreamingLabRequestAsync(String endpoint, Object requestBody, String httpMethod) throws Exception {
+        LabRequestSample sample = startSample();
+        CompletableFuture<HttpResponse<InputStream>> pending;
+        try {
+            pending = sendAsync(buildLabRequest(endpoint, requestBody, httpMethod), streamHandler(sample));
+        } catch (Exception e) {
+            sample.fail(e);
+            throw e;
+        }
+        pending.whenComplete((response, error) -> {
+            if (error != null) {
+                sample.fail(error);
+            }
+        });
+        return pending;
+    }
+    
+    /**
+     * Sends a lab request through the service's circuit breaker, recording the outcome in it
+     */
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws Exception {
+        ServiceCircuitBreaker breaker = checkCircuitBreaker();
+        try {
+            HttpResponse<T> response = LabHttpClient.send(request, bodyHandler);
+            breaker.recordResponse(response.statusCode());
+            return response;
+        } catch (Exception e) {
+            breaker.recordError(e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Starts a lab request through the service's circuit breaker, recording the outcome in it
+     */
+    private <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws ServiceUnavailableException {
+        ServiceCircuitBreaker breaker = checkCircuitBreaker();
+        CompletableFuture<HttpResponse<T>> pending = LabHttpClient.sendAsync(request, bodyHandler);
+        pending.whenComplete((response, error) -> {
+            if (error != null) {
+                breaker.recordError(error);
+            } else {
+                breaker.recordResponse(response.statusCode());
+            }
+        });
+        return pending;
+    }
+    
+    /**
+     * Gets the service's circuit breaker, failing fast (and remembering why) while it is open
+     */
+    ServiceCircuitBreaker checkCircuitBreaker() throws ServiceUnavailableException {
+        ServiceCircuitBreaker breaker = ServiceCircuitBreaker.forService(serviceName);
+        try {
+            breaker.beforeRequest();
+        } catch (ServiceUnavailableException e) {
+            serviceUnavailableReason = e.getMessage();
+            throw e;
+        }
+        return breaker;
+    }
+    
+    /**
+     * Gets why a lab request of this test was not sent because the service is unavailable, or null
+     * A test failing for this reason did not evaluate the answer
+     */
+    public String getServiceUnavailableReason() {
+        return serviceUnavailableReason;
+    }
+    
+    /**
+     * Starts measuring a lab request of this exercise
+     */
+    private LabRequestSample startSample() {
+        return new LabRequestSample(LabHttpClient.getRequestStats(database.getName(), getTestName(), endpoint));
+    }
+    
+    /**
+     * Body handler for string responses: decoded, bounded by the byte budget and measured
+     */
+    private HttpResponse.BodyHandler<String> stringHandler(LabRequestSample sample) {
+        return ContentDecoding.decoding(database.getName(), endpoint, responseBudget.ofString(), sample::addBytes);
+    }
+    
+    /**
+     * Body handler for streamed responses; the request is recorded when its last byte is decoded
+     */
+    private HttpResponse.BodyHandler<InputStream> streamHandler(LabRequestSample sample) {
+        HttpResponse.BodyHandler<InputStream> bounded = responseBudget.ofInputStream();
+        return ContentDecoding.decoding(database.getName(), endpoint,
+            responseInfo -> sample.recordOnLastByte(bounded.apply(responseInfo), responseInfo.statusCode()), sample::addBytes);
+    }
+    
+    /**
+     * Waits for an asynchronous lab request and rethrows its failure as thrown by makeLabRequest
+     * The request is cancelled when the waiting thread is interrupted (test deadline)
+     */
+    protected <T> T join(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Waits for several asynchronous lab requests, in order
+     * When one fails the others are cancelled
+     */
+    protected <T> List<T> joinAll(List<CompletableFuture<T>> futures) throws Exception {
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<T> future : futures) {
+                results.add(join(future));
+            }
+        } catch (Exception e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        }
+        return results;
+    }
+    
+    /**
+     * Builds the HTTP request for a lab request spec
+     */
+    HttpRequest buildLabRequest(LabRequestSpec request) throws Exception {
+        return buildLabRequest(request.getEndpoint(), request.getBody(), request.getMethod());
+    }
+    
+    /**
+     * Builds the HTTP request for a lab endpoint
+     */
+    private HttpRequest buildLabRequest(String endpoint, Object requestBody, String httpMethod) throws Exception {
         // Build the lab endpoint URL
         String baseUrl;
         if (serviceName.startsWith("http://") || serviceName.startsWith("https://")) {
@@ -100,10 +316,11 @@ public abstract class BaseTest {
         
         logger.info("Making request to lab endpoint: {}", labUrl);
         
-        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-            .uri(URI.create(labUrl))
-            .timeout(Duration.ofSeconds(30))
+        // All tests share one pooled client, so connections are reused across exercises
+        HttpRequest.Builder requestBuilder = LabHttpClient.newRequest(URI.create(labUrl))
+            .timeout(labRequestTimeout())
             .header("Content-Type", "application/json")
+            .header("Accept-Encoding", ContentDecoding.ACCEPT_ENCODING)
             .header("User-Agent", "ResultsProcessor/1.0.0");
         
         if (requestBody != null) {
@@ -141,8 +358,7 @@ public abstract class BaseTest {
             }
         }
         
-        HttpRequest request = requestBuilder.build();
-        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        return requestBuilder.build();
     }
     
     /**
@@ -159,6 +375,13 @@ public abstract class BaseTest {
         return new JSONArray(responseBody);
     }
     
+    /**
+     * Reads a streamed JSON array response element by element
+     */
+    protected JsonArrayStream streamJsonArray(HttpResponse<InputStream> response) {
+        return new JsonArrayStream(response.body());
+    }
+    
     /**
      * Creates a request body map for POST requests
      */
@@ -173,6 +396,14 @@ public abstract class BaseTest {
         return database.getCollection("listingsAndReviews");
     }
     
+    /**
+     * Gets the request that drives this exercise in load grading
+     * @return The request, or null when the exercise cannot be repeated (it modifies data)
+     */
+    protected LabRequestSpec getLoadRequest() {
+        return null;
+    }
+    
     /**
      * Abstract method that each test must implement
      */
@@ -189,10 +420,16 @@ public abstract class BaseTest {
     public static class TestResult {
         private final boolean success;
         private final String errorMessage;
+        private final boolean inconclusive;
         
         private TestResult(boolean success, String errorMessage) {
+            this(success, errorMessage, false);
+        }
+        
+        private TestResult(boolean success, String errorMessage, boolean inconclusive) {
             this.success = success;
             this.errorMessage = errorMessage;
+            this.inconclusive = inconclusive;
         }
         
         public static TestResult success() {
@@ -203,6 +440,13 @@ public abstract class BaseTest {
             return new TestResult(false, errorMessage);
         }
         
+        /**
+         * Failure that says nothing about the answer (the service could not be reached)
+         */
+        public static TestResult inconclusive(String errorMessage) {
+            return new TestResult(false, errorMessage, true);
+        }
+        
         public boolean isSuccess() {
             return success;
         }
@@ -210,5 +454,9 @@ public abstract class BaseTest {
         public String getErrorMessage() {
             return errorMessage;
         }
+        
+        public boolean isInconclusive() {
+            return inconclusive;
+        }
     }
 }
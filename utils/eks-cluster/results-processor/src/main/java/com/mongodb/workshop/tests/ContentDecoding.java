@@ -0,0 +1,371 @@
+package com.mongodb.workshop.tests;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decodes gzip and deflate response bodies as they arrive
+ *
+ * The JDK client does not decompress, so lab requests advertise {@link #ACCEPT_ENCODING}
+ * and wrap their body handler here. Each network buffer is inflated on arrival and the
+ * decoded bytes are passed on, so compressed bodies are never buffered whole and byte
+ * budgets apply to the decoded size. Wire and decoded byte counts are recorded per user and endpoint.
+ */
+final class ContentDecoding {
+
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private static final int OUTPUT_BUFFER_SIZE = 16 * 1024;
+
+    private ContentDecoding() {
+    }
+
+    /**
+     * Wraps a body handler so the body it receives is decoded
+     * @param user Participant the traffic is recorded for
+     * @param endpoint Endpoint the traffic is recorded under
+     * @param handler Handler receiving the decoded body
+     * @param onDecodedBytes Receives the size of each decoded chunk
+     */
+    static <T> HttpResponse.BodyHandler<T> decoding(String user, String endpoint, HttpResponse.BodyHandler<T> handler,
+                                                    LongConsumer onDecodedBytes) {
+        return responseInfo -> {
+            String encoding = responseInfo.headers().firstValue("Content-Encoding").orElse("identity").trim().toLowerCase(Locale.ROOT);
+            EndpointTraffic traffic = LabHttpClient.getEndpointTraffic(user, endpoint);
+            HttpResponse.BodySubscriber<T> downstream = handler.apply(responseInfo);
+            switch (encoding) {
+                case "":
+                case "identity":
+                    traffic.recordResponse(false);
+                    return new DecodingSubscriber<>(downstream, null, traffic, onDecodedBytes);
+                case "gzip":
+                case "x-gzip":
+                    traffic.recordResponse(true);
+                    return new DecodingSubscriber<>(downstream, new GzipDecoder(), traffic, onDecodedBytes);
+                case "deflate":
+                    traffic.recordResponse(true);
+                    return new DecodingSubscriber<>(downstream, new DeflateDecoder(), traffic, onDecodedBytes);
+                default:
+                    traffic.recordResponse(true);
+                    return new DecodingSubscriber<>(downstream, new UnsupportedDecoder(encoding), traffic, onDecodedBytes);
+            }
+        };
+    }
+
+    /**
+     * Incremental body decoder
+     */
+    private interface Decoder {
+        /**
+         * Decodes a chunk of the encoded body, consuming all of it
+         */
+        void decode(ByteBuffer input, List<ByteBuffer> output) throws IOException;
+
+        /**
+         * Checks the encoded body ended where the encoding says it ends
+         */
+        void finish() throws IOException;
+    }
+
+    /**
+     * Passes decoded buffers to another subscriber, requesting more input when a chunk decodes to nothing
+     */
+    private static final class DecodingSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+        private final HttpResponse.BodySubscriber<T> downstream;
+        private final Decoder decoder;
+        private final EndpointTraffic traffic;
+        private final LongConsumer onDecodedBytes;
+        private Flow.Subscription subscription;
+        private boolean failed;
+
+        DecodingSubscriber(HttpResponse.BodySubscriber<T> downstream, Decoder decoder, EndpointTraffic traffic,
+                           LongConsumer onDecodedBytes) {
+            this.downstream = downstream;
+            this.decoder = decoder;
+            this.traffic = traffic;
+            this.onDecodedBytes = onDecodedBytes;
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return downstream.getBody();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            downstream.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            if (failed) {
+                return;
+            }
+            long wire = items.stream().mapToLong(ByteBuffer::remaining).sum();
+            if (decoder == null) {
+                traffic.recordBytes(wire, wire);
+                onDecodedBytes.accept(wire);
+                downstream.onNext(items);
+                return;
+            }
+
+            List<ByteBuffer> decoded = new ArrayList<>();
+            try {
+                for (ByteBuffer item : items) {
+                    decoder.decode(item, decoded);
+                }
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            long raw = decoded.stream().mapToLong(ByteBuffer::remaining).sum();
+            traffic.recordBytes(wire, raw);
+            onDecodedBytes.accept(raw);
+            if (decoded.isEmpty()) {
+                // The downstream demand was not met, ask for the next chunk instead
+                subscription.request(1);
+            } else {
+                downstream.onNext(decoded);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (!failed) {
+                downstream.onError(throwable);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            if (failed) {
+                return;
+            }
+            if (decoder != null) {
+                try {
+                    decoder.finish();
+                } catch (IOException e) {
+                    fail(e);
+                    return;
+                }
+            }
+            downstream.onComplete();
+        }
+
+        private void fail(IOException e) {
+            failed = true;
+            subscription.cancel();
+            downstream.onError(e);
+        }
+    }
+
+    /**
+     * Inflates into the output list until the input is consumed or the stream ends
+     */
+    private static void inflate(Inflater inflater, ByteBuffer input, List<ByteBuffer> output, CRC32 crc) throws IOException {
+        inflater.setInput(input);
+        try {
+            while (!inflater.finished()) {
+                ByteBuffer chunk = ByteBuffer.allocate(OUTPUT_BUFFER_SIZE);
+                int n = inflater.inflate(chunk);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        throw new IOException("Compressed response needs a preset dictionary");
+                    }
+                    if (inflater.needsInput()) {
+                        break;
+                    }
+                    continue;
+                }
+                chunk.flip();
+                if (crc != null) {
+                    crc.update(chunk.duplicate());
+                }
+                output.add(chunk);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid compressed response: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * gzip (RFC 1952): header, raw deflate data, then CRC-32 and size trailer
+     */
+    private static final class GzipDecoder implements Decoder {
+        private static final int FHCRC = 2;
+        private static final int FEXTRA = 4;
+        private static final int FNAME = 8;
+        private static final int FCOMMENT = 16;
+
+        private final Inflater inflater = new Inflater(true);
+        private final CRC32 crc = new CRC32();
+        private ByteBuffer header = ByteBuffer.allocate(64);
+        private boolean headerRead;
+        private final ByteBuffer trailer = ByteBuffer.allocate(8);
+
+        @Override
+        public void decode(ByteBuffer input, List<ByteBuffer> output) throws IOException {
+            if (!headerRead) {
+                header = append(header, input);
+                int length = headerLength(header);
+                if (length < 0) {
+                    return;
+                }
+                headerRead = true;
+                header.flip().position(length);
+                input = header;
+            }
+            if (!inflater.finished()) {
+                inflate(inflater, input, output, crc);
+            }
+            if (inflater.finished()) {
+                while (input.hasRemaining() && trailer.hasRemaining()) {
+                    trailer.put(input.get());
+                }
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            try {
+                if (!headerRead && header.position() == 0) {
+                    // Bodiless responses (204, HEAD) may still carry the header
+                    return;
+                }
+                if (!inflater.finished() || trailer.hasRemaining()) {
+                    throw new IOException("Truncated gzip response");
+                }
+                trailer.flip();
+                long expectedCrc = Integer.toUnsignedLong(Integer.reverseBytes(trailer.getInt()));
+                long expectedSize = Integer.toUnsignedLong(Integer.reverseBytes(trailer.getInt()));
+                if (expectedCrc != crc.getValue() || expectedSize != (inflater.getBytesWritten() & 0xffffffffL)) {
+                    throw new IOException("Corrupt gzip response (checksum mismatch)");
+                }
+            } finally {
+                inflater.end();
+            }
+        }
+
+        /**
+         * Length of the gzip header in the buffer (written up to its position), or -1 when incomplete
+         */
+        private static int headerLength(ByteBuffer buffer) throws IOException {
+            int limit = buffer.position();
+            if (limit < 10) {
+                return -1;
+            }
+            if ((buffer.get(0) & 0xff) != 0x1f || (buffer.get(1) & 0xff) != 0x8b || buffer.get(2) != 8) {
+                throw new IOException("Invalid gzip response header");
+            }
+            int flags = buffer.get(3) & 0xff;
+            int position = 10;
+            if ((flags & FEXTRA) != 0) {
+                if (limit < position + 2) {
+                    return -1;
+                }
+                position += 2 + ((buffer.get(position) & 0xff) | (buffer.get(position + 1) & 0xff) << 8);
+            }
+            for (int flag : new int[] {FNAME, FCOMMENT}) {
+                if ((flags & flag) != 0) {
+                    while (position < limit && buffer.get(position) != 0) {
+                        position++;
+                    }
+                    if (position >= limit) {
+                        return -1;
+                    }
+                    position++;
+                }
+            }
+            if ((flags & FHCRC) != 0) {
+                position += 2;
+            }
+            return position <= limit ? position : -1;
+        }
+
+        private static ByteBuffer append(ByteBuffer target, ByteBuffer input) {
+            if (target.remaining() < input.remaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(target.capacity() * 2, target.position() + input.remaining()));
+                target.flip();
+                larger.put(target);
+                target = larger;
+            }
+            return target.put(input);
+        }
+    }
+
+    /**
+     * deflate: zlib-wrapped (RFC 1950) as specified, or raw deflate as some servers send it
+     */
+    private static final class DeflateDecoder implements Decoder {
+        private Inflater inflater;
+
+        @Override
+        public void decode(ByteBuffer input, List<ByteBuffer> output) throws IOException {
+            if (!input.hasRemaining()) {
+                return;
+            }
+            if (inflater == null) {
+                inflater = new Inflater(!startsWithZlibHeader(input));
+            }
+            if (!inflater.finished()) {
+                inflate(inflater, input, output, null);
+            }
+            input.position(input.limit());
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (inflater == null) {
+                return;
+            }
+            try {
+                if (!inflater.finished()) {
+                    throw new IOException("Truncated deflate response");
+                }
+            } finally {
+                inflater.end();
+            }
+        }
+
+        private static boolean startsWithZlibHeader(ByteBuffer input) {
+            if (input.remaining() < 2) {
+                return (input.get(input.position()) & 0x0f) == 8;
+            }
+            int cmf = input.get(input.position()) & 0xff;
+            int flg = input.get(input.position() + 1) & 0xff;
+            return (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+        }
+    }
+
+    /**
+     * Fails on encodings that were not requested
+     */
+    private static final class UnsupportedDecoder implements Decoder {
+        private final String encoding;
+
+        UnsupportedDecoder(String encoding) {
+            this.encoding = encoding;
+        }
+
+        @Override
+        public void decode(ByteBuffer input, List<ByteBuffer> output) throws IOException {
+            throw new IOException("Unsupported Content-Encoding in lab response: " + encoding);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            throw new IOException("Unsupported Content-Encoding in lab response: " + encoding);
+        }
+    }
+}
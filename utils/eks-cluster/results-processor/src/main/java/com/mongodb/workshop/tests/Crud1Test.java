@@ -3,8 +3,11 @@ package com.mongodb.workshop.tests;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.FindIterable;
+import java.io.InputStream;
 import java.net.http.HttpResponse;
-import org.json.JSONArray;
+import java.util.concurrent.CompletableFuture;
+import org.json.JSONException;
+import org.json.JSONObject;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import org.bson.Document;
@@ -28,33 +31,27 @@ public class Crud1Test extends BaseTest {
         return "crud-1";
     }
     
+    @Override
+    protected LabRequestSpec getLoadRequest() {
+        return LabRequestSpec.get(findUrl());
+    }
+    
+    /**
+     * Builds the GET URL with the query, skip and limit parameters
+     */
+    private String findUrl() {
+        String queryJson = "{}";
+        String encodedQuery = URLEncoder.encode(queryJson, StandardCharsets.UTF_8);
+        return String.format("%s?query=%s&skip=0&limit=5", endpoint, encodedQuery);
+    }
+    
     @Override
     public TestResult execute() {
         logger.info("Executing CRUD-1 test - Testing crudFind function");
 
         try {
-            // Build query parameters for the URL
-            String queryJson = "{}";
-            String encodedQuery = URLEncoder.encode(queryJson, StandardCharsets.UTF_8);
-            String url = String.format("%s?query=%s&skip=0&limit=5", endpoint, encodedQuery);
-
-            HttpResponse<String> response = makeLabRequest(url);
-
-            if (response.statusCode() != 200) {
-                String errorMessage = String.format("HTTP request failed with status %d - check if the lab endpoint is running and accessible", response.statusCode());
-                logger.warn("CRUD-1 test failed: {}", errorMessage);
-                return TestResult.failure(errorMessage);
-            }
-
-            // Parse response as JSON array
-            JSONArray results;
-            try {
-                results = parseJsonArrayResponse(response.body());
-            } catch (Exception e) {
-                String errorMessage = String.format("Failed to parse API response as JSON array - expected array format but got: %s", response.body());
-                logger.warn("CRUD-1 test failed: {}", errorMessage);
-                return TestResult.failure(errorMessage);
-            }
+            // Start the lab request and run the reference query while it is in flight
+            CompletableFuture<HttpResponse<InputStream>> pendingResponse = makeStreamingLabRequestAsync(findUrl(), null, "GET");
 
             // Get results from MongoDB
             MongoCollection<Document> collection = getListingsAndReviewsCollection();
@@ -76,31 +73,58 @@ public class Crud1Test extends BaseTest {
                 itemList.add(doc);
             }
 
-            // Compare size first
-            if (itemList.size() != results.length()) {
-                String errorMessage = String.format("Result count mismatch - database returned %d documents but API returned %d - check your find operation implementation", itemList.size(), results.length());
-                logger.warn("CRUD-1 test failed: {}", errorMessage);
-                return TestResult.failure(errorMessage);
-            }
-
-            if (itemList.isEmpty()) {
-                String errorMessage = "No results returned from either database or API - check if listingsAndReviews collection has data and your find operation works";
-                logger.warn("CRUD-1 test failed: {}", errorMessage);
-                return TestResult.failure(errorMessage);
+            HttpResponse<InputStream> response = join(pendingResponse);
+
+            try (JsonArrayStream results = streamJsonArray(response)) {
+                if (response.statusCode() != 200) {
+                    String errorMessage = String.format("HTTP request failed with status %d - check if the lab endpoint is running and accessible", response.statusCode());
+                    logger.warn("CRUD-1 test failed: {}", errorMessage);
+                    return TestResult.failure(errorMessage);
+                }
+
+                // Read the API results as they arrive, stopping once there are more than in the database
+                JSONObject apiFirstResult = null;
+                try {
+                    while (results.count() <= itemList.size() && results.hasNext()) {
+                        if (apiFirstResult == null) {
+                            apiFirstResult = results.nextObject();
+                        } else {
+                            results.next();
+                        }
+                    }
+                } catch (JSONException e) {
+                    String errorMessage = String.format("Failed to parse API response as JSON array - expected array format but got: %s (%s)", results.readTextPrefix(), e.getMessage());
+                    logger.warn("CRUD-1 test failed: {}", errorMessage);
+                    return TestResult.failure(errorMessage);
+                }
+
+                // Compare size first
+                if (itemList.size() != results.count()) {
+                    String apiCount = results.isComplete() ? String.valueOf(results.count()) : "more than " + itemList.size();
+                    String errorMessage = String.format("Result count mismatch - database returned %d documents but API returned %s - check your find operation implementation", itemList.size(), apiCount);
+                    logger.warn("CRUD-1 test failed: {}", errorMessage);
+                    return TestResult.failure(errorMessage);
+                }
+
+                if (itemList.isEmpty()) {
+                    String errorMessage = "No results returned from either database or API - check if listingsAndReviews collection has data and your find operation works";
+                    logger.warn("CRUD-1 test failed: {}", errorMessage);
+                    return TestResult.failure(errorMessage);
+                }
+
+                // Compare first _id between DB and API results
+                Object dbFirstId = itemList.get(0).get("_id");
+                Object apiFirstId = apiFirstResult.get("_id");
+
+                if (!dbFirstId.equals(apiFirstId)) {
+                    String errorMessage = String.format("Document order mismatch - first document _id should be '%s' but API returned '%s' - check your sort implementation (should sort by _id ascending)", dbFirstId, apiFirstId);
+                    logger.warn("CRUD-1 test failed: {}", errorMessage);
+                    return TestResult.failure(errorMessage);
+                }
+
+                logger.info("CRUD-1 test passed: Found {} properly filtered and sorted results", results.count());
+                return TestResult.success();
             }
-
-            // Compare first _id between DB and API results
-            Object dbFirstId = itemList.get(0).get("_id");
-            Object apiFirstId = results.getJSONObject(0).get("_id");
-
-            if (!dbFirstId.equals(apiFirstId)) {
-                String errorMessage = String.format("Document order mismatch - first document _id should be '%s' but API returned '%s' - check your sort implementation (should sort by _id ascending)", dbFirstId, apiFirstId);
-                logger.warn("CRUD-1 test failed: {}", errorMessage);
-                return TestResult.failure(errorMessage);
-            }
-
-            logger.info("CRUD-1 test passed: Found {} properly filtered and sorted results", results.length());
-            return TestResult.success();
             
         } catch (Exception e) {
             String errorMessage = String.format("Test execution failed with exception: %s - check your crudFind function implementation and database connection", e.getMessage());
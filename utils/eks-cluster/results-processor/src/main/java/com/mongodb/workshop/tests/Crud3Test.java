@@ -20,15 +20,24 @@ public class Crud3Test extends BaseTest {
         return "crud-3";
     }
     
+    @Override
+    protected LabRequestSpec getLoadRequest() {
+        return LabRequestSpec.get(distinctUrl());
+    }
+    
+    /**
+     * Builds the GET URL with the field query parameter
+     */
+    private String distinctUrl() {
+        return String.format("%s?field=bedrooms", endpoint);
+    }
+    
     @Override
     public TestResult execute() {
         logger.info("Executing CRUD-3 test - Testing crudDistinct function");
 
         try {
-            // Build the GET URL with query parameter
-            String url = String.format("%s?field=bedrooms", endpoint);
-
-            HttpResponse<String> response = makeLabRequest(url);
+            HttpResponse<String> response = makeLabRequest(distinctUrl());
 
             if (response.statusCode() != 200) {
                 String errorMessage = String.format("HTTP request failed with status %d - check if your crudDistinct endpoint is implemented and accessible", response.statusCode());
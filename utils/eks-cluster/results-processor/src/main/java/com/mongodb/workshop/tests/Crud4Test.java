@@ -3,10 +3,13 @@ package com.mongodb.workshop.tests;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import java.io.InputStream;
 import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
 
 import org.bson.Document;
-import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 import java.util.Map;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -19,6 +22,14 @@ import java.util.List;
  */
 public class Crud4Test extends BaseTest {
     
+    private static final int PAGE = 1;
+    private static final int LIMIT = 12;
+    private static final Map<String, Object> FILTERS = Map.of(
+            "amenities", Arrays.asList("24-hour check-in", "Accessible-height bed"),
+            "propertyType", "Apartment",
+            "beds", "1-2"
+        );
+    
     public Crud4Test(MongoDatabase database, String serviceName, String endpoint) {
         super(database, serviceName, endpoint);
     }
@@ -28,50 +39,33 @@ public class Crud4Test extends BaseTest {
         return "crud-4";
     }
     
+    @Override
+    protected LabRequestSpec getLoadRequest() {
+        return LabRequestSpec.post(endpoint, filterRequestBody());
+    }
+    
+    /**
+     * Builds the request body with the page, limit and filters
+     */
+    private Map<String, Object> filterRequestBody() {
+        return Map.of(
+            "limit", LIMIT,
+            "page", PAGE,
+            "filters", FILTERS
+        );
+    }
+    
     @Override
     public TestResult execute() {
         logger.info("Executing CRUD-4 test - Testing crudFilter function");
         
         try {
-            int page = 1;
-            int limit = 12;
-            Map<String, Object> filters = Map.of(
-                    "amenities", Arrays.asList("24-hour check-in", "Accessible-height bed"),
-                    "propertyType", "Apartment",
-                    "beds", "1-2"
-                );
-            // Build request body as per your prompt
-            Map<String, Object> requestBody = Map.of(
-                "limit", limit,
-                "page", page,
-                "filters", filters
-            );
-            
-            HttpResponse<String> response = makeLabRequest(endpoint, requestBody);
-            
-            if (response.statusCode() != 201) {
-                String errorMessage = String.format("HTTP request failed with status %d - expected 201 for POST request, check if your crudFilter endpoint is implemented correctly", response.statusCode());
-                logger.warn("CRUD-4 test failed: {}", errorMessage);
-                return TestResult.failure(errorMessage);
-            }
-            
-            // Parse response as JSON array
-            JSONArray results;
-            try {
-                results = parseJsonArrayResponse(response.body());
-            } catch (Exception e) {
-                String errorMessage = String.format("Failed to parse API response as JSON array - expected array format but got: %s", response.body());
-                logger.warn("CRUD-4 test failed: {}", errorMessage);
-                return TestResult.failure(errorMessage);
-            }
-            
-            // Validate the response
-            if (results.length() == 0) {
-                String errorMessage = "No results returned for filter query - check if your crudFilter function properly handles amenities ('24-hour check-in', 'Accessible-height bed'), property_type ('Apartment'), and beds range (1-2)";
-                logger.warn("CRUD-4 test failed: {}", errorMessage);
-                return TestResult.failure(errorMessage);
-            }
+            int page = PAGE;
+            int limit = LIMIT;
+            Map<String, Object> filters = FILTERS;
 
+            // Start the lab request and run the reference query while it is in flight
+            CompletableFuture<HttpResponse<InputStream>> pendingResponse = makeStreamingLabRequestAsync(endpoint, filterRequestBody(), "POST");
 
             // Get results from MongoDB
             MongoCollection<Document> collection = getListingsAndReviewsCollection();
@@ -101,31 +95,65 @@ public class Crud4Test extends BaseTest {
                 itemList.add(doc);
             }
 
-            // Compare size first
-            if (itemList.size() != results.length()) {
-                String errorMessage = String.format("Result count mismatch - database returned %d documents but API returned %d - check your filter implementation for amenities, property_type, and beds range", itemList.size(), results.length());
-                logger.warn("CRUD-4 test failed: {}", errorMessage);
-                return TestResult.failure(errorMessage);
-            }
+            HttpResponse<InputStream> response = join(pendingResponse);
+            
+            try (JsonArrayStream results = streamJsonArray(response)) {
+                if (response.statusCode() != 201) {
+                    String errorMessage = String.format("HTTP request failed with status %d - expected 201 for POST request, check if your crudFilter endpoint is implemented correctly", response.statusCode());
+                    logger.warn("CRUD-4 test failed: {}", errorMessage);
+                    return TestResult.failure(errorMessage);
+                }
+                
+                // Read the API results as they arrive, stopping once there are more than in the database
+                JSONObject apiFirstResult = null;
+                try {
+                    while (results.count() <= itemList.size() && results.hasNext()) {
+                        if (apiFirstResult == null) {
+                            apiFirstResult = results.nextObject();
+                        } else {
+                            results.next();
+                        }
+                    }
+                } catch (JSONException e) {
+                    String errorMessage = String.format("Failed to parse API response as JSON array - expected array format but got: %s (%s)", results.readTextPrefix(), e.getMessage());
+                    logger.warn("CRUD-4 test failed: {}", errorMessage);
+                    return TestResult.failure(errorMessage);
+                }
+                
+                // Validate the response
+                if (results.count() == 0) {
+                    String errorMessage = "No results returned for filter query - check if your crudFilter function properly handles amenities ('24-hour check-in', 'Accessible-height bed'), property_type ('Apartment'), and beds range (1-2)";
+                    logger.warn("CRUD-4 test failed: {}", errorMessage);
+                    return TestResult.failure(errorMessage);
+                }
 
-            if (itemList.isEmpty()) {
-                String errorMessage = "No matching documents found in database for the specified filters - this may indicate a data issue or incorrect filter logic";
-                logger.warn("CRUD-4 test failed: {}", errorMessage);
-                return TestResult.failure(errorMessage);
-            }
+                // Compare size first
+                if (itemList.size() != results.count()) {
+                    String apiCount = results.isComplete() ? String.valueOf(results.count()) : "more than " + itemList.size();
+                    String errorMessage = String.format("Result count mismatch - database returned %d documents but API returned %s - check your filter implementation for amenities, property_type, and beds range", itemList.size(), apiCount);
+                    logger.warn("CRUD-4 test failed: {}", errorMessage);
+                    return TestResult.failure(errorMessage);
+                }
 
-            // Compare first _id between DB and API results
-            Object dbFirstId = itemList.get(0).get("_id");
-            Object apiFirstId = results.getJSONObject(0).get("_id");
+                if (itemList.isEmpty()) {
+                    String errorMessage = "No matching documents found in database for the specified filters - this may indicate a data issue or incorrect filter logic";
+                    logger.warn("CRUD-4 test failed: {}", errorMessage);
+                    return TestResult.failure(errorMessage);
+                }
 
-            if (!dbFirstId.equals(apiFirstId)) {
-                String errorMessage = String.format("Document order mismatch - first document _id should be '%s' but API returned '%s' - check your query logic and sorting", dbFirstId, apiFirstId);
-                logger.warn("CRUD-4 test failed: {}", errorMessage);
-                return TestResult.failure(errorMessage);
-            }
+                // Compare first _id between DB and API results
+                Object dbFirstId = itemList.get(0).get("_id");
+                Object apiFirstId = apiFirstResult.get("_id");
 
-            logger.info("CRUD-4 test passed: Found {} filtered results", results.length());
-            return TestResult.success();
+                if (!dbFirstId.equals(apiFirstId)) {
+                    String errorMessage = String.format("Document order mismatch - first document _id should be '%s' but API returned '%s' - check your query logic and sorting", dbFirstId, apiFirstId);
+                    logger.warn("CRUD-4 test failed: {}", errorMessage);
+                    return TestResult.failure(errorMessage);
+                }
+
+                logger.info("CRUD-4 test passed: Found {} filtered results", results.count());
+                return TestResult.success();
+            }
             
         } catch (Exception e) {
             String errorMessage = String.format("Test execution failed with exception: %s - check your crudFilter function implementation and database connection", e.getMessage());
@@ -0,0 +1,44 @@
+package com.mongodb.workshop.tests;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Response traffic received from one lab endpoint
+ * Wire bytes are counted as transmitted (compressed when the backend encoded the body),
+ * raw bytes after decoding
+ */
+public final class EndpointTraffic {
+
+    private final AtomicLong responses = new AtomicLong();
+    private final AtomicLong compressedResponses = new AtomicLong();
+    private final AtomicLong wireBytes = new AtomicLong();
+    private final AtomicLong rawBytes = new AtomicLong();
+
+    void recordResponse(boolean compressed) {
+        responses.incrementAndGet();
+        if (compressed) {
+            compressedResponses.incrementAndGet();
+        }
+    }
+
+    void recordBytes(long wire, long raw) {
+        wireBytes.addAndGet(wire);
+        rawBytes.addAndGet(raw);
+    }
+
+    public long getResponses() {
+        return responses.get();
+    }
+
+    public long getCompressedResponses() {
+        return compressedResponses.get();
+    }
+
+    public long getWireBytes() {
+        return wireBytes.get();
+    }
+
+    public long getRawBytes() {
+        return rawBytes.get();
+    }
+}
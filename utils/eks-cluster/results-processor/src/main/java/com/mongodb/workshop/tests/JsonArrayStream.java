@@ -0,0 +1,224 @@
+package com.mongodb.workshop.tests;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a JSON array response one element at a time
+ *
+ * Elements are parsed straight from the response stream, so only the element being
+ * validated is held in memory instead of the whole body as a string plus its JSON tree.
+ * A test that has seen enough closes the stream before the end of the array; the rest
+ * of the response is then never read. Nothing is read until the first {@link #hasNext()}.
+ * The start of the text read is kept (up to {@link #TEXT_PREFIX_CHARS} characters), so a
+ * response that is not an array can still be shown to the participant.
+ */
+public final class JsonArrayStream implements Closeable {
+
+    static final int TEXT_PREFIX_CHARS = 500;
+
+    private final InputStream body;
+    private final CountingTokener tokener;
+
+    private boolean started;
+    private boolean complete;
+    private boolean closed;
+    private Object pending;
+    private boolean hasPending;
+    private int count;
+    private long peakElementChars;
+
+    public JsonArrayStream(InputStream body) {
+        this.body = body;
+        this.tokener = new CountingTokener(new InputStreamReader(body, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses the next element if there is one
+     * @throws JSONException When the response is not a well-formed JSON array
+     * @throws IOException When reading the response fails, e.g. {@link ResponseTooLargeException}
+     */
+    public boolean hasNext() throws IOException {
+        try {
+            return parseNext();
+        } catch (JSONException e) {
+            // The tokener wraps read failures; surface them as such rather than as syntax errors
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private boolean parseNext() {
+        if (hasPending) {
+            return true;
+        }
+        if (complete) {
+            return false;
+        }
+
+        char c;
+        if (!started) {
+            started = true;
+            if (tokener.nextClean() != '[') {
+                throw tokener.syntaxError("A JSONArray text must start with '['");
+            }
+            c = tokener.nextClean();
+            if (c == ']') {
+                complete = true;
+                return false;
+            }
+            tokener.back();
+        } else {
+            c = tokener.nextClean();
+            if (c == ']') {
+                complete = true;
+                return false;
+            }
+            if (c != ',') {
+                throw tokener.syntaxError("Expected a ',' or ']'");
+            }
+        }
+
+        long start = tokener.getPosition();
+        pending = tokener.nextValue();
+        peakElementChars = Math.max(peakElementChars, tokener.getPosition() - start);
+        hasPending = true;
+        return true;
+    }
+
+    /**
+     * Gets the next element (JSONObject, JSONArray, String, Number, Boolean or JSONObject.NULL)
+     */
+    public Object next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more elements in the JSON array");
+        }
+        hasPending = false;
+        count++;
+        Object value = pending;
+        pending = null;
+        return value;
+    }
+
+    /**
+     * Gets the next element, which must be a JSON object
+     */
+    public JSONObject nextObject() throws IOException {
+        Object value = next();
+        if (!(value instanceof JSONObject)) {
+            throw new JSONException("JSONArray[" + (count - 1) + "] is not a JSONObject");
+        }
+        return (JSONObject) value;
+    }
+
+    /**
+     * Number of elements returned so far
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Whether the closing bracket of the array has been read
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Characters read from the response so far
+     */
+    public long getCharsRead() {
+        return tokener.getPosition();
+    }
+
+    /**
+     * Gets the start of the response text, to show what the endpoint returned when it is not an array
+     * Reads on past the parsed text up to {@link #TEXT_PREFIX_CHARS} characters, so it is meant for
+     * error messages once parsing stopped; a longer response is cut and marked with "..."
+     */
+    public String readTextPrefix() {
+        return tokener.readTextPrefix();
+    }
+
+    /**
+     * Size in characters of the largest element parsed, the most text held at once
+     */
+    public long getPeakElementChars() {
+        return peakElementChars;
+    }
+
+    /**
+     * Closes the response body; when the array was not read to the end the exchange is aborted
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LabHttpClient.recordStreamedResponse(peakElementChars, started && !complete);
+        body.close();
+    }
+
+    /**
+     * Tokener tracking how many characters have been consumed
+     */
+    private static final class CountingTokener extends JSONTokener {
+        private final StringBuilder textRead = new StringBuilder();
+        private long position;
+
+        CountingTokener(InputStreamReader reader) {
+            super(reader);
+        }
+
+        @Override
+        public char next() throws JSONException {
+            char c = super.next();
+            if (c != 0) {
+                // Characters read again after back() are already kept
+                if (position == textRead.length() && position < TEXT_PREFIX_CHARS) {
+                    textRead.append(c);
+                }
+                position++;
+            }
+            return c;
+        }
+
+        @Override
+        public void back() throws JSONException {
+            super.back();
+            position--;
+        }
+
+        long getPosition() {
+            return position;
+        }
+
+        String readTextPrefix() {
+            try {
+                while (position < TEXT_PREFIX_CHARS) {
+                    if (next() == 0) {
+                        return textRead.toString();
+                    }
+                }
+                if (position > textRead.length() || next() != 0) {
+                    return textRead + "...";
+                }
+            } catch (JSONException e) {
+                // Read failure: show what was read
+            }
+            return textRead.toString();
+        }
+    }
+}
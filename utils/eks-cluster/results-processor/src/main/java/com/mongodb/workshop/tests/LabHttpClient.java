@@ -0,0 +1,398 @@
+package com.mongodb.workshop.tests;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.*;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.KeyManagementException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide HTTP client shared by every exercise test and the service availability probe
+ *
+ * One client means one connection pool: HTTP/1.1 connections are kept alive and reused
+ * between exercises and runs, and HTTPS backends negotiate HTTP/2 (ALPN) so requests are
+ * multiplexed over a single connection. Plain HTTP backends are kept on HTTP/1.1 to avoid
+ * h2c upgrade requests. Every TLS connection creates one SSL engine, so counting engine
+ * creations counts TLS handshakes (new TLS connections).
+ *
+ * With a {@link LabTrafficArchive}, exchanges are also recorded to disk, or answered from
+ * it without touching the network.
+ */
+public final class LabHttpClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(LabHttpClient.class);
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final AtomicLong requestsSent = new AtomicLong();
+    private static final AtomicLong tlsHandshakes = new AtomicLong();
+    private static final AtomicLong http2Responses = new AtomicLong();
+    private static final AtomicLong streamedResponses = new AtomicLong();
+    private static final AtomicLong streamsStoppedEarly = new AtomicLong();
+    private static final AtomicLong peakResponseChars = new AtomicLong();
+    private static final AtomicLong responsesTooLarge = new AtomicLong();
+    // Per user, then per endpoint
+    private static final Map<String, Map<String, EndpointTraffic>> endpointTraffic = new ConcurrentHashMap<>();
+    // Per user, then per exercise and endpoint
+    private static final Map<String, Map<String, LabRequestStats>> requestStats = new ConcurrentHashMap<>();
+
+    private static volatile HttpClient client;
+    private static volatile LabTrafficArchive trafficArchive;
+
+    private LabHttpClient() {
+    }
+
+    /**
+     * Creates the shared client; call once at startup before any test runs
+     * @param executor Executor for the client's asynchronous work (the processor's virtual threads)
+     */
+    public static synchronized void initialize(Executor executor) {
+        initialize(executor, null);
+    }
+
+    /**
+     * Creates the shared client, recording or replaying lab traffic with the archive
+     * @param executor Executor for the client's asynchronous work (the processor's virtual threads)
+     * @param archive Archive to record to or replay from, null for network only
+     */
+    public static synchronized void initialize(Executor executor, LabTrafficArchive archive) {
+        if (client != null) {
+            return;
+        }
+        client = build(executor);
+        trafficArchive = archive;
+        logger.info("Shared lab HTTP client created (HTTP/2 over TLS, keep-alive connection pool)");
+        if (archive != null) {
+            logger.info("Lab traffic {} {}", archive.getMode() == LabTrafficArchive.Mode.REPLAY ? "replayed from" : "recorded to", archive.getPath());
+        }
+    }
+
+    /**
+     * Gets the shared client, creating it with the default executor when not initialized
+     */
+    public static HttpClient get() {
+        HttpClient current = client;
+        if (current == null) {
+            synchronized (LabHttpClient.class) {
+                if (client == null) {
+                    logger.warn("Lab HTTP client used before initialization - using the default executor");
+                    client = build(null);
+                }
+                current = client;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Gets the executor of the shared client (the processor's virtual threads once initialized)
+     */
+    public static Executor getExecutor() {
+        return get().executor().orElseGet(ForkJoinPool::commonPool);
+    }
+
+    private static HttpClient build(Executor executor) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(CONNECT_TIMEOUT);
+        if (executor != null) {
+            builder.executor(executor);
+        }
+        try {
+            builder.sslContext(new CountingSSLContext(createTrustAllContext()));
+        } catch (Exception e) {
+            logger.error("Failed to create SSL context for the lab HTTP client", e);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates a request builder for the URI, on HTTP/1.1 for plain HTTP
+     */
+    public static HttpRequest.Builder newRequest(URI uri) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder().uri(uri);
+        if ("http".equalsIgnoreCase(uri.getScheme())) {
+            builder.version(HttpClient.Version.HTTP_1_1);
+        }
+        return builder;
+    }
+
+    /**
+     * Sends a request through the shared client and records it in the statistics
+     */
+    public static <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws Exception {
+        LabTrafficArchive archive = trafficArchive;
+        if (archive != null && archive.getMode() == LabTrafficArchive.Mode.REPLAY) {
+            try {
+                return recordResponse(archive.replay(request, bodyHandler).get());
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        }
+
+        requestsSent.incrementAndGet();
+        if (archive == null) {
+            return recordResponse(get().send(request, bodyHandler));
+        }
+        LabTrafficArchive.Recording recording = archive.startRecording(request);
+        try {
+            return recordResponse(get().send(request, recording.recording(bodyHandler)));
+        } catch (Exception e) {
+            recording.fail(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Sends a request asynchronously through the shared client and records it in the statistics
+     * Cancelling the returned future aborts the exchange
+     */
+    public static <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        LabTrafficArchive archive = trafficArchive;
+        if (archive != null && archive.getMode() == LabTrafficArchive.Mode.REPLAY) {
+            return archive.replay(request, bodyHandler).thenApply(LabHttpClient::recordResponse);
+        }
+
+        requestsSent.incrementAndGet();
+        CompletableFuture<HttpResponse<T>> exchange;
+        if (archive == null) {
+            exchange = get().sendAsync(request, bodyHandler);
+        } else {
+            LabTrafficArchive.Recording recording = archive.startRecording(request);
+            exchange = get().sendAsync(request, recording.recording(bodyHandler));
+            exchange.whenComplete((response, error) -> {
+                if (error != null && !exchange.isCancelled()) {
+                    recording.fail(error);
+                }
+            });
+        }
+        CompletableFuture<HttpResponse<T>> recorded = exchange.thenApply(LabHttpClient::recordResponse);
+        // Cancelling a dependent future does not reach the exchange, so forward it
+        recorded.whenComplete((response, error) -> {
+            if (recorded.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return recorded;
+    }
+
+    private static <T> HttpResponse<T> recordResponse(HttpResponse<T> response) {
+        if (response.version() == HttpClient.Version.HTTP_2) {
+            http2Responses.incrementAndGet();
+        }
+        if (response.body() instanceof String body) {
+            recordBufferedResponse(body.length());
+        }
+        return response;
+    }
+
+    /**
+     * Gets the archive lab traffic is recorded to or replayed from, or null
+     */
+    public static LabTrafficArchive getTrafficArchive() {
+        return trafficArchive;
+    }
+
+    /**
+     * Number of requests sent through the shared client
+     */
+    public static long getRequestsSent() {
+        return requestsSent.get();
+    }
+
+    /**
+     * Number of TLS handshakes performed, i.e. TLS connections opened
+     */
+    public static long getTlsHandshakes() {
+        return tlsHandshakes.get();
+    }
+
+    /**
+     * Number of responses received over HTTP/2
+     */
+    public static long getHttp2Responses() {
+        return http2Responses.get();
+    }
+
+    /**
+     * Number of responses parsed as a stream instead of a string
+     */
+    public static long getStreamedResponses() {
+        return streamedResponses.get();
+    }
+
+    /**
+     * Number of streamed responses closed before the end of the body
+     */
+    public static long getStreamsStoppedEarly() {
+        return streamsStoppedEarly.get();
+    }
+
+    /**
+     * Most response text held in memory at once by a test: the whole body for string
+     * responses, the largest element for streamed ones
+     */
+    public static long getPeakResponseChars() {
+        return peakResponseChars.get();
+    }
+
+    /**
+     * Number of responses aborted because they exceeded the exercise's byte budget
+     */
+    public static long getResponsesTooLarge() {
+        return responsesTooLarge.get();
+    }
+
+    /**
+     * Gets the traffic counters of a user's lab endpoints, keyed by endpoint
+     */
+    public static Map<String, EndpointTraffic> getEndpointTraffic(String user) {
+        return Map.copyOf(endpointTraffic.getOrDefault(user, Map.of()));
+    }
+
+    /**
+     * Gets the traffic counters of a user's lab endpoint, creating them on first use
+     */
+    static EndpointTraffic getEndpointTraffic(String user, String endpoint) {
+        return endpointTraffic.computeIfAbsent(user, key -> new ConcurrentHashMap<>())
+            .computeIfAbsent(endpoint, key -> new EndpointTraffic());
+    }
+
+    /**
+     * Gets the request statistics of a user's exercises, one entry per exercise and endpoint
+     */
+    public static List<LabRequestStats> getRequestStats(String user) {
+        Map<String, LabRequestStats> stats = requestStats.get(user);
+        return stats == null ? List.of() : List.copyOf(new TreeMap<>(stats).values());
+    }
+
+    /**
+     * Gets the request statistics of an exercise endpoint, creating them on first use
+     */
+    static LabRequestStats getRequestStats(String user, String exercise, String endpoint) {
+        return requestStats.computeIfAbsent(user, key -> new ConcurrentHashMap<>())
+            .computeIfAbsent(exercise + " " + endpoint, key -> new LabRequestStats(exercise, endpoint));
+    }
+
+    /**
+     * Records a response body read fully into a string
+     */
+    static void recordBufferedResponse(long chars) {
+        peakResponseChars.accumulateAndGet(chars, Math::max);
+    }
+
+    /**
+     * Records a streamed response once it is closed
+     * @param peakElementChars Size of the largest element parsed
+     * @param stoppedEarly Whether the test stopped reading before the end of the body
+     */
+    static void recordStreamedResponse(long peakElementChars, boolean stoppedEarly) {
+        streamedResponses.incrementAndGet();
+        if (stoppedEarly) {
+            streamsStoppedEarly.incrementAndGet();
+        }
+        peakResponseChars.accumulateAndGet(peakElementChars, Math::max);
+    }
+
+    /**
+     * Records a response aborted for exceeding its byte budget
+     */
+    static void recordResponseTooLarge() {
+        responsesTooLarge.incrementAndGet();
+    }
+
+    /**
+     * Creates a trust-all SSL context to ignore certificate issues
+     */
+    private static SSLContext createTrustAllContext() throws Exception {
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, new TrustManager[] {
+            new X509TrustManager() {
+                public void checkClientTrusted(X509Certificate[] chain, String authType) {}
+                public void checkServerTrusted(X509Certificate[] chain, String authType) {}
+                public X509Certificate[] getAcceptedIssuers() { return new X509Certificate[0]; }
+            }
+        }, null);
+        return sslContext;
+    }
+
+    /**
+     * SSL context counting the engines it creates; the HTTP client creates one per TLS connection
+     */
+    private static final class CountingSSLContext extends SSLContext {
+        CountingSSLContext(SSLContext delegate) {
+            super(new CountingSSLContextSpi(delegate), delegate.getProvider(), delegate.getProtocol());
+        }
+    }
+
+    private static final class CountingSSLContextSpi extends SSLContextSpi {
+        private final SSLContext delegate;
+
+        CountingSSLContextSpi(SSLContext delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        protected void engineInit(KeyManager[] km, TrustManager[] tm, SecureRandom sr) throws KeyManagementException {
+            delegate.init(km, tm, sr);
+        }
+
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory() {
+            return delegate.getSocketFactory();
+        }
+
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory() {
+            return delegate.getServerSocketFactory();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine() {
+            tlsHandshakes.incrementAndGet();
+            return delegate.createSSLEngine();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine(String host, int port) {
+            tlsHandshakes.incrementAndGet();
+            return delegate.createSSLEngine(host, port);
+        }
+
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext() {
+            return delegate.getServerSessionContext();
+        }
+
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext() {
+            return delegate.getClientSessionContext();
+        }
+
+        @Override
+        protected SSLParameters engineGetDefaultSSLParameters() {
+            return delegate.getDefaultSSLParameters();
+        }
+
+        @Override
+        protected SSLParameters engineGetSupportedSSLParameters() {
+            return delegate.getSupportedSSLParameters();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.mongodb.workshop.tests;
+
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measurement of a single lab request, recorded once when its response has been read
+ *
+ * Latency is the time to the last byte of the response. String responses are complete when
+ * the exchange finishes; streamed responses when their body subscriber completes, not when
+ * the test closes the stream, so the reference queries and validation a test runs meanwhile
+ * are not counted. A stream the test stops reading early is recorded at its last byte received.
+ */
+final class LabRequestSample {
+
+    private final LabRequestStats stats;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicBoolean recorded = new AtomicBoolean();
+    private volatile long lastByteNanos;
+
+    LabRequestSample(LabRequestStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Counts decoded response bytes
+     */
+    void addBytes(long count) {
+        bytes.addAndGet(count);
+    }
+
+    /**
+     * Records the request as answered with the status code
+     */
+    void complete(int statusCode) {
+        record(String.valueOf(statusCode));
+    }
+
+    /**
+     * Records the request as failed without a response
+     */
+    void fail(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof ServiceUnavailableException) {
+            record(LabRequestStats.STATUS_UNAVAILABLE);
+        } else {
+            record(error instanceof HttpTimeoutException ? LabRequestStats.STATUS_TIMEOUT : LabRequestStats.STATUS_ERROR);
+        }
+    }
+
+    /**
+     * Wraps the subscriber of a streamed body so the request is recorded when its last byte arrives
+     * A body cancelled before its end (the test stopped reading) is recorded at the last byte received
+     */
+    <T> HttpResponse.BodySubscriber<T> recordOnLastByte(HttpResponse.BodySubscriber<T> body, int statusCode) {
+        return new HttpResponse.BodySubscriber<>() {
+            @Override
+            public CompletionStage<T> getBody() {
+                return body.getBody();
+            }
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                body.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                        subscription.request(n);
+                    }
+
+                    @Override
+                    public void cancel() {
+                        long last = lastByteNanos;
+                        record(String.valueOf(statusCode), last != 0 ? last : System.nanoTime());
+                        subscription.cancel();
+                    }
+                });
+            }
+
+            @Override
+            public void onNext(List<ByteBuffer> item) {
+                lastByteNanos = System.nanoTime();
+                body.onNext(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                fail(throwable);
+                body.onError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                complete(statusCode);
+                body.onComplete();
+            }
+        };
+    }
+
+    private void record(String status) {
+        record(status, System.nanoTime());
+    }
+
+    private void record(String status, long endNanos) {
+        if (recorded.compareAndSet(false, true)) {
+            stats.record((endNanos - startNanos) / 1000, status, bytes.get());
+        }
+    }
+}
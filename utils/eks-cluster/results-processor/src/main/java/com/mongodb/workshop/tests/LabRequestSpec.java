@@ -0,0 +1,37 @@
+package com.mongodb.workshop.tests;
+
+/**
+ * Lab request an exercise makes, described so it can be repeated (load grading)
+ */
+final class LabRequestSpec {
+
+    private final String endpoint;
+    private final Object body;
+    private final String method;
+
+    private LabRequestSpec(String endpoint, Object body, String method) {
+        this.endpoint = endpoint;
+        this.body = body;
+        this.method = method;
+    }
+
+    static LabRequestSpec get(String endpoint) {
+        return new LabRequestSpec(endpoint, null, "GET");
+    }
+
+    static LabRequestSpec post(String endpoint, Object body) {
+        return new LabRequestSpec(endpoint, body, "POST");
+    }
+
+    String getEndpoint() {
+        return endpoint;
+    }
+
+    Object getBody() {
+        return body;
+    }
+
+    String getMethod() {
+        return method;
+    }
+}
@@ -0,0 +1,70 @@
+package com.mongodb.workshop.tests;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency, status codes and response sizes of the lab requests one exercise makes to one endpoint
+ * Failed exchanges are counted under the "error" and "timeout" status keys, requests
+ * rejected by the service's circuit breaker under "unavailable"
+ */
+public final class LabRequestStats {
+
+    static final String STATUS_ERROR = "error";
+    static final String STATUS_TIMEOUT = "timeout";
+    static final String STATUS_UNAVAILABLE = "unavailable";
+
+    private final String exercise;
+    private final String endpoint;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final Map<String, LongAdder> statusCodes = new ConcurrentHashMap<>();
+    private final LongAdder responseBytes = new LongAdder();
+    private final AtomicLong maxResponseBytes = new AtomicLong();
+
+    LabRequestStats(String exercise, String endpoint) {
+        this.exercise = exercise;
+        this.endpoint = endpoint;
+    }
+
+    void record(long micros, String status, long bytes) {
+        latency.record(micros);
+        statusCodes.computeIfAbsent(status, key -> new LongAdder()).increment();
+        responseBytes.add(bytes);
+        maxResponseBytes.accumulateAndGet(bytes, Math::max);
+    }
+
+    public String getExercise() {
+        return exercise;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Gets the number of requests per status code
+     */
+    public Map<String, Long> getStatusCodes() {
+        Map<String, Long> counts = new TreeMap<>();
+        statusCodes.forEach((status, count) -> counts.put(status, count.sum()));
+        return counts;
+    }
+
+    /**
+     * Decoded response bytes received across all requests
+     */
+    public long getResponseBytes() {
+        return responseBytes.sum();
+    }
+
+    public long getMaxResponseBytes() {
+        return maxResponseBytes.get();
+    }
+}
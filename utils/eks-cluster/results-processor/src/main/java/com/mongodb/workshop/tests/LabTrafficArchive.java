@@ -0,0 +1,584 @@
+package com.mongodb.workshop.tests;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLSession;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * On-disk archive of lab HTTP exchanges, recorded from a live run and replayed instead of the network
+ *
+ * The archive is gzip-compressed JSON lines, one exchange per line: request method, URI and
+ * body, then the response status, headers and body exactly as received (still content-encoded),
+ * or the failure when no response arrived. Replayed bodies are fed through the test's own body
+ * handler, so decoding, byte budgets and streaming parsers behave as they did live.
+ *
+ * Replay matches on method, URI and request body. When the backend address differs from the
+ * recording (another participant or host), it matches on method, path and body instead.
+ * Identical requests are answered in the order they were recorded, the last answer repeating.
+ */
+public final class LabTrafficArchive {
+
+    private static final Logger logger = LoggerFactory.getLogger(LabTrafficArchive.class);
+
+    private static final int REPLAY_CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * What the archive does with lab traffic
+     */
+    public enum Mode {
+        /** Lab requests go to the network only */
+        OFF,
+        /** Every lab exchange is appended to the archive */
+        RECORD,
+        /** Lab requests are answered from the archive, never from the network */
+        REPLAY
+    }
+
+    private final Mode mode;
+    private final Path path;
+    private final AtomicLong exchanges = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    // Recording: gzip members appended to the file, flushed after every exchange
+    private Writer writer;
+
+    // Replay: recorded exchanges by exact and by address-independent key
+    private final Map<String, Deque<JSONObject>> byRequest = new HashMap<>();
+    private final Map<String, Deque<JSONObject>> byPath = new HashMap<>();
+
+    private LabTrafficArchive(Mode mode, Path path) {
+        this.mode = mode;
+        this.path = path;
+    }
+
+    /**
+     * Opens an archive for the mode
+     * @param mode What to do with lab traffic; OFF returns null
+     * @param path Archive file, appended to when recording
+     */
+    public static LabTrafficArchive open(Mode mode, Path path) throws IOException {
+        if (mode == Mode.OFF) {
+            return null;
+        }
+        LabTrafficArchive archive = new LabTrafficArchive(mode, path);
+        if (mode == Mode.RECORD) {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            OutputStream file = Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            archive.writer = new OutputStreamWriter(new GZIPOutputStream(file, true), StandardCharsets.UTF_8);
+        } else {
+            archive.load();
+        }
+        return archive;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Number of exchanges recorded, or replayed from the archive
+     */
+    public long getExchanges() {
+        return exchanges.get();
+    }
+
+    /**
+     * Number of replayed requests that had no recorded exchange
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Reads every recorded exchange; a truncated last gzip member (crash while recording) is tolerated
+     */
+    private void load() throws IOException {
+        int loaded = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(path)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JSONObject exchange = new JSONObject(line);
+                String method = exchange.getString("method");
+                URI uri = URI.create(exchange.getString("uri"));
+                String body = exchange.optString("request_body", "");
+                byRequest.computeIfAbsent(requestKey(method, uri, body), key -> new ArrayDeque<>()).add(exchange);
+                byPath.computeIfAbsent(pathKey(method, uri, body), key -> new ArrayDeque<>()).add(exchange);
+                loaded++;
+            }
+        } catch (EOFException e) {
+            logger.warn("Lab traffic archive {} ends mid-record (recording interrupted) - replaying the {} complete exchanges", path, loaded);
+        }
+        logger.info("Loaded {} lab exchanges from {}", loaded, path);
+    }
+
+    private static String requestKey(String method, URI uri, String body) {
+        return method + " " + uri + "\n" + body;
+    }
+
+    private static String pathKey(String method, URI uri, String body) {
+        String query = uri.getRawQuery();
+        return method + " " + uri.getRawPath() + (query != null ? "?" + query : "") + "\n" + body;
+    }
+
+    /**
+     * Starts recording one exchange
+     */
+    Recording startRecording(HttpRequest request) {
+        return new Recording(request, requestBody(request));
+    }
+
+    /**
+     * Answers a request from the archive through the given body handler
+     * Fails like the network would when the recorded exchange failed, and with an IOException
+     * when the request was never recorded
+     */
+    <T> CompletableFuture<HttpResponse<T>> replay(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        String body = requestBody(request);
+        JSONObject exchange = nextExchange(request.method(), request.uri(), body);
+        if (exchange == null) {
+            misses.incrementAndGet();
+            return CompletableFuture.failedFuture(new IOException(String.format(
+                "No recorded exchange for %s %s in lab traffic archive %s", request.method(), request.uri(), path)));
+        }
+        exchanges.incrementAndGet();
+
+        JSONObject failure = exchange.optJSONObject("error");
+        if (failure != null) {
+            return CompletableFuture.failedFuture(replayedFailure(failure));
+        }
+
+        int statusCode = exchange.getInt("status");
+        HttpClient.Version version = HttpClient.Version.valueOf(exchange.optString("version", HttpClient.Version.HTTP_1_1.name()));
+        HttpHeaders headers = HttpHeaders.of(readHeaders(exchange.optJSONObject("headers")), (name, value) -> true);
+        byte[] responseBody = Base64.getDecoder().decode(exchange.optString("body", ""));
+
+        HttpResponse.ResponseInfo responseInfo = new HttpResponse.ResponseInfo() {
+            @Override
+            public int statusCode() {
+                return statusCode;
+            }
+
+            @Override
+            public HttpHeaders headers() {
+                return headers;
+            }
+
+            @Override
+            public HttpClient.Version version() {
+                return version;
+            }
+        };
+
+        HttpResponse.BodySubscriber<T> subscriber = bodyHandler.apply(responseInfo);
+        subscriber.onSubscribe(new ReplaySubscription(subscriber, responseBody));
+        return subscriber.getBody().toCompletableFuture()
+            .thenApply(decoded -> new ReplayedResponse<>(request, responseInfo, decoded));
+    }
+
+    private synchronized JSONObject nextExchange(String method, URI uri, String body) {
+        Deque<JSONObject> recorded = byRequest.get(requestKey(method, uri, body));
+        if (recorded == null) {
+            recorded = byPath.get(pathKey(method, uri, body));
+        }
+        if (recorded == null || recorded.isEmpty()) {
+            return null;
+        }
+        return recorded.size() > 1 ? recorded.poll() : recorded.peek();
+    }
+
+    private static Exception replayedFailure(JSONObject failure) {
+        String type = failure.optString("type");
+        String message = failure.optString("message", type);
+        switch (type) {
+            case "HttpConnectTimeoutException":
+                return new HttpConnectTimeoutException(message);
+            case "HttpTimeoutException":
+                return new HttpTimeoutException(message);
+            case "ConnectException":
+                return new ConnectException(message);
+            default:
+                return new IOException(message);
+        }
+    }
+
+    private static Map<String, List<String>> readHeaders(JSONObject json) {
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        if (json == null) {
+            return headers;
+        }
+        for (String name : json.keySet()) {
+            JSONArray values = json.getJSONArray(name);
+            List<String> list = new ArrayList<>();
+            for (int i = 0; i < values.length(); i++) {
+                list.add(values.getString(i));
+            }
+            headers.put(name, list);
+        }
+        return headers;
+    }
+
+    /**
+     * Reads the body a request will send; lab requests use string publishers, which replay on every subscription
+     */
+    private static String requestBody(HttpRequest request) {
+        Optional<HttpRequest.BodyPublisher> publisher = request.bodyPublisher();
+        if (publisher.isEmpty() || publisher.get().contentLength() == 0) {
+            return "";
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CompletableFuture<String> body = new CompletableFuture<>();
+        publisher.get().subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                byte[] chunk = new byte[item.remaining()];
+                item.get(chunk);
+                bytes.writeBytes(chunk);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                body.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                body.complete(bytes.toString(StandardCharsets.UTF_8));
+            }
+        });
+        try {
+            return body.get(1, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            logger.warn("Could not read lab request body for the traffic archive: {}", e.getMessage());
+            return "";
+        }
+    }
+
+    private synchronized void write(JSONObject exchange) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(exchange.toString());
+            writer.write('\n');
+            // Sync-flushed, so a crash loses at most the exchange being written
+            writer.flush();
+            exchanges.incrementAndGet();
+        } catch (IOException e) {
+            logger.warn("Failed to record lab exchange to {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Completes the archive file; recording stops
+     */
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+            logger.info("Recorded {} lab exchanges to {}", exchanges.get(), path);
+        } catch (IOException e) {
+            logger.warn("Failed to close lab traffic archive {}: {}", path, e.getMessage());
+        }
+        writer = null;
+    }
+
+    /**
+     * One exchange being recorded, written once when its body ends, fails or is abandoned
+     */
+    final class Recording {
+        private final HttpRequest request;
+        private final String requestBody;
+        private final AtomicBoolean written = new AtomicBoolean();
+
+        private Recording(HttpRequest request, String requestBody) {
+            this.request = request;
+            this.requestBody = requestBody;
+        }
+
+        /**
+         * Wraps a body handler so the body it receives is copied into the archive
+         */
+        <T> HttpResponse.BodyHandler<T> recording(HttpResponse.BodyHandler<T> handler) {
+            return responseInfo -> new RecordingSubscriber<>(handler.apply(responseInfo), responseInfo, this);
+        }
+
+        /**
+         * Records an exchange that failed before its body was received
+         */
+        void fail(Throwable error) {
+            if (error instanceof CompletionException && error.getCause() != null) {
+                error = error.getCause();
+            }
+            if (written.compareAndSet(false, true)) {
+                write(exchange()
+                    .put("error", new JSONObject()
+                        .put("type", error.getClass().getSimpleName())
+                        .put("message", error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName())));
+            }
+        }
+
+        private void complete(HttpResponse.ResponseInfo responseInfo, ByteArrayOutputStream body, boolean truncated) {
+            if (!written.compareAndSet(false, true)) {
+                return;
+            }
+            JSONObject headers = new JSONObject();
+            responseInfo.headers().map().forEach((name, values) -> {
+                if (!name.startsWith(":")) {
+                    headers.put(name.toLowerCase(Locale.ROOT), new JSONArray(values));
+                }
+            });
+            JSONObject exchange = exchange()
+                .put("status", responseInfo.statusCode())
+                .put("version", responseInfo.version().name())
+                .put("headers", headers)
+                .put("body", Base64.getEncoder().encodeToString(body.toByteArray()));
+            if (truncated) {
+                exchange.put("truncated", true);
+            }
+            write(exchange);
+        }
+
+        private JSONObject exchange() {
+            return new JSONObject()
+                .put("recorded_at", Instant.now().toString())
+                .put("method", request.method())
+                .put("uri", request.uri().toString())
+                .put("request_body", requestBody);
+        }
+    }
+
+    /**
+     * Copies each buffer of the body before passing it on
+     * A body the test abandons (cancelled, stream closed early) is recorded as far as it was received
+     */
+    private static final class RecordingSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+        private final HttpResponse.BodySubscriber<T> downstream;
+        private final HttpResponse.ResponseInfo responseInfo;
+        private final Recording recording;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        RecordingSubscriber(HttpResponse.BodySubscriber<T> downstream, HttpResponse.ResponseInfo responseInfo, Recording recording) {
+            this.downstream = downstream;
+            this.responseInfo = responseInfo;
+            this.recording = recording;
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return downstream.getBody();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            downstream.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    subscription.request(n);
+                }
+
+                @Override
+                public void cancel() {
+                    recordBody(true);
+                    subscription.cancel();
+                }
+            });
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            synchronized (body) {
+                for (ByteBuffer item : items) {
+                    ByteBuffer copy = item.duplicate();
+                    byte[] chunk = new byte[copy.remaining()];
+                    copy.get(chunk);
+                    body.writeBytes(chunk);
+                }
+            }
+            downstream.onNext(items);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            recording.fail(throwable);
+            downstream.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            recordBody(false);
+            downstream.onComplete();
+        }
+
+        private void recordBody(boolean truncated) {
+            synchronized (body) {
+                recording.complete(responseInfo, body, truncated);
+            }
+        }
+    }
+
+    /**
+     * Publishes a recorded body in chunks as the subscriber asks for them
+     */
+    private static final class ReplaySubscription implements Flow.Subscription {
+        private final HttpResponse.BodySubscriber<?> subscriber;
+        private final byte[] body;
+        private int position;
+        private long demand;
+        private boolean delivering;
+        private boolean done;
+
+        ReplaySubscription(HttpResponse.BodySubscriber<?> subscriber, byte[] body) {
+            this.subscriber = subscriber;
+            this.body = body;
+        }
+
+        @Override
+        public synchronized void request(long n) {
+            if (done) {
+                return;
+            }
+            demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            if (delivering) {
+                // Called from onNext, the running loop picks the demand up
+                return;
+            }
+            delivering = true;
+            try {
+                while (!done && demand > 0 && position < body.length) {
+                    int length = Math.min(REPLAY_CHUNK_SIZE, body.length - position);
+                    ByteBuffer chunk = ByteBuffer.wrap(body, position, length).slice();
+                    position += length;
+                    demand--;
+                    subscriber.onNext(List.of(chunk));
+                }
+                if (!done && position >= body.length) {
+                    done = true;
+                    subscriber.onComplete();
+                }
+            } finally {
+                delivering = false;
+            }
+        }
+
+        @Override
+        public synchronized void cancel() {
+            done = true;
+        }
+    }
+
+    /**
+     * Response served from the archive
+     */
+    private static final class ReplayedResponse<T> implements HttpResponse<T> {
+        private final HttpRequest request;
+        private final ResponseInfo responseInfo;
+        private final T body;
+
+        ReplayedResponse(HttpRequest request, ResponseInfo responseInfo, T body) {
+            this.request = request;
+            this.responseInfo = responseInfo;
+            this.body = body;
+        }
+
+        @Override
+        public int statusCode() {
+            return responseInfo.statusCode();
+        }
+
+        @Override
+        public HttpRequest request() {
+            return request;
+        }
+
+        @Override
+        public Optional<HttpResponse<T>> previousResponse() {
+            return Optional.empty();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return responseInfo.headers();
+        }
+
+        @Override
+        public T body() {
+            return body;
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return Optional.empty();
+        }
+
+        @Override
+        public URI uri() {
+            return request.uri();
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return responseInfo.version();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.mongodb.workshop.tests;
+
+import java.time.Duration;
+
+/**
+ * How a load grading exercise drives its endpoint and the numbers it must reach
+ *
+ * With a target rate, requests are started on a fixed schedule whether or not earlier
+ * ones have answered (open loop), and concurrency caps how many may be outstanding.
+ * Without one, concurrency workers each send the next request as soon as the previous
+ * one has answered (closed loop). Thresholds that are not set are not graded.
+ */
+public final class LoadProfile {
+
+    public static final int DEFAULT_CONCURRENCY = 10;
+    public static final Duration DEFAULT_DURATION = Duration.ofSeconds(10);
+    public static final double DEFAULT_MAX_ERROR_RATE = 0.01;
+
+    private final double ratePerSecond;
+    private final int concurrency;
+    private final Duration duration;
+    private final Double maxP95Millis;
+    private final Double maxP99Millis;
+    private final Double minThroughputPerSecond;
+    private final double maxErrorRate;
+
+    /**
+     * @param ratePerSecond Requests started per second, 0 for closed loop
+     * @param concurrency Maximum number of outstanding requests
+     * @param duration How long the endpoint is driven
+     * @param maxP95Millis Highest passing 95th percentile latency, may be null
+     * @param maxP99Millis Highest passing 99th percentile latency, may be null
+     * @param minThroughputPerSecond Lowest passing rate of successful responses, may be null
+     * @param maxErrorRate Highest passing share of failed requests, between 0 and 1
+     */
+    public LoadProfile(double ratePerSecond, int concurrency, Duration duration, Double maxP95Millis,
+                       Double maxP99Millis, Double minThroughputPerSecond, double maxErrorRate) {
+        this.ratePerSecond = Math.max(0, ratePerSecond);
+        this.concurrency = Math.max(1, concurrency);
+        this.duration = duration;
+        this.maxP95Millis = maxP95Millis;
+        this.maxP99Millis = maxP99Millis;
+        this.minThroughputPerSecond = minThroughputPerSecond;
+        this.maxErrorRate = maxErrorRate;
+    }
+
+    /**
+     * Profile used when the scenario does not configure the load exercise
+     */
+    public static LoadProfile defaults() {
+        return new LoadProfile(0, DEFAULT_CONCURRENCY, DEFAULT_DURATION, null, null, null, DEFAULT_MAX_ERROR_RATE);
+    }
+
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    public boolean isOpenLoop() {
+        return ratePerSecond > 0;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public Double getMaxP95Millis() {
+        return maxP95Millis;
+    }
+
+    public Double getMaxP99Millis() {
+        return maxP99Millis;
+    }
+
+    public Double getMinThroughputPerSecond() {
+        return minThroughputPerSecond;
+    }
+
+    public double getMaxErrorRate() {
+        return maxErrorRate;
+    }
+}
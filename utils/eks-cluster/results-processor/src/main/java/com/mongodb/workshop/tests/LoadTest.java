@@ -0,0 +1,307 @@
+package com.mongodb.workshop.tests;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Test for: &lt;exercise&gt;-load (load grading of a read-only exercise)
+ * Repeats the request the exercise makes for a fixed duration and grades the measured
+ * throughput, error rate and latency percentiles against the scenario's thresholds
+ * Expected: the endpoint keeps answering within the thresholds under the configured load
+ */
+public class LoadTest extends BaseTest {
+
+    public static final String NAME_SUFFIX = "-load";
+
+    // Time kept before the deadline for the last requests to answer
+    private static final Duration DRAIN_MARGIN = Duration.ofSeconds(5);
+
+    // Latest report per participant and load exercise
+    private static final Map<String, Map<String, LoadTestReport>> reports = new ConcurrentHashMap<>();
+
+    private final BaseTest target;
+    private final LoadProfile profile;
+
+    /**
+     * @param target Exercise whose request drives the load
+     * @param profile Load to apply and thresholds to grade against
+     */
+    public LoadTest(BaseTest target, LoadProfile profile) {
+        super(target.database, target.serviceName, target.endpoint);
+        this.target = target;
+        this.profile = profile;
+    }
+
+    /**
+     * Checks whether an exercise name refers to load grading of another exercise
+     */
+    public static boolean isLoadExercise(String exercise) {
+        return exercise.endsWith(NAME_SUFFIX) && exercise.length() > NAME_SUFFIX.length();
+    }
+
+    /**
+     * Gets the exercise a load exercise drives (crud-1-load drives crud-1)
+     */
+    public static String baseExercise(String exercise) {
+        return isLoadExercise(exercise) ? exercise.substring(0, exercise.length() - NAME_SUFFIX.length()) : exercise;
+    }
+
+    /**
+     * Gets the latest load reports of a participant, ordered by exercise
+     */
+    public static List<LoadTestReport> getReports(String user) {
+        List<LoadTestReport> userReports = new ArrayList<>(reports.getOrDefault(user, Map.of()).values());
+        userReports.sort(Comparator.comparing(LoadTestReport::getExercise));
+        return userReports;
+    }
+
+    @Override
+    public String getTestName() {
+        return target.getTestName() + NAME_SUFFIX;
+    }
+
+    @Override
+    public TestResult execute() {
+        logger.info("Executing {} test - Load grading {}", getTestName(), target.getTestName());
+
+        LabRequestSpec spec = target.getLoadRequest();
+        if (spec == null) {
+            String errorMessage = String.format("%s cannot be load graded - it modifies data, choose a read-only exercise in the scenario", target.getTestName());
+            logger.warn("{} test failed: {}", getTestName(), errorMessage);
+            return TestResult.failure(errorMessage);
+        }
+
+        ServiceCircuitBreaker breaker = ServiceCircuitBreaker.forService(serviceName);
+        if (breaker.isOpen()) {
+            String errorMessage = breaker.unavailable().getMessage();
+            logger.warn("{} test skipped: {}", getTestName(), errorMessage);
+            return TestResult.inconclusive(errorMessage);
+        }
+
+        try {
+            Duration duration = loadDuration();
+            // The request is immutable, so one instance is sent for the whole run
+            HttpRequest request = buildLabRequest(spec);
+            LoadTestReport report = new LoadTestReport(getTestName(), spec.getEndpoint(), profile);
+
+            logger.info("{} driving {} for {}s ({})", getTestName(), spec.getEndpoint(), duration.toSeconds(),
+                profile.isOpenLoop()
+                    ? String.format(Locale.ROOT, "%.1f requests/s, at most %d outstanding", profile.getRatePerSecond(), profile.getConcurrency())
+                    : String.format(Locale.ROOT, "%d concurrent requests", profile.getConcurrency()));
+
+            long startNanos = System.nanoTime();
+            if (profile.isOpenLoop()) {
+                runOpenLoop(request, report, startNanos, duration);
+            } else {
+                runClosedLoop(request, report, startNanos, duration);
+            }
+            long elapsedNanos = System.nanoTime() - startNanos;
+
+            String failureReason = grade(report, elapsedNanos);
+            report.complete(elapsedNanos, failureReason == null, failureReason);
+            reports.computeIfAbsent(database.getName(), key -> new ConcurrentHashMap<>()).put(getTestName(), report);
+
+            String summary = summarize(report);
+            if (failureReason != null) {
+                logger.warn("{} test failed: {} ({})", getTestName(), failureReason, summary);
+                return TestResult.failure(failureReason);
+            }
+            logger.info("{} test passed: {}", getTestName(), summary);
+            return TestResult.success();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return TestResult.failure("Load grading was interrupted before it completed");
+        } catch (Exception e) {
+            String errorMessage = String.format("Load test execution failed with exception: %s - check that %s passes on its own", e.getMessage(), target.getTestName());
+            logger.error("{} test failed: {}", getTestName(), errorMessage);
+            return TestResult.failure(errorMessage);
+        }
+    }
+
+    /**
+     * Gets how long to drive the endpoint - the configured duration, shortened to fit the deadline
+     */
+    private Duration loadDuration() throws HttpTimeoutException {
+        Duration duration = profile.getDuration();
+        Instant deadline = getDeadline();
+        if (deadline == null) {
+            return duration;
+        }
+        Duration available = Duration.between(Instant.now(), deadline).minus(DRAIN_MARGIN);
+        if (available.compareTo(Duration.ofSeconds(1)) < 0) {
+            throw new HttpTimeoutException("Not enough time left before the exercise deadline to apply load - raise its exercise timeout");
+        }
+        if (available.compareTo(duration) < 0) {
+            logger.warn("{} shortened from {}s to {}s to fit the exercise deadline - raise its exercise timeout",
+                getTestName(), duration.toSeconds(), available.toSeconds());
+            return available;
+        }
+        return duration;
+    }
+
+    /**
+     * Starts requests on a fixed schedule, dropping those due while the concurrency cap is reached
+     */
+    private void runOpenLoop(HttpRequest request, LoadTestReport report, long startNanos, Duration duration) throws InterruptedException {
+        long endNanos = startNanos + duration.toNanos();
+        double intervalNanos = 1e9 / profile.getRatePerSecond();
+        Semaphore outstanding = new Semaphore(profile.getConcurrency());
+        Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+
+        try {
+            long due = 0;
+            while (true) {
+                long dueNanos = startNanos + (long) (due * intervalNanos);
+                if (dueNanos - endNanos >= 0) {
+                    break;
+                }
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    continue;
+                }
+                due++;
+                if (!outstanding.tryAcquire()) {
+                    report.recordDropped();
+                    continue;
+                }
+                CompletableFuture<?> pending = send(request, report, dueNanos);
+                inFlight.add(pending);
+                pending.whenComplete((ignored, error) -> {
+                    inFlight.remove(pending);
+                    outstanding.release();
+                });
+            }
+
+            // Let the outstanding requests answer
+            outstanding.tryAcquire(profile.getConcurrency(), DRAIN_MARGIN.toMillis(), TimeUnit.MILLISECONDS);
+        } finally {
+            inFlight.forEach(pending -> pending.cancel(true));
+        }
+    }
+
+    /**
+     * Keeps each of the concurrent workers sending its next request as soon as the previous one answered
+     */
+    private void runClosedLoop(HttpRequest request, LoadTestReport report, long startNanos, Duration duration) throws InterruptedException {
+        long endNanos = startNanos + duration.toNanos();
+        CountDownLatch finished = new CountDownLatch(profile.getConcurrency());
+        Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+
+        try {
+            for (int worker = 0; worker < profile.getConcurrency(); worker++) {
+                sendUntil(request, report, endNanos, finished, inFlight);
+            }
+            finished.await(duration.plus(DRAIN_MARGIN).toMillis(), TimeUnit.MILLISECONDS);
+        } finally {
+            // Stops the workers: a cancelled request ends its worker's loop
+            inFlight.forEach(pending -> pending.cancel(true));
+        }
+    }
+
+    private void sendUntil(HttpRequest request, LoadTestReport report, long endNanos, CountDownLatch finished,
+                           Set<CompletableFuture<?>> inFlight) {
+        long startNanos = System.nanoTime();
+        if (startNanos - endNanos >= 0) {
+            finished.countDown();
+            return;
+        }
+        CompletableFuture<?> pending = send(request, report, startNanos);
+        inFlight.add(pending);
+        // Continued asynchronously on the processor's executor so requests that fail immediately do not grow the stack
+        pending.whenCompleteAsync((ignored, error) -> {
+            inFlight.remove(pending);
+            if (pending.isCancelled()) {
+                finished.countDown();
+            } else {
+                sendUntil(request, report, endNanos, finished, inFlight);
+            }
+        }, LabHttpClient.getExecutor());
+    }
+
+    /**
+     * Sends one request and records it against the time it was due
+     * The body is decoded and discarded, so compressed responses are still checked
+     */
+    private CompletableFuture<?> send(HttpRequest request, LoadTestReport report, long dueNanos) {
+        HttpResponse.BodyHandler<Void> handler = ContentDecoding.decoding(database.getName(), endpoint, HttpResponse.BodyHandlers.discarding(), bytes -> { });
+        CompletableFuture<HttpResponse<Void>> pending = LabHttpClient.sendAsync(request, handler);
+        pending.whenComplete((response, error) -> {
+            long micros = (System.nanoTime() - dueNanos) / 1000;
+            if (error == null) {
+                report.recordResponse(micros, response.statusCode());
+                return;
+            }
+            if (error instanceof CompletionException && error.getCause() != null) {
+                error = error.getCause();
+            }
+            // Requests cancelled because they outlived the run count as timeouts
+            boolean timedOut = error instanceof HttpTimeoutException || pending.isCancelled();
+            report.recordFailure(micros, timedOut ? LabRequestStats.STATUS_TIMEOUT : LabRequestStats.STATUS_ERROR);
+        });
+        return pending;
+    }
+
+    /**
+     * Checks the measured numbers against the profile's thresholds
+     * @return The failure reason naming every missed threshold, or null when all were met
+     */
+    private String grade(LoadTestReport report, long elapsedNanos) {
+        List<String> missed = new ArrayList<>();
+        double seconds = elapsedNanos / 1e9;
+        double throughput = seconds > 0 ? report.getSuccesses() / seconds : 0;
+        double errorRate = report.getErrorRate();
+        double p95 = report.getLatency().getPercentileMicros(95) / 1000.0;
+        double p99 = report.getLatency().getPercentileMicros(99) / 1000.0;
+
+        if (report.getSuccesses() == 0) {
+            missed.add("no request succeeded");
+        }
+        if (profile.getMinThroughputPerSecond() != null && throughput < profile.getMinThroughputPerSecond()) {
+            missed.add(String.format(Locale.ROOT, "throughput %.1f requests/s is below %.1f", throughput, profile.getMinThroughputPerSecond()));
+        }
+        if (errorRate > profile.getMaxErrorRate()) {
+            missed.add(String.format(Locale.ROOT, "error rate %.1f%% is above %.1f%%", errorRate * 100, profile.getMaxErrorRate() * 100));
+        }
+        if (profile.getMaxP95Millis() != null && p95 > profile.getMaxP95Millis()) {
+            missed.add(String.format(Locale.ROOT, "p95 latency %.1f ms is above %.1f ms", p95, profile.getMaxP95Millis()));
+        }
+        if (profile.getMaxP99Millis() != null && p99 > profile.getMaxP99Millis()) {
+            missed.add(String.format(Locale.ROOT, "p99 latency %.1f ms is above %.1f ms", p99, profile.getMaxP99Millis()));
+        }
+
+        if (missed.isEmpty()) {
+            return null;
+        }
+        return String.format("Endpoint did not hold up under load - %s - check for missing indexes, unbounded queries or per-request connection setup",
+            String.join(", ", missed));
+    }
+
+    private static String summarize(LoadTestReport report) {
+        LatencyHistogram latency = report.getLatency();
+        return String.format(Locale.ROOT, "%d requests in %.1fs, %.1f requests/s, %.1f%% errors (%d dropped), p50 %.1f ms, p95 %.1f ms, p99 %.1f ms",
+            report.getRequests(), report.getElapsedSeconds(), report.getThroughputPerSecond(), report.getErrorRate() * 100,
+            report.getDropped(), latency.getPercentileMicros(50) / 1000.0, latency.getPercentileMicros(95) / 1000.0,
+            latency.getPercentileMicros(99) / 1000.0);
+    }
+}
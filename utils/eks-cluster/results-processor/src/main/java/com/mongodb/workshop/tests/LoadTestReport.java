@@ -0,0 +1,149 @@
+package com.mongodb.workshop.tests;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measured outcome of one load grading run
+ *
+ * Latency is measured from when a request was due to start, so a backend that falls behind
+ * an open-loop schedule shows it in the percentiles instead of hiding it. Requests that could
+ * not start because the concurrency cap was reached are counted as dropped and as errors.
+ */
+public final class LoadTestReport {
+
+    private final String exercise;
+    private final String endpoint;
+    private final LoadProfile profile;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final Map<String, LongAdder> statusCodes = new ConcurrentHashMap<>();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile long elapsedNanos;
+    private volatile boolean passed;
+    private volatile String failureReason;
+    private volatile Instant completedAt;
+
+    LoadTestReport(String exercise, String endpoint, LoadProfile profile) {
+        this.exercise = exercise;
+        this.endpoint = endpoint;
+        this.profile = profile;
+    }
+
+    /**
+     * Records an answered request; any 2xx status is a success
+     */
+    void recordResponse(long micros, int statusCode) {
+        latency.record(micros);
+        statusCodes.computeIfAbsent(String.valueOf(statusCode), key -> new LongAdder()).increment();
+        if (statusCode >= 200 && statusCode < 300) {
+            successes.increment();
+        } else {
+            failures.increment();
+        }
+    }
+
+    /**
+     * Records a request that failed without a response
+     */
+    void recordFailure(long micros, String status) {
+        latency.record(micros);
+        statusCodes.computeIfAbsent(status, key -> new LongAdder()).increment();
+        failures.increment();
+    }
+
+    /**
+     * Records a scheduled request that was not started because too many were outstanding
+     */
+    void recordDropped() {
+        dropped.increment();
+        failures.increment();
+    }
+
+    void complete(long elapsedNanos, boolean passed, String failureReason) {
+        this.elapsedNanos = elapsedNanos;
+        this.passed = passed;
+        this.failureReason = failureReason;
+        this.completedAt = Instant.now();
+    }
+
+    public String getExercise() {
+        return exercise;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public LoadProfile getProfile() {
+        return profile;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Gets the number of requests per status code, failed exchanges under "error" and "timeout"
+     */
+    public Map<String, Long> getStatusCodes() {
+        Map<String, Long> counts = new TreeMap<>();
+        statusCodes.forEach((status, count) -> counts.put(status, count.sum()));
+        return counts;
+    }
+
+    /**
+     * Gets the number of requests that were due, including dropped ones
+     */
+    public long getRequests() {
+        return successes.sum() + failures.sum();
+    }
+
+    public long getSuccesses() {
+        return successes.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public double getElapsedSeconds() {
+        return elapsedNanos / 1e9;
+    }
+
+    /**
+     * Gets the rate of successful responses over the run
+     */
+    public double getThroughputPerSecond() {
+        double seconds = getElapsedSeconds();
+        return seconds > 0 ? successes.sum() / seconds : 0;
+    }
+
+    /**
+     * Gets the share of due requests that did not succeed, between 0 and 1
+     */
+    public double getErrorRate() {
+        long requests = getRequests();
+        return requests == 0 ? 0 : (double) failures.sum() / requests;
+    }
+
+    public boolean isPassed() {
+        return passed;
+    }
+
+    public String getFailureReason() {
+        return failureReason;
+    }
+
+    public Instant getCompletedAt() {
+        return completedAt;
+    }
+}
@@ -1,10 +1,10 @@
 package com.mongodb.workshop.tests;
 
-import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 import java.net.http.HttpResponse;
 import java.util.List;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 import org.bson.Document;
 import org.json.JSONArray;
 
@@ -25,13 +25,21 @@ public class Pipeline1Test extends BaseTest {
         return "pipeline-1";
     }
     
+    @Override
+    protected LabRequestSpec getLoadRequest() {
+        return LabRequestSpec.get(endpoint);
+    }
+    
     @Override
     public TestResult execute() {
         logger.info("Executing Pipeline-1 test - Testing aggregationPipeline function");
         
         try {
             // Test the pipeline-1 endpoint (no request body needed for this aggregation)
-            HttpResponse<String> response = makeLabRequest(endpoint);
+            // Start the lab request and run the reference aggregation while it is in flight
+            CompletableFuture<HttpResponse<String>> pendingResponse = makeLabRequestAsync(endpoint);
+            List<Document> resultsFromMongo = getListingsAndReviewsCollection().aggregate(referencePipeline()).into(new java.util.ArrayList<>());
+            HttpResponse<String> response = join(pendingResponse);
             
             if (response.statusCode() != 200) {
                 String errorMessage = String.format("HTTP request failed with status %d - expected 200 for GET request, check if your aggregationPipeline endpoint is implemented correctly", response.statusCode());
@@ -88,39 +96,6 @@ public class Pipeline1Test extends BaseTest {
                 }
             }
 
-            // Get results from MongoDB
-            MongoCollection<Document> collection = getListingsAndReviewsCollection();
-
-
-            // Java equivalent of the new property investment analysis pipeline
-            List<Document> pipeline = Arrays.asList(
-                // Stage 1: Filter for quality investment properties
-                new Document("$match", new Document("price", new Document("$gt", 0))
-                    .append("number_of_reviews", new Document("$gt", 0))
-                    .append("beds", new Document("$gte", 0).append("$lte", 10))
-                    .append("accommodates", new Document("$gt", 0))),
-                    
-                // Stage 2: Group by bed count and calculate investment metrics
-                new Document("$group", new Document("_id", "$beds")
-                    .append("averagePrice", new Document("$avg", "$price"))
-                    .append("propertyCount", new Document("$sum", 1))
-                    .append("averageReviews", new Document("$avg", "$number_of_reviews"))),
-                    
-                // Stage 3: Format output for business presentation
-                new Document("$project", new Document("_id", 0)
-                    .append("beds", "$_id")
-                    .append("averagePrice", new Document("$round", Arrays.asList("$averagePrice", 2)))
-                    .append("propertyCount", 1)
-                    .append("averageReviews", new Document("$round", Arrays.asList("$averageReviews", 1)))),
-                    
-                // Stage 4: Sort by bed count ascending
-                new Document("$sort", new Document("beds", 1))
-            );
-
-
-            // Run the aggregation pipeline
-            List<Document> resultsFromMongo = collection.aggregate(pipeline).into(new java.util.ArrayList<>());
-
             // Now you can use resultsFromMongo for assertions or further processing
 
             // Compare the first result from MongoDB with the first result from the API
@@ -162,6 +137,35 @@ public class Pipeline1Test extends BaseTest {
         }
     }
 
+    /**
+     * Reference pipeline the participant's aggregationPipeline result is compared against
+     */
+    private static List<Document> referencePipeline() {
+        return Arrays.asList(
+            // Stage 1: Filter for quality investment properties
+            new Document("$match", new Document("price", new Document("$gt", 0))
+                .append("number_of_reviews", new Document("$gt", 0))
+                .append("beds", new Document("$gte", 0).append("$lte", 10))
+                .append("accommodates", new Document("$gt", 0))),
+                
+            // Stage 2: Group by bed count and calculate investment metrics
+            new Document("$group", new Document("_id", "$beds")
+                .append("averagePrice", new Document("$avg", "$price"))
+                .append("propertyCount", new Document("$sum", 1))
+                .append("averageReviews", new Document("$avg", "$number_of_reviews"))),
+                
+            // Stage 3: Format output for business presentation
+            new Document("$project", new Document("_id", 0)
+                .append("beds", "$_id")
+                .append("averagePrice", new Document("$round", Arrays.asList("$averagePrice", 2)))
+                .append("propertyCount", 1)
+                .append("averageReviews", new Document("$round", Arrays.asList("$averageReviews", 1)))),
+                
+            // Stage 4: Sort by bed count ascending
+            new Document("$sort", new Document("beds", 1))
+        );
+    }
+    
     private void validateNumericField(org.json.JSONObject jsonObject, String fieldName, String expectedType) throws Exception {
         if (!jsonObject.has(fieldName)) {
             throw new Exception("Field " + fieldName + " is missing");
@@ -1,10 +1,10 @@
 package com.mongodb.workshop.tests;
 
-import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 import java.net.http.HttpResponse;
 import java.util.List;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 import org.bson.Document;
 import org.json.JSONArray;
 
@@ -24,13 +24,21 @@ public class Pipeline2Test extends BaseTest {
         return "pipeline-2";
     }
     
+    @Override
+    protected LabRequestSpec getLoadRequest() {
+        return LabRequestSpec.get(endpoint);
+    }
+    
     @Override
     public TestResult execute() {
         logger.info("Executing Pipeline-2 test - Testing hostPerformanceAnalytics function");
         
         try {
             // Test the pipeline-2 endpoint (no request body needed for this aggregation)
-            HttpResponse<String> response = makeLabRequest(endpoint);
+            // Start the lab request and run the reference aggregation while it is in flight
+            CompletableFuture<HttpResponse<String>> pendingResponse = makeLabRequestAsync(endpoint);
+            List<Document> resultsFromMongo = getListingsAndReviewsCollection().aggregate(referencePipeline()).into(new java.util.ArrayList<>());
+            HttpResponse<String> response = join(pendingResponse);
             
             if (response.statusCode() != 200) {
                 String errorMessage = String.format("HTTP request failed with status %d - expected 200 for GET request, check if your superhostAnalytics endpoint is implemented correctly", response.statusCode());
@@ -104,37 +112,6 @@ public class Pipeline2Test extends BaseTest {
                 }
             }
 
-            // Get results from MongoDB to validate against
-            MongoCollection<Document> collection = getListingsAndReviewsCollection();
-
-            // Java equivalent of the provided pipeline
-            List<Document> pipeline = Arrays.asList(
-                new Document("$match", new Document("price", new Document("$gt", 0))
-                    .append("number_of_reviews", new Document("$gt", 0))),
-                new Document("$addFields", new Document("isSuperhost", 
-                    new Document("$ifNull", Arrays.asList("$host.host_is_superhost", false)))),
-                new Document("$group", new Document("_id", "$isSuperhost")
-                    .append("avgRating", new Document("$avg", "$review_scores.review_scores_rating"))
-                    .append("avgReviews", new Document("$avg", "$number_of_reviews"))
-                    .append("avgListings", new Document("$avg", "$host.host_total_listings_count"))
-                    .append("avgPrice", new Document("$avg", "$price"))
-                    .append("totalProperties", new Document("$sum", 1))
-                    .append("avgResponseRate", new Document("$avg", "$host.host_response_rate"))),
-                new Document("$project", new Document("_id", 0)
-                    .append("hostType", new Document("$cond", 
-                        Arrays.asList("$_id", "Superhost", "Regular Host")))
-                    .append("avgRating", new Document("$round", Arrays.asList("$avgRating", 1)))
-                    .append("avgReviews", new Document("$round", Arrays.asList("$avgReviews", 0)))
-                    .append("avgListings", new Document("$round", Arrays.asList("$avgListings", 0)))
-                    .append("avgPrice", new Document("$round", Arrays.asList("$avgPrice", 2)))
-                    .append("totalProperties", "$totalProperties")
-                    .append("avgResponseRate", new Document("$round", Arrays.asList("$avgResponseRate", 1)))),
-                new Document("$sort", new Document("avgRating", -1))
-            );
-
-            // Run the aggregation pipeline
-            List<Document> resultsFromMongo = collection.aggregate(pipeline).into(new java.util.ArrayList<>());
-
             // Compare the results count
             if (resultsFromMongo.size() != results.length()) {
                 String errorMessage = String.format("Result count mismatch between API and MongoDB aggregation. MongoDB: %d, API: %d - check if your superhostAnalytics function returns the same grouping as the expected pipeline", 
@@ -200,6 +177,35 @@ public class Pipeline2Test extends BaseTest {
         }
     }
     
+    /**
+     * Reference pipeline the participant's superhostAnalytics result is compared against
+     */
+    private static List<Document> referencePipeline() {
+        return Arrays.asList(
+            new Document("$match", new Document("price", new Document("$gt", 0))
+                .append("number_of_reviews", new Document("$gt", 0))),
+            new Document("$addFields", new Document("isSuperhost", 
+                new Document("$ifNull", Arrays.asList("$host.host_is_superhost", false)))),
+            new Document("$group", new Document("_id", "$isSuperhost")
+                .append("avgRating", new Document("$avg", "$review_scores.review_scores_rating"))
+                .append("avgReviews", new Document("$avg", "$number_of_reviews"))
+                .append("avgListings", new Document("$avg", "$host.host_total_listings_count"))
+                .append("avgPrice", new Document("$avg", "$price"))
+                .append("totalProperties", new Document("$sum", 1))
+                .append("avgResponseRate", new Document("$avg", "$host.host_response_rate"))),
+            new Document("$project", new Document("_id", 0)
+                .append("hostType", new Document("$cond", 
+                    Arrays.asList("$_id", "Superhost", "Regular Host")))
+                .append("avgRating", new Document("$round", Arrays.asList("$avgRating", 1)))
+                .append("avgReviews", new Document("$round", Arrays.asList("$avgReviews", 0)))
+                .append("avgListings", new Document("$round", Arrays.asList("$avgListings", 0)))
+                .append("avgPrice", new Document("$round", Arrays.asList("$avgPrice", 2)))
+                .append("totalProperties", "$totalProperties")
+                .append("avgResponseRate", new Document("$round", Arrays.asList("$avgResponseRate", 1)))),
+            new Document("$sort", new Document("avgRating", -1))
+        );
+    }
+    
     /**
      * Extracts numeric value from JSONObject (API result), handling both regular numbers and $numberDecimal format
      */
@@ -0,0 +1,226 @@
+package com.mongodb.workshop.tests;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Byte budget for the lab responses of one exercise
+ *
+ * Body handlers created here count response bytes as they arrive and abort the exchange
+ * with a {@link ResponseTooLargeException} once the exercise has received more than its
+ * budget, so an endpoint that ignores its limit cannot make the processor buffer the whole
+ * collection. A Content-Length above what is left of the budget fails before the body is read.
+ */
+public final class ResponseBudget {
+
+    private final long maxBytes;
+    private final AtomicLong received = new AtomicLong();
+
+    /**
+     * @param maxBytes Bytes the exercise may receive across all of its lab responses
+     */
+    public ResponseBudget(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Bytes received so far
+     */
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * Body handler decoding the body into a string, failing when the budget is exceeded
+     */
+    public HttpResponse.BodyHandler<String> ofString() {
+        return responseInfo -> new BoundedSubscriber<>(
+            HttpResponse.BodySubscribers.ofString(charsetOf(responseInfo.headers())), contentLength(responseInfo.headers()));
+    }
+
+    /**
+     * Body handler exposing the body as a stream whose reads fail when the budget is exceeded
+     */
+    public HttpResponse.BodyHandler<InputStream> ofInputStream() {
+        return responseInfo -> {
+            long declaredLength = contentLength(responseInfo.headers());
+            return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofInputStream(),
+                body -> new BoundedInputStream(body, declaredLength));
+        };
+    }
+
+    /**
+     * Counts received bytes
+     * @throws ResponseTooLargeException When the budget is exceeded
+     */
+    private void consume(long bytes) throws ResponseTooLargeException {
+        if (received.addAndGet(bytes) > maxBytes) {
+            throw tooLarge();
+        }
+    }
+
+    /**
+     * Fails early when the declared body length does not fit in what is left of the budget
+     */
+    private void checkDeclaredLength(long declaredLength) throws ResponseTooLargeException {
+        if (declaredLength > 0 && received.get() + declaredLength > maxBytes) {
+            throw tooLarge();
+        }
+    }
+
+    private ResponseTooLargeException tooLarge() {
+        LabHttpClient.recordResponseTooLarge();
+        return new ResponseTooLargeException(maxBytes);
+    }
+
+    private static long contentLength(HttpHeaders headers) {
+        return headers.firstValueAsLong("Content-Length").orElse(-1);
+    }
+
+    /**
+     * Gets the charset from the Content-Type header, defaulting to UTF-8
+     */
+    private static Charset charsetOf(HttpHeaders headers) {
+        String contentType = headers.firstValue("Content-Type").orElse("");
+        for (String parameter : contentType.split(";")) {
+            String[] pair = parameter.trim().split("=", 2);
+            if (pair.length == 2 && pair[0].equalsIgnoreCase("charset")) {
+                try {
+                    return Charset.forName(pair[1].replace("\"", "").trim());
+                } catch (Exception e) {
+                    break;
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Forwards body buffers to another subscriber until the budget is exceeded, then cancels the exchange
+     */
+    private final class BoundedSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+        private final HttpResponse.BodySubscriber<T> downstream;
+        private final long declaredLength;
+        private final CompletableFuture<T> body = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+        private boolean failed;
+
+        BoundedSubscriber(HttpResponse.BodySubscriber<T> downstream, long declaredLength) {
+            this.downstream = downstream;
+            this.declaredLength = declaredLength;
+            downstream.getBody().whenComplete((value, error) -> {
+                if (error != null) {
+                    body.completeExceptionally(error);
+                } else {
+                    body.complete(value);
+                }
+            });
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            try {
+                checkDeclaredLength(declaredLength);
+            } catch (ResponseTooLargeException e) {
+                fail(e);
+                return;
+            }
+            downstream.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            if (failed) {
+                return;
+            }
+            try {
+                consume(items.stream().mapToLong(ByteBuffer::remaining).sum());
+            } catch (ResponseTooLargeException e) {
+                fail(e);
+                return;
+            }
+            downstream.onNext(items);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (!failed) {
+                downstream.onError(throwable);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            if (!failed) {
+                downstream.onComplete();
+            }
+        }
+
+        private void fail(ResponseTooLargeException e) {
+            failed = true;
+            subscription.cancel();
+            body.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Response stream failing reads once the budget is exceeded
+     */
+    private final class BoundedInputStream extends FilterInputStream {
+        private final long declaredLength;
+        private boolean checked;
+
+        BoundedInputStream(InputStream in, long declaredLength) {
+            super(in);
+            this.declaredLength = declaredLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkDeclared();
+            int b = super.read();
+            if (b >= 0) {
+                consume(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            checkDeclared();
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                consume(n);
+            }
+            return n;
+        }
+
+        private void checkDeclared() throws ResponseTooLargeException {
+            if (!checked) {
+                checked = true;
+                checkDeclaredLength(declaredLength);
+            }
+        }
+    }
+}
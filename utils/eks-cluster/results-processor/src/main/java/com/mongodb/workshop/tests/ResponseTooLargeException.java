@@ -0,0 +1,15 @@
+package com.mongodb.workshop.tests;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the lab responses of an exercise exceed its byte budget
+ */
+public class ResponseTooLargeException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ResponseTooLargeException(long maxBytes) {
+        super(String.format("Response too large - the endpoint returned more than %d bytes, check that it applies the expected filters and limits", maxBytes));
+    }
+}
@@ -22,16 +22,27 @@ public class Search2Test extends BaseTest {
         return "search-2";
     }
     
+    @Override
+    protected LabRequestSpec getLoadRequest() {
+        return LabRequestSpec.post(endpoint, searchRequestBody());
+    }
+    
+    /**
+     * Builds the request body with the search query
+     */
+    private Map<String, Object> searchRequestBody() {
+        Map<String, Object> requestBody = createRequestBody();
+        requestBody.put("query", "hawaii");
+        return requestBody;
+    }
+    
     @Override
     public TestResult execute() {
         logger.info("Executing Search-2 test - Testing facetSearch function");
         
         try {
             // Test the search-2 endpoint with a search query
-            Map<String, Object> requestBody = createRequestBody();
-            requestBody.put("query", "hawaii");
-            
-            HttpResponse<String> response = makeLabRequest(endpoint, requestBody);
+            HttpResponse<String> response = makeLabRequest(endpoint, searchRequestBody());
             
             if (response.statusCode() != 201) {
                 String errorMessage = String.format("HTTP request failed with status %d - expected 201 for POST request, check if your facetedSearch endpoint is implemented correctly", response.statusCode());
@@ -0,0 +1,169 @@
+package com.mongodb.workshop.tests;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Circuit breaker in front of the lab requests to one participant service
+ *
+ * Closed, requests are sent and consecutive connection failures (refused, reset or not
+ * established within the connect timeout) and gateway errors (502, 503, 504) are counted.
+ * A request that connected but did not answer in time says more about the exercise's query
+ * than about the service, so it is not counted. Once the count reaches the threshold the breaker opens and
+ * requests fail immediately with a {@link ServiceUnavailableException} instead of waiting
+ * for connect and request timeouts. The next run (trigger) moves it to half-open: the service
+ * availability probe is let through, and its outcome closes or reopens the breaker.
+ * Any other response, whatever its status, shows the service is reachable and closes it.
+ */
+public final class ServiceCircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServiceCircuitBreaker.class);
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final Map<String, ServiceCircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private static volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+
+    private final String serviceName;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private boolean probeInFlight;
+
+    private ServiceCircuitBreaker(String serviceName) {
+        this.serviceName = serviceName;
+    }
+
+    /**
+     * Sets how many consecutive failures open a breaker; 0 disables the breakers
+     */
+    public static void configure(int threshold) {
+        failureThreshold = Math.max(0, threshold);
+    }
+
+    /**
+     * Gets the breaker of a service, creating it closed on first use
+     */
+    public static ServiceCircuitBreaker forService(String serviceName) {
+        return breakers.computeIfAbsent(serviceName, ServiceCircuitBreaker::new);
+    }
+
+    /**
+     * Lets the next request through as a probe when the breaker is open; call when a new run starts
+     */
+    public synchronized void halfOpen() {
+        if (state == State.OPEN) {
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+            logger.info("Circuit breaker for {} half-open - probing the service", serviceName);
+        }
+    }
+
+    public synchronized boolean isOpen() {
+        return state == State.OPEN;
+    }
+
+    /**
+     * Checks a request may be sent
+     * @throws ServiceUnavailableException When the breaker is open, or half-open with its probe in flight
+     */
+    public synchronized void beforeRequest() throws ServiceUnavailableException {
+        if (state == State.OPEN || (state == State.HALF_OPEN && probeInFlight)) {
+            throw unavailable();
+        }
+        if (state == State.HALF_OPEN) {
+            probeInFlight = true;
+        }
+    }
+
+    /**
+     * Creates the exception requests fail with while the breaker is open
+     */
+    public synchronized ServiceUnavailableException unavailable() {
+        return new ServiceUnavailableException(serviceName, consecutiveFailures);
+    }
+
+    /**
+     * Records a response; gateway errors count as failures, anything else as success
+     */
+    public void recordResponse(int statusCode) {
+        if (statusCode == 502 || statusCode == 503 || statusCode == 504) {
+            recordFailure();
+        } else {
+            recordSuccess();
+        }
+    }
+
+    /**
+     * Records a request that failed without a response
+     * Connection failures count against the service; a response too large means it answered, and
+     * other errors (request timeouts, cancellation at the deadline) say nothing
+     */
+    public void recordError(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof ServiceUnavailableException) {
+            return;
+        }
+        if (error instanceof ResponseTooLargeException) {
+            recordSuccess();
+        } else if (isConnectionFailure(error)) {
+            recordFailure();
+        } else {
+            releaseProbe();
+        }
+    }
+
+    /**
+     * Checks whether an error means the service could not be reached: the connection was
+     * refused, not established within the connect timeout, or reset
+     */
+    static boolean isConnectionFailure(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof HttpConnectTimeoutException) {
+                return true;
+            }
+            if (cause instanceof IOException && cause.getMessage() != null
+                    && cause.getMessage().toLowerCase(Locale.ROOT).contains("connection reset")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            logger.info("Circuit breaker for {} closed - the service answered", serviceName);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    private synchronized void recordFailure() {
+        consecutiveFailures++;
+        probeInFlight = false;
+        if (failureThreshold == 0 || state == State.OPEN) {
+            return;
+        }
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            logger.warn("Circuit breaker for {} opened after {} consecutive failures - lab requests fail immediately until the next run",
+                serviceName, consecutiveFailures);
+        }
+    }
+
+    private synchronized void releaseProbe() {
+        probeInFlight = false;
+    }
+}
@@ -0,0 +1,16 @@
+package com.mongodb.workshop.tests;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a lab request while the service's circuit breaker is open
+ */
+public class ServiceUnavailableException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ServiceUnavailableException(String serviceName, int consecutiveFailures) {
+        super(String.format("Service unavailable - %s failed %d lab requests in a row (connection failures or gateway errors), remaining exercises are skipped until the next run - check that your backend is running and not crash-looping",
+            serviceName, consecutiveFailures));
+    }
+}
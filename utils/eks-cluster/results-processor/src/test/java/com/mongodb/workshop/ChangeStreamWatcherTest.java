@@ -0,0 +1,46 @@
+package com.mongodb.workshop;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeStreamWatcherTest {
+
+    private static final Set<String> INDEX_EXERCISES = Set.of("crud-index", "search-index", "vector-search-index");
+
+    @Test
+    void indexEventsAffectCrudIndex() {
+        assertEquals(Set.of("crud-index"), ChangeStreamWatcher.affectedExercises("createIndexes"));
+        assertEquals(Set.of("crud-index"), ChangeStreamWatcher.affectedExercises("dropIndexes"));
+    }
+
+    @Test
+    void searchIndexEventsAffectSearchIndexExercises() {
+        Set<String> searchExercises = Set.of("search-index", "vector-search-index");
+        assertEquals(searchExercises, ChangeStreamWatcher.affectedExercises("createSearchIndexes"));
+        assertEquals(searchExercises, ChangeStreamWatcher.affectedExercises("updateSearchIndex"));
+        assertEquals(searchExercises, ChangeStreamWatcher.affectedExercises("dropSearchIndex"));
+    }
+
+    @Test
+    void collectionEventsAffectEveryIndexExercise() {
+        for (String operationType : new String[] {"create", "drop", "rename", "modify", "shardCollection"}) {
+            assertEquals(INDEX_EXERCISES, ChangeStreamWatcher.affectedExercises(operationType), operationType);
+        }
+    }
+
+    @Test
+    void invalidateAffectsEveryIndexExercise() {
+        assertEquals(INDEX_EXERCISES, ChangeStreamWatcher.affectedExercises("invalidate"));
+    }
+
+    @Test
+    void documentChangesAffectNothing() {
+        for (String operationType : new String[] {"insert", "update", "replace", "delete"}) {
+            assertTrue(ChangeStreamWatcher.affectedExercises(operationType).isEmpty(), operationType);
+        }
+        assertTrue(ChangeStreamWatcher.affectedExercises(null).isEmpty());
+    }
+}
@@ -0,0 +1,287 @@
+package com.mongodb.workshop;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExerciseExecutionEngineTest {
+
+    private static final Duration EXERCISE_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration RUN_TIMEOUT = Duration.ofSeconds(30);
+
+    private ExecutorService executor;
+    private final ExerciseGraph graph = ExerciseGraph.create(Map.of());
+    private final Map<String, ExerciseResult> serviceUp = Map.of(ExerciseGraph.SERVICE, new ExerciseResult(true, null));
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void runsAtMostConcurrencyExercisesAtOnce() {
+        ExerciseExecutionEngine engine = new ExerciseExecutionEngine(executor, 2, false);
+        ConcurrencyProbe probe = new ConcurrencyProbe(Duration.ofMillis(50));
+
+        Map<String, ExerciseResult> results = engine.execute(List.of("crud-1", "crud-2", "crud-3", "crud-4", "pipeline-1"),
+            graph, serviceUp, probe::run, exercise -> EXERCISE_TIMEOUT, RUN_TIMEOUT, (exercise, result) -> { });
+
+        assertEquals(List.of("crud-1", "crud-2", "crud-3", "crud-4", "pipeline-1"), new ArrayList<>(results.keySet()));
+        assertTrue(results.values().stream().allMatch(ExerciseResult::isPassed));
+        assertEquals(2, probe.peak.get());
+    }
+
+    @Test
+    void mutatingExercisesRunOneAfterAnotherInListOrder() {
+        ExerciseExecutionEngine engine = new ExerciseExecutionEngine(executor, 8, true);
+        ConcurrencyProbe probe = new ConcurrencyProbe(Duration.ofMillis(30));
+
+        engine.execute(List.of("crud-8", "crud-5", "crud-1", "crud-7", "crud-6"), graph, serviceUp, probe::run,
+            exercise -> EXERCISE_TIMEOUT, RUN_TIMEOUT, (exercise, result) -> { });
+
+        List<String> mutating = new ArrayList<>(probe.started);
+        mutating.retainAll(ExerciseExecutionEngine.MUTATING_EXERCISES);
+        assertEquals(List.of("crud-8", "crud-5", "crud-7", "crud-6"), mutating);
+        assertEquals(1, probe.peakOf(ExerciseExecutionEngine.MUTATING_EXERCISES));
+        assertTrue(probe.peak.get() > 1, "other exercises still run alongside the lane");
+    }
+
+    @Test
+    void mutatingExercisesOverlapWhenNotSerialized() {
+        ExerciseExecutionEngine engine = new ExerciseExecutionEngine(executor, 8, false);
+        ConcurrencyProbe probe = new ConcurrencyProbe(Duration.ofMillis(50));
+
+        engine.execute(List.of("crud-5", "crud-6", "crud-7", "crud-8"), graph, serviceUp, probe::run,
+            exercise -> EXERCISE_TIMEOUT, RUN_TIMEOUT, (exercise, result) -> { });
+
+        assertTrue(probe.peakOf(ExerciseExecutionEngine.MUTATING_EXERCISES) > 1);
+    }
+
+    @Test
+    void concurrentRunsHaveTheirOwnPermits() throws Exception {
+        ExerciseExecutionEngine engine = new ExerciseExecutionEngine(executor, 1, false);
+        ConcurrencyProbe probe = new ConcurrencyProbe(Duration.ofMillis(100));
+
+        Thread other = Thread.ofVirtual().start(() -> engine.execute(List.of("crud-1"), graph, serviceUp, probe::run,
+            exercise -> EXERCISE_TIMEOUT, RUN_TIMEOUT, (exercise, result) -> { }));
+        engine.execute(List.of("crud-2"), graph, serviceUp, probe::run, exercise -> EXERCISE_TIMEOUT, RUN_TIMEOUT,
+            (exercise, result) -> { });
+        other.join();
+
+        assertEquals(2, probe.peak.get());
+    }
+
+    @Test
+    void resultsAreStreamedAsTheyComplete() {
+        ExerciseExecutionEngine engine = new ExerciseExecutionEngine(executor, 4, false);
+        Map<String, ExerciseResult> streamed = new ConcurrentHashMap<>();
+
+        Map<String, ExerciseResult> results = engine.execute(List.of("crud-1", "crud-2"), graph, serviceUp,
+            (exercise, deadline) -> new ExerciseResult(exercise.equals("crud-1"), "wrong answer"),
+            exercise -> EXERCISE_TIMEOUT, RUN_TIMEOUT, streamed::put);
+
+        assertEquals(results, new HashMap<>(streamed));
+        assertTrue(results.get("crud-1").isPassed());
+        assertFalse(results.get("crud-2").isPassed());
+    }
+
+    @Test
+    void failedPrerequisitePrunesItsDependentsTransitively() {
+        ExerciseExecutionEngine engine = new ExerciseExecutionEngine(executor, 4, false);
+        ExerciseGraph chain = ExerciseGraph.create(Map.of("search-2", List.of("search-1")));
+        List<String> ran = new CopyOnWriteArrayList<>();
+
+        Map<String, ExerciseResult> results = engine.execute(List.of("search-2", "search-1", "search-index", "crud-1"), chain, serviceUp,
+            (exercise, deadline) -> {
+                ran.add(exercise);
+                return new ExerciseResult(!exercise.equals("search-index"), "index missing");
+            },
+            exercise -> EXERCISE_TIMEOUT, RUN_TIMEOUT, (exercise, result) -> { });
+
+        assertEquals(Set.of("search-index", "crud-1"), Set.copyOf(ran));
+        assertEquals("Skipped because prerequisite 'search-index' has not passed - complete search-index first",
+            results.get("search-1").getFailureReason());
+        assertEquals("Skipped because prerequisite 'search-1' has not passed - complete search-1 first",
+            results.get("search-2").getFailureReason());
+        assertFalse(results.get("search-2").isConclusive());
+        assertEquals(List.of("search-2", "search-1", "search-index", "crud-1"), List.copyOf(results.keySet()));
+    }
+
+    @Test
+    void unavailableServiceSkipsEndpointExercisesWithItsReason() {
+        ExerciseExecutionEngine engine = new ExerciseExecutionEngine(executor, 4, false);
+        Map<String, ExerciseResult> serviceDown = Map.of(ExerciseGraph.SERVICE, ExerciseResult.inconclusive("Service not available: backend"));
+        List<String> ran = new CopyOnWriteArrayList<>();
+
+        Map<String, ExerciseResult> results = engine.execute(List.of("crud-1", "crud-index"), graph, serviceDown,
+            (exercise, deadline) -> {
+                ran.add(exercise);
+                return new ExerciseResult(true, null);
+            },
+            exercise -> EXERCISE_TIMEOUT, RUN_TIMEOUT, (exercise, result) -> { });
+
+        assertEquals(List.of("crud-index"), ran);
+        assertEquals("Service not available: backend", results.get("crud-1").getFailureReason());
+    }
+
+    @Test
+    void dependentStartsOnlyAfterItsPrerequisitePassed() {
+        ExerciseExecutionEngine engine = new ExerciseExecutionEngine(executor, 4, false);
+        ConcurrencyProbe probe = new ConcurrencyProbe(Duration.ofMillis(50));
+
+        Map<String, ExerciseResult> results = engine.execute(List.of("search-1", "search-index"), graph, serviceUp, probe::run,
+            exercise -> EXERCISE_TIMEOUT, RUN_TIMEOUT, (exercise, result) -> { });
+
+        assertEquals(List.of("search-index", "search-1"), probe.started);
+        assertEquals(1, probe.peak.get());
+        assertTrue(results.get("search-1").isPassed());
+    }
+
+    @Test
+    void knownResultsDecidePrerequisitesOutsideTheRun() {
+        ExerciseExecutionEngine engine = new ExerciseExecutionEngine(executor, 4, false);
+        Map<String, ExerciseResult> known = Map.of(ExerciseGraph.SERVICE, new ExerciseResult(true, null),
+            "search-index", new ExerciseResult(false, "not carried over"));
+
+        Map<String, ExerciseResult> results = engine.execute(List.of("search-1"), graph, known,
+            (exercise, deadline) -> new ExerciseResult(true, null), exercise -> EXERCISE_TIMEOUT, RUN_TIMEOUT, (exercise, result) -> { });
+
+        assertTrue(results.get("search-1").getFailureReason().contains("'search-index'"));
+    }
+
+    @Test
+    void exerciseOverItsDeadlineIsCancelledAndTimesOut() throws Exception {
+        ExerciseExecutionEngine engine = new ExerciseExecutionEngine(executor, 2, false);
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        Map<String, ExerciseResult> results = engine.execute(List.of("crud-1", "crud-2"), graph, serviceUp,
+            (exercise, deadline) -> {
+                if (exercise.equals("crud-2")) {
+                    return new ExerciseResult(true, null);
+                }
+                try {
+                    Thread.sleep(Duration.ofSeconds(10));
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return new ExerciseResult(true, null);
+            },
+            exercise -> exercise.equals("crud-1") ? Duration.ofMillis(200) : EXERCISE_TIMEOUT, RUN_TIMEOUT, (exercise, result) -> { });
+
+        ExerciseResult timedOut = results.get("crud-1");
+        assertFalse(timedOut.isPassed());
+        assertFalse(timedOut.isConclusive());
+        assertTrue(timedOut.getFailureReason().startsWith("Exercise timed out after"), timedOut.getFailureReason());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS), "the exercise was interrupted");
+        assertTrue(results.get("crud-2").isPassed());
+    }
+
+    @Test
+    void runDeadlineCapsEachExercise() {
+        ExerciseExecutionEngine engine = new ExerciseExecutionEngine(executor, 1, false);
+        Duration runTimeout = Duration.ofMillis(300);
+        Instant runDeadline = Instant.now().plus(runTimeout);
+        List<Instant> deadlines = new CopyOnWriteArrayList<>();
+
+        Map<String, ExerciseResult> results = engine.execute(List.of("crud-1", "crud-2"), graph, serviceUp,
+            (exercise, deadline) -> {
+                deadlines.add(deadline);
+                try {
+                    Thread.sleep(Duration.ofSeconds(10));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new ExerciseResult(true, null);
+            },
+            exercise -> EXERCISE_TIMEOUT, runTimeout, (exercise, result) -> { });
+
+        assertEquals(1, deadlines.size());
+        assertFalse(deadlines.get(0).isAfter(runDeadline.plusMillis(100)), "the exercise deadline is the run deadline");
+        assertTrue(results.get("crud-1").getFailureReason().contains("run deadline"), results.get("crud-1").getFailureReason());
+        // The second exercise waited for the only permit until the run deadline passed
+        assertTrue(results.get("crud-2").getFailureReason().startsWith("Run deadline"), results.get("crud-2").getFailureReason());
+        assertFalse(results.get("crud-2").isConclusive());
+    }
+
+    @Test
+    void runnerFailureIsAnInconclusiveResult() {
+        ExerciseExecutionEngine engine = new ExerciseExecutionEngine(executor, 2, false);
+
+        Map<String, ExerciseResult> results = engine.execute(List.of("crud-1"), graph, serviceUp,
+            (exercise, deadline) -> {
+                throw new IllegalStateException("connection pool closed");
+            },
+            exercise -> EXERCISE_TIMEOUT, RUN_TIMEOUT, (exercise, result) -> { });
+
+        assertEquals("connection pool closed", results.get("crud-1").getFailureReason());
+        assertFalse(results.get("crud-1").isConclusive());
+    }
+
+    /**
+     * Runner that passes after a delay and records which exercises ran at the same time
+     */
+    static final class ConcurrencyProbe {
+        private final Duration delay;
+        private final AtomicInteger peak = new AtomicInteger();
+        private final Set<String> running = ConcurrentHashMap.newKeySet();
+        // Exercises running when each exercise started
+        private final List<Set<String>> overlaps = new CopyOnWriteArrayList<>();
+        final List<String> started = new CopyOnWriteArrayList<>();
+
+        ConcurrencyProbe(Duration delay) {
+            this.delay = delay;
+        }
+
+        ExerciseResult run(String exercise, Instant deadline) {
+            started.add(exercise);
+            running.add(exercise);
+            Set<String> overlap = new HashSet<>(running);
+            overlaps.add(overlap);
+            peak.accumulateAndGet(overlap.size(), Math::max);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.remove(exercise);
+            }
+            return new ExerciseResult(true, null);
+        }
+
+        /**
+         * Gets the most exercises of the given set that were running at the same time
+         */
+        int peakOf(Set<String> exercises) {
+            int max = 0;
+            for (Set<String> overlap : overlaps) {
+                Set<String> matching = new HashSet<>(overlap);
+                matching.retainAll(exercises);
+                max = Math.max(max, matching.size());
+            }
+            return max;
+        }
+    }
+}
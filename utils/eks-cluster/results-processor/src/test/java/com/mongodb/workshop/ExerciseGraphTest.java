@@ -0,0 +1,45 @@
+package com.mongodb.workshop;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExerciseGraphTest {
+
+    @Test
+    void endpointExercisesNeedTheService() {
+        ExerciseGraph graph = ExerciseGraph.create(Map.of());
+        assertEquals(List.of(ExerciseGraph.SERVICE), graph.getPrerequisites("crud-1"));
+        assertEquals(List.of(ExerciseGraph.SERVICE, "search-index"), graph.getPrerequisites("search-1"));
+        assertEquals(List.of(ExerciseGraph.SERVICE, "vector-search-index"), graph.getPrerequisites("vector-search-1"));
+        assertEquals(List.of(), graph.getPrerequisites("crud-index"));
+    }
+
+    @Test
+    void overridesReplaceDefaultPrerequisites() {
+        ExerciseGraph graph = ExerciseGraph.create(Map.of("crud-2", List.of("crud-1"), "custom", List.of("crud-2")));
+        assertEquals(List.of("crud-1"), graph.getPrerequisites("crud-2"));
+        assertEquals(List.of("crud-2"), graph.getPrerequisites("custom"));
+        assertEquals(List.of(ExerciseGraph.SERVICE), graph.getPrerequisites("crud-1"));
+    }
+
+    @Test
+    void withDependentsAddsTransitiveDependentsAmongCandidates() {
+        ExerciseGraph graph = ExerciseGraph.create(Map.of("search-2", List.of("search-1")));
+        List<String> candidates = List.of("search-index", "search-1", "search-2", "crud-1", "vector-search-1");
+
+        Set<String> result = graph.withDependents(Set.of("search-index"), candidates);
+
+        assertEquals(Set.of("search-index", "search-1", "search-2"), result);
+    }
+
+    @Test
+    void withDependentsIgnoresExercisesThatAreNotCandidates() {
+        ExerciseGraph graph = ExerciseGraph.create(Map.of());
+        assertEquals(Set.of("search-index"), graph.withDependents(Set.of("search-index"), List.of("crud-1")));
+    }
+}
@@ -0,0 +1,140 @@
+package com.mongodb.workshop;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ExerciseHistoryTest {
+
+    private static final long NOW = System.currentTimeMillis();
+    private static final ExerciseGraph GRAPH = ExerciseGraph.create(Map.of());
+
+    @TempDir
+    Path labPath;
+
+    @Test
+    void editedThenFailedThenNewThenTheRest() throws IOException {
+        ExerciseHistory history = history(new Document()
+            .append("crud-1", passed(NOW - 60_000))
+            .append("crud-2", failed(NOW - 60_000, NOW - 60_000))
+            .append("crud-4", passed(NOW - 60_000))
+            .append("crud-5", failed(NOW - 30_000, NOW - 30_000)));
+        edit("crud-4", NOW - 1_000);
+
+        List<String> ordered = history.prioritize(List.of("crud-1", "crud-2", "crud-3", "crud-4", "crud-5"), labPath);
+
+        assertEquals(List.of("crud-4", "crud-5", "crud-2", "crud-3", "crud-1"), ordered);
+    }
+
+    @Test
+    void mostRecentlyEditedComesFirst() throws IOException {
+        ExerciseHistory history = history(new Document());
+        edit("crud-1", NOW - 20_000);
+        edit("crud-2", NOW - 10_000);
+
+        assertEquals(List.of("crud-2", "crud-1", "crud-3"), history.prioritize(List.of("crud-1", "crud-2", "crud-3"), labPath));
+    }
+
+    @Test
+    void fileEditedBeforeTheLastRunIsNotPrioritized() throws IOException {
+        ExerciseHistory history = history(new Document()
+            .append("crud-1", passed(NOW - 1_000))
+            .append("crud-2", failed(NOW - 1_000, NOW - 1_000)));
+        edit("crud-1", NOW - 60_000);
+
+        assertEquals(List.of("crud-2", "crud-1"), history.prioritize(List.of("crud-1", "crud-2"), labPath));
+    }
+
+    @Test
+    void keepsScenarioOrderWithoutHistoryOrLabFiles() {
+        ExerciseHistory history = history(null);
+        List<String> pending = List.of("crud-3", "crud-1", "crud-2");
+        assertEquals(pending, history.prioritize(pending, null));
+    }
+
+    @Test
+    void unreadableHistoryIsEmpty() {
+        @SuppressWarnings("unchecked")
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        when(collection.find(any(Bson.class))).thenThrow(new IllegalStateException("timeout"));
+        ExerciseHistory history = ExerciseHistory.load(collection, "alice");
+        assertEquals(List.of("crud-2", "crud-1"), history.prioritize(List.of("crud-2", "crud-1"), null));
+    }
+
+    @Test
+    void regradesChangedUnevaluatedAndUnhashedExercises() {
+        ExerciseHistory history = history(new Document()
+            .append("crud-1", failed(NOW, NOW).append("input_hash", "a"))
+            .append("crud-2", failed(NOW, NOW).append("input_hash", "b"))
+            .append("crud-3", failed(NOW, NOW).append("input_hash", "c").append("conclusive", false)));
+        Map<String, String> hashes = Map.of("crud-1", "a", "crud-2", "changed", "crud-3", "c", "crud-4", "d");
+
+        Set<String> regrade = history.selectForRegrading(List.of("crud-1", "crud-2", "crud-3", "crud-4", "crud-index"), hashes, GRAPH);
+
+        assertEquals(Set.of("crud-2", "crud-3", "crud-4", "crud-index"), regrade);
+        assertFalse(history.carryOver("crud-1").isPassed());
+    }
+
+    @Test
+    void regradesDependentsOfRegradedExercises() {
+        ExerciseHistory history = history(new Document()
+            .append("search-index", failed(NOW, NOW))
+            .append("search-1", failed(NOW, NOW).append("input_hash", "a")));
+
+        Set<String> regrade = history.selectForRegrading(List.of("search-index", "search-1"), Map.of("search-1", "a"), GRAPH);
+
+        assertEquals(Set.of("search-index", "search-1"), regrade);
+    }
+
+    @Test
+    void pendingExerciseThatPassedIsNeverCarriedOver() {
+        // Passed in history but pending: its result is not in the results collection
+        ExerciseHistory history = history(new Document("crud-1", passed(NOW).append("input_hash", "a")));
+
+        Set<String> regrade = history.selectForRegrading(List.of("crud-1"), Map.of("crud-1", "a"), GRAPH);
+
+        assertEquals(Set.of("crud-1"), regrade);
+        assertTrue(history.hasPassed("crud-1"));
+        assertFalse(history.hasPassed("crud-2"));
+    }
+
+    static ExerciseHistory history(Document exercises) {
+        @SuppressWarnings("unchecked")
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        @SuppressWarnings("unchecked")
+        FindIterable<Document> find = mock(FindIterable.class);
+        when(collection.find(any(Bson.class))).thenReturn(find);
+        when(find.first()).thenReturn(exercises == null ? null : new Document("_id", "alice").append("exercises", exercises));
+        return ExerciseHistory.load(collection, "alice");
+    }
+
+    static Document passed(long lastRunAt) {
+        return new Document("passed", true).append("last_run_at", new Date(lastRunAt)).append("conclusive", true);
+    }
+
+    static Document failed(long lastRunAt, long lastFailedAt) {
+        return new Document("passed", false).append("last_run_at", new Date(lastRunAt))
+            .append("last_failed_at", new Date(lastFailedAt)).append("conclusive", true);
+    }
+
+    private void edit(String exercise, long modifiedAt) throws IOException {
+        Path file = Files.writeString(labPath.resolve(exercise + ".lab.js"), "// answer");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modifiedAt));
+    }
+}
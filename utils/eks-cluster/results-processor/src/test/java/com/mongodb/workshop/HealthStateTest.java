@@ -0,0 +1,163 @@
+package com.mongodb.workshop;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class HealthStateTest {
+
+    private static final String USER = "alice";
+
+    private MongoCollection<Document> collection;
+    private HealthState state;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        collection = mock(MongoCollection.class);
+        FindIterable<Document> find = mock(FindIterable.class);
+        when(collection.find(any(Bson.class))).thenReturn(find);
+        when(find.projection(any())).thenReturn(find);
+        when(find.first()).thenReturn(new Document("_id", USER)
+            .append("version", "1.0")
+            .append("execution_status", "completed")
+            .append("passed_exercises", 0)
+            .append("http_client_stats", new Document())
+            .append("exercise_results", new ArrayList<>(List.of(entry("crud-1", false), entry("crud-2", false)))));
+        when(collection.updateOne(any(Bson.class), any(Bson.class), any(UpdateOptions.class))).thenReturn(matched(1));
+
+        state = HealthState.start(collection, USER, Duration.ofMinutes(5), new Document("version", "1.0"));
+    }
+
+    @Test
+    void startKeepsResultsAndRemovesObsoleteFields() {
+        Document update = lastUpdate();
+        assertEquals(new Document("execution_status", "started"), update.get("$set"));
+        assertEquals(new Document("http_client_stats", ""), update.get("$unset"));
+    }
+
+    @Test
+    void changedEntriesAreSetInPlaceThroughArrayFilters() {
+        clearInvocations(collection);
+        assertTrue(state.updateExercise(entry("crud-2", true)));
+
+        assertTrue(state.flush());
+
+        Document set = lastUpdate().get("$set", Document.class);
+        assertEquals(entry("crud-2", true), set.get("exercise_results.$[e0]"));
+        assertEquals("running", set.get("execution_status"));
+        assertFalse(set.containsKey("exercise_results"));
+        assertFalse(set.containsKey("version"));
+        List<? extends Bson> arrayFilters = lastOptions().getArrayFilters();
+        assertEquals(1, arrayFilters.size());
+        assertEquals(new Document("e0.exercise_name", "crud-2"), Document.parse(arrayFilters.get(0).toBsonDocument().toJson()));
+    }
+
+    @Test
+    void addedOrReorderedEntriesRewriteTheArray() {
+        clearInvocations(collection);
+        List<Document> entries = List.of(entry("crud-2", false), entry("crud-1", false), entry("crud-3", true));
+        state.updateRun(entries, new Document("execution_status", "completed"), new Document());
+
+        assertTrue(state.flush());
+
+        Document set = lastUpdate().get("$set", Document.class);
+        assertEquals(entries, set.get("exercise_results"));
+        assertTrue(lastOptions().getArrayFilters() == null || lastOptions().getArrayFilters().isEmpty());
+    }
+
+    @Test
+    void unchangedStateWritesNothing() {
+        // The first flush publishes the statistics, which are then refreshed once per interval
+        state.updateRun(List.of(entry("crud-1", false), entry("crud-2", false)), new Document("execution_status", "started"),
+            new Document("trigger_stats", new Document("runs_executed", 1)));
+        assertTrue(state.flush());
+        clearInvocations(collection);
+
+        state.updateRun(List.of(entry("crud-1", false), entry("crud-2", false)), new Document("execution_status", "started"),
+            new Document("trigger_stats", new Document("runs_executed", 2)));
+
+        assertFalse(state.flush());
+        verifyNoInteractions(collection);
+    }
+
+    @Test
+    void statisticsRideAlongWithChangedFields() {
+        clearInvocations(collection);
+        state.updateRun(List.of(entry("crud-1", true), entry("crud-2", false)), new Document("execution_status", "completed"),
+            new Document("trigger_stats", new Document("runs_executed", 1)));
+
+        assertTrue(state.flush());
+        assertEquals(new Document("runs_executed", 1), lastUpdate().get("$set", Document.class).get("trigger_stats"));
+    }
+
+    @Test
+    void missingDocumentIsPublishedAgainAsAWhole() {
+        clearInvocations(collection);
+        when(collection.updateOne(any(Bson.class), any(Bson.class), any(UpdateOptions.class))).thenReturn(matched(0), matched(0));
+        state.updateExercise(entry("crud-1", true));
+
+        assertTrue(state.flush());
+
+        ArgumentCaptor<Bson> updates = ArgumentCaptor.forClass(Bson.class);
+        ArgumentCaptor<UpdateOptions> options = ArgumentCaptor.forClass(UpdateOptions.class);
+        verify(collection, times(2)).updateOne(any(Bson.class), updates.capture(), options.capture());
+        Document full = ((Document) updates.getAllValues().get(1)).get("$set", Document.class);
+        assertEquals(List.of(entry("crud-1", true), entry("crud-2", false)), full.get("exercise_results"));
+        assertEquals("1.0", full.get("version"));
+        assertEquals("running", full.get("execution_status"));
+        assertTrue(options.getAllValues().get(1).isUpsert());
+
+        // Everything is published now
+        clearInvocations(collection);
+        assertFalse(state.flush());
+        verifyNoInteractions(collection);
+    }
+
+    @Test
+    void failedWriteIsRetriedOnTheNextFlush() {
+        clearInvocations(collection);
+        when(collection.updateOne(any(Bson.class), any(Bson.class), any(UpdateOptions.class)))
+            .thenThrow(new IllegalStateException("not primary"))
+            .thenReturn(matched(1));
+        state.updateExercise(entry("crud-1", true));
+
+        assertThrows(IllegalStateException.class, state::flush);
+        assertTrue(state.flush());
+        assertEquals(entry("crud-1", true), lastUpdate().get("$set", Document.class).get("exercise_results.$[e0]"));
+    }
+
+    private Document lastUpdate() {
+        ArgumentCaptor<Bson> update = ArgumentCaptor.forClass(Bson.class);
+        verify(collection, atLeastOnce()).updateOne(any(Bson.class), update.capture(), any(UpdateOptions.class));
+        return (Document) update.getValue();
+    }
+
+    private UpdateOptions lastOptions() {
+        ArgumentCaptor<UpdateOptions> options = ArgumentCaptor.forClass(UpdateOptions.class);
+        verify(collection, atLeastOnce()).updateOne(any(Bson.class), any(Bson.class), options.capture());
+        return options.getValue();
+    }
+
+    private static Document entry(String name, boolean passed) {
+        return new Document("exercise_name", name).append("passed", passed);
+    }
+
+    private static UpdateResult matched(long count) {
+        return UpdateResult.acknowledged(count, count, null);
+    }
+}
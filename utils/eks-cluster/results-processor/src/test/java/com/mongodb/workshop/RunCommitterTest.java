@@ -0,0 +1,234 @@
+package com.mongodb.workshop;
+
+import com.mongodb.MongoException;
+import com.mongodb.MongoNamespace;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.TransactionBody;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.model.bulk.ClientBulkWriteOptions;
+import com.mongodb.client.model.bulk.ClientBulkWriteResult;
+import com.mongodb.client.model.bulk.ClientNamespacedWriteModel;
+import com.mongodb.client.model.bulk.ClientUpdateResult;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.BsonObjectId;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RunCommitterTest {
+
+    private static final String USER = "alice";
+    private static final String RUN_ID = "run-1";
+
+    private MongoClient client;
+    private MongoDatabase database;
+    private MongoCollection<Document> results;
+    private MongoCollection<Document> health;
+    private ClientSession session;
+    private HealthState state;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        client = mock(MongoClient.class);
+        database = mock(MongoDatabase.class);
+        results = mock(MongoCollection.class);
+        health = mock(MongoCollection.class);
+        session = mock(ClientSession.class);
+        when(database.getCollection("results")).thenReturn(results);
+        when(database.getCollection("results_health")).thenReturn(health);
+        when(results.getNamespace()).thenReturn(new MongoNamespace("arena_shared.results"));
+        when(health.getNamespace()).thenReturn(new MongoNamespace("arena_shared.results_health"));
+        when(client.startSession()).thenReturn(session);
+        when(session.withTransaction(any())).thenAnswer(invocation -> invocation.<TransactionBody<?>>getArgument(0).execute());
+        when(results.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenAnswer(invocation -> upserted(invocation.getArgument(0)));
+        when(results.bulkWrite(any(ClientSession.class), anyList(), any(BulkWriteOptions.class)))
+            .thenAnswer(invocation -> upserted(invocation.getArgument(1)));
+        when(health.updateOne(any(Bson.class), any(Bson.class), any(UpdateOptions.class))).thenReturn(matched(1));
+        when(health.updateOne(any(ClientSession.class), any(Bson.class), any(Bson.class), any(UpdateOptions.class))).thenReturn(matched(1));
+
+        state = startHealthState();
+        state.updateRun(List.of(entry("crud-1", true), entry("crud-2", false)),
+            new Document("execution_status", "completed").append("passed_exercises", 1), new Document());
+    }
+
+    @Test
+    void orderedWritesStoreResultsBeforeHealth() {
+        RunCommitter committer = committer(new Document());
+
+        assertTrue(state.commitRun(delta -> committer.commit(USER, RUN_ID, List.of(result("crud-1")), delta)));
+
+        InOrder order = inOrder(results, health);
+        order.verify(results).bulkWrite(anyList(), any(BulkWriteOptions.class));
+        ArgumentCaptor<Bson> update = ArgumentCaptor.forClass(Bson.class);
+        ArgumentCaptor<UpdateOptions> options = ArgumentCaptor.forClass(UpdateOptions.class);
+        order.verify(health).updateOne(any(Bson.class), update.capture(), options.capture());
+        verify(client, never()).startSession();
+
+        Document set = ((Document) update.getValue()).get("$set", Document.class);
+        assertEquals(entry("crud-1", true), set.get("exercise_results.$[e0]"));
+        assertEquals("completed", set.get("execution_status"));
+        assertEquals(1, set.get("passed_exercises"));
+        assertEquals(RUN_ID, set.get("last_run_id"));
+        assertEquals(1, options.getValue().getArrayFilters().size());
+        assertFalse(state.flush(), "the commit published the run's health state");
+    }
+
+    @Test
+    void transactionWritesResultsAndHealthInOneSession() {
+        RunCommitter committer = committer(new Document("setName", "rs0").append("maxWireVersion", 21));
+
+        assertTrue(state.commitRun(delta -> committer.commit(USER, RUN_ID, List.of(result("crud-1")), delta)));
+
+        verify(session).withTransaction(any());
+        verify(results).bulkWrite(same(session), anyList(), any(BulkWriteOptions.class));
+        verify(health).updateOne(same(session), any(Bson.class), any(Bson.class), any(UpdateOptions.class));
+        verify(results, never()).bulkWrite(anyList(), any(BulkWriteOptions.class));
+        verify(health, never()).updateOne(any(Bson.class), any(Bson.class), any(UpdateOptions.class));
+        assertFalse(state.flush());
+    }
+
+    @Test
+    void clientBulkWriteSendsResultsAndHealthTogether() {
+        RunCommitter committer = committer(new Document("setName", "rs0").append("maxWireVersion", 25));
+        Map<Integer, ClientUpdateResult> updates = new HashMap<>();
+        updates.put(0, clientUpdate(0, true));
+        updates.put(1, clientUpdate(1, false));
+        ClientBulkWriteResult.VerboseResults verbose = mock(ClientBulkWriteResult.VerboseResults.class);
+        when(verbose.getUpdateResults()).thenAnswer(invocation -> updates);
+        ClientBulkWriteResult bulkResult = mock(ClientBulkWriteResult.class);
+        when(bulkResult.getVerboseResults()).thenReturn(Optional.of(verbose));
+        when(client.bulkWrite(any(ClientSession.class), anyList(), any(ClientBulkWriteOptions.class))).thenReturn(bulkResult);
+
+        assertTrue(state.commitRun(delta -> committer.commit(USER, RUN_ID, List.of(result("crud-1")), delta)));
+
+        ArgumentCaptor<List<ClientNamespacedWriteModel>> models = ArgumentCaptor.captor();
+        verify(client).bulkWrite(same(session), models.capture(), any(ClientBulkWriteOptions.class));
+        assertEquals(2, models.getValue().size());
+        verify(results, never()).bulkWrite(any(ClientSession.class), anyList(), any(BulkWriteOptions.class));
+        verify(health, never()).updateOne(any(ClientSession.class), any(Bson.class), any(Bson.class), any(UpdateOptions.class));
+        assertFalse(state.flush());
+    }
+
+    @Test
+    void republishesTheWholeHealthDocumentWhenItDisappeared() {
+        RunCommitter committer = committer(new Document());
+        when(health.updateOne(any(Bson.class), any(Bson.class), any(UpdateOptions.class))).thenReturn(matched(0), matched(1));
+
+        assertTrue(state.commitRun(delta -> committer.commit(USER, RUN_ID, List.of(result("crud-1")), delta)));
+
+        ArgumentCaptor<Bson> update = ArgumentCaptor.forClass(Bson.class);
+        ArgumentCaptor<UpdateOptions> options = ArgumentCaptor.forClass(UpdateOptions.class);
+        verify(health, times(2)).updateOne(any(Bson.class), update.capture(), options.capture());
+        Document replacement = ((Document) update.getAllValues().get(1)).get("$set", Document.class);
+        assertEquals(List.of(entry("crud-1", true), entry("crud-2", false)), replacement.get("exercise_results"));
+        assertEquals(RUN_ID, replacement.get("last_run_id"));
+        assertTrue(options.getAllValues().get(1).isUpsert());
+        assertFalse(state.flush());
+    }
+
+    @Test
+    void retriesAFailedCommit() {
+        RunCommitter committer = committer(new Document());
+        when(results.bulkWrite(anyList(), any(BulkWriteOptions.class)))
+            .thenThrow(new MongoException("not primary"))
+            .thenAnswer(invocation -> upserted(invocation.getArgument(0)));
+
+        assertTrue(state.commitRun(delta -> committer.commit(USER, RUN_ID, List.of(result("crud-1")), delta)));
+
+        verify(results, times(2)).bulkWrite(anyList(), any(BulkWriteOptions.class));
+        verify(health, times(1)).updateOne(any(Bson.class), any(Bson.class), any(UpdateOptions.class));
+    }
+
+    @Test
+    void failedCommitLeavesTheHealthStateUnpublished() {
+        RunCommitter committer = committer(new Document());
+        when(results.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenThrow(new MongoException("not primary"));
+
+        assertFalse(state.commitRun(delta -> committer.commit(USER, RUN_ID, List.of(result("crud-1")), delta)));
+
+        verify(results, times(3)).bulkWrite(anyList(), any(BulkWriteOptions.class));
+        verify(health, never()).updateOne(any(Bson.class), any(Bson.class), any(UpdateOptions.class));
+    }
+
+    @Test
+    void unchangedRunWithoutResultsWritesNothing() {
+        RunCommitter committer = committer(new Document());
+        assertTrue(state.commitRun(delta -> committer.commit(USER, RUN_ID, List.of(result("crud-1")), delta)));
+        clearInvocations(results, health);
+
+        assertTrue(state.commitRun(delta -> committer.commit(USER, "run-2", List.of(), delta)));
+
+        verifyNoInteractions(results, health);
+    }
+
+    private RunCommitter committer(Document hello) {
+        when(database.runCommand(any(Bson.class))).thenReturn(hello);
+        return new RunCommitter(client, database, "results", "results_health");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HealthState startHealthState() {
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        FindIterable<Document> find = mock(FindIterable.class);
+        when(collection.find(any(Bson.class))).thenReturn(find);
+        when(find.projection(any())).thenReturn(find);
+        when(find.first()).thenReturn(new Document("_id", USER)
+            .append("execution_status", "completed")
+            .append("passed_exercises", 0)
+            .append("exercise_results", new ArrayList<>(List.of(entry("crud-1", false), entry("crud-2", false)))));
+        when(collection.updateOne(any(Bson.class), any(Bson.class), any(UpdateOptions.class))).thenReturn(matched(1));
+        return HealthState.start(collection, USER, Duration.ofMinutes(5), new Document());
+    }
+
+    private static Document entry(String name, boolean passed) {
+        return new Document("exercise_name", name).append("passed", passed);
+    }
+
+    private static Document result(String name) {
+        return new Document("name", name).append("username", USER).append("timestamp", new Date());
+    }
+
+    private static UpdateResult matched(long count) {
+        return UpdateResult.acknowledged(count, count, null);
+    }
+
+    private static BulkWriteResult upserted(List<WriteModel<Document>> models) {
+        List<BulkWriteUpsert> upserts = new ArrayList<>();
+        for (int i = 0; i < models.size(); i++) {
+            upserts.add(new BulkWriteUpsert(i, new BsonObjectId()));
+        }
+        return BulkWriteResult.acknowledged(0, 0, 0, 0, upserts, List.of());
+    }
+
+    private static ClientUpdateResult clientUpdate(long matchedCount, boolean upserted) {
+        ClientUpdateResult result = mock(ClientUpdateResult.class);
+        when(result.getMatchedCount()).thenReturn(matchedCount);
+        when(result.getUpsertedId()).thenReturn(upserted ? Optional.<BsonValue>of(new BsonObjectId()) : Optional.empty());
+        return result;
+    }
+}
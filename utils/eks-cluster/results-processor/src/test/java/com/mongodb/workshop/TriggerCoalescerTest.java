@@ -0,0 +1,118 @@
+package com.mongodb.workshop;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TriggerCoalescerTest {
+
+    private static final Duration DEBOUNCE = Duration.ofMillis(50);
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void burstOfSignalsRunsOnceWithMergedRequest() throws Exception {
+        List<String> runs = new CopyOnWriteArrayList<>();
+        CountDownLatch ran = new CountDownLatch(1);
+        TriggerCoalescer<String> coalescer = new TriggerCoalescer<>(executor, DEBOUNCE, (a, b) -> a + "+" + b,
+            (generation, request) -> {
+                runs.add(request);
+                ran.countDown();
+            });
+
+        for (int i = 0; i < 10; i++) {
+            coalescer.signal("s" + i);
+        }
+
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        awaitCompleted(coalescer, 10);
+        assertEquals(List.of("s0+s1+s2+s3+s4+s5+s6+s7+s8+s9"), runs);
+        assertEquals(10, coalescer.getSignalsReceived());
+        assertEquals(1, coalescer.getRunsExecuted());
+        assertEquals(9, coalescer.getSignalsCoalesced());
+    }
+
+    @Test
+    void signalsDuringRunCollapseIntoOneFollowUpRun() throws Exception {
+        List<Long> generations = new CopyOnWriteArrayList<>();
+        CountDownLatch firstRunStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstRun = new CountDownLatch(1);
+        TriggerCoalescer<Integer> coalescer = new TriggerCoalescer<>(executor, DEBOUNCE, Integer::sum,
+            (generation, request) -> {
+                generations.add(generation);
+                if (generations.size() == 1) {
+                    firstRunStarted.countDown();
+                    try {
+                        releaseFirstRun.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+
+        coalescer.signal(1);
+        assertTrue(firstRunStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            coalescer.signal(1);
+        }
+        releaseFirstRun.countDown();
+
+        awaitCompleted(coalescer, 6);
+        assertEquals(List.of(1L, 6L), generations);
+        assertEquals(2, coalescer.getRunsExecuted());
+    }
+
+    @Test
+    void failingRunStillCompletesItsGeneration() throws Exception {
+        TriggerCoalescer<String> coalescer = new TriggerCoalescer<>(executor, DEBOUNCE, (a, b) -> b,
+            (generation, request) -> {
+                throw new IllegalStateException("run failed");
+            });
+
+        coalescer.signal("a");
+        awaitCompleted(coalescer, 1);
+
+        coalescer.signal("b");
+        awaitCompleted(coalescer, 2);
+        assertEquals(2, coalescer.getRunsExecuted());
+    }
+
+    @Test
+    void rejectedExecutionReleasesDrainerRole() {
+        executor.shutdown();
+        TriggerCoalescer<String> coalescer = new TriggerCoalescer<>(executor, DEBOUNCE, (a, b) -> b,
+            (generation, request) -> fail("no run expected"));
+
+        assertEquals(1, coalescer.signal("a"));
+        assertEquals(2, coalescer.signal("b"));
+        assertEquals(0, coalescer.getCompletedGeneration());
+    }
+
+    private static void awaitCompleted(TriggerCoalescer<?> coalescer, long generation) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (coalescer.getCompletedGeneration() < generation) {
+            assertTrue(System.nanoTime() < deadline, "generation " + generation + " not completed in time");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.mongodb.workshop.tests;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentDecodingTest {
+
+    private static final String ENDPOINT = "/api/test";
+    private static final byte[] BODY = "[{\"name\":\"listing\"}]".repeat(500).getBytes(StandardCharsets.UTF_8);
+
+    private final String user = "user-" + UUID.randomUUID();
+
+    @Test
+    void passesIdentityBodiesThrough() {
+        assertArrayEquals(BODY, decode("identity", BODY, 100));
+        EndpointTraffic traffic = LabHttpClient.getEndpointTraffic(user).get(ENDPOINT);
+        assertEquals(1, traffic.getResponses());
+        assertEquals(0, traffic.getCompressedResponses());
+        assertEquals(BODY.length, traffic.getWireBytes());
+        assertEquals(BODY.length, traffic.getRawBytes());
+    }
+
+    @Test
+    void decodesGzipInOneChunk() throws IOException {
+        byte[] gzip = gzip(BODY);
+        assertArrayEquals(BODY, decode("gzip", gzip, gzip.length));
+        EndpointTraffic traffic = LabHttpClient.getEndpointTraffic(user).get(ENDPOINT);
+        assertEquals(1, traffic.getCompressedResponses());
+        assertEquals(gzip.length, traffic.getWireBytes());
+        assertEquals(BODY.length, traffic.getRawBytes());
+    }
+
+    @Test
+    void decodesGzipSplitAcrossHeaderAndTrailer() throws IOException {
+        // One byte per chunk splits the header, the deflate data and the trailer
+        assertArrayEquals(BODY, decode("gzip", gzip(BODY), 1));
+    }
+
+    @Test
+    void decodesGzipWithFileNameHeader() throws IOException {
+        byte[] gzip = gzip(BODY);
+        byte[] named = new byte[gzip.length + 5];
+        System.arraycopy(gzip, 0, named, 0, 10);
+        named[3] = 8; // FNAME
+        System.arraycopy("name\0".getBytes(StandardCharsets.US_ASCII), 0, named, 10, 5);
+        System.arraycopy(gzip, 10, named, 15, gzip.length - 10);
+        assertArrayEquals(BODY, decode("gzip", named, 3));
+    }
+
+    @Test
+    void rejectsGzipWithCorruptChecksum() throws IOException {
+        byte[] gzip = gzip(BODY);
+        gzip[gzip.length - 8] ^= 0x01;
+        assertDecodingFails("gzip", gzip, "checksum");
+    }
+
+    @Test
+    void rejectsGzipWithWrongSize() throws IOException {
+        byte[] gzip = gzip(BODY);
+        gzip[gzip.length - 4] ^= 0x01;
+        assertDecodingFails("gzip", gzip, "checksum");
+    }
+
+    @Test
+    void rejectsGzipWithTruncatedTrailer() throws IOException {
+        byte[] gzip = gzip(BODY);
+        assertDecodingFails("gzip", Arrays.copyOf(gzip, gzip.length - 3), "Truncated");
+    }
+
+    @Test
+    void rejectsGzipWithTruncatedData() throws IOException {
+        byte[] gzip = gzip(BODY);
+        assertDecodingFails("gzip", Arrays.copyOf(gzip, gzip.length / 2), "Truncated");
+    }
+
+    @Test
+    void rejectsInvalidGzipHeader() {
+        assertDecodingFails("gzip", "not gzip at all".getBytes(StandardCharsets.US_ASCII), "header");
+    }
+
+    @Test
+    void acceptsEmptyGzipBody() {
+        assertArrayEquals(new byte[0], decode("gzip", new byte[0], 1));
+    }
+
+    @Test
+    void decodesZlibDeflate() throws IOException {
+        assertArrayEquals(BODY, decode("deflate", deflate(BODY, false), 7));
+    }
+
+    @Test
+    void decodesRawDeflate() throws IOException {
+        assertArrayEquals(BODY, decode("deflate", deflate(BODY, true), 7));
+    }
+
+    @Test
+    void rejectsTruncatedDeflate() throws IOException {
+        byte[] deflate = deflate(BODY, false);
+        assertDecodingFails("deflate", Arrays.copyOf(deflate, deflate.length / 2), "Truncated");
+    }
+
+    @Test
+    void rejectsUnsupportedEncoding() {
+        assertDecodingFails("br", BODY, "Unsupported Content-Encoding");
+    }
+
+    @Test
+    void reportsDecodedBytes() throws IOException {
+        AtomicLong decoded = new AtomicLong();
+        run("gzip", gzip(BODY), 64, decoded);
+        assertEquals(BODY.length, decoded.get());
+    }
+
+    private byte[] decode(String encoding, byte[] wire, int chunkSize) {
+        return run(encoding, wire, chunkSize, new AtomicLong()).getBody().toCompletableFuture().join();
+    }
+
+    private void assertDecodingFails(String encoding, byte[] wire, String message) {
+        HttpResponse.BodySubscriber<byte[]> subscriber = run(encoding, wire, 5, new AtomicLong());
+        CompletionException error = assertThrows(CompletionException.class, () -> subscriber.getBody().toCompletableFuture().join());
+        assertInstanceOf(IOException.class, error.getCause());
+        assertTrue(error.getCause().getMessage().contains(message), error.getCause().getMessage());
+    }
+
+    /**
+     * Feeds the wire bytes to the decoding subscriber in chunks of the given size, as the client would
+     */
+    private HttpResponse.BodySubscriber<byte[]> run(String encoding, byte[] wire, int chunkSize, AtomicLong decodedBytes) {
+        HttpResponse.BodyHandler<byte[]> handler = ContentDecoding.decoding(user, ENDPOINT, HttpResponse.BodyHandlers.ofByteArray(),
+            decodedBytes::addAndGet);
+        HttpResponse.BodySubscriber<byte[]> subscriber = handler.apply(new ResponseInfo(encoding));
+        RecordingSubscription subscription = new RecordingSubscription();
+        subscriber.onSubscribe(subscription);
+        for (int offset = 0; offset < wire.length && !subscription.cancelled; offset += chunkSize) {
+            int length = Math.min(chunkSize, wire.length - offset);
+            subscriber.onNext(List.of(ByteBuffer.wrap(wire, offset, length).slice()));
+        }
+        if (!subscription.cancelled) {
+            subscriber.onComplete();
+        }
+        return subscriber;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data, boolean raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, raw))) {
+            deflate.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static final class RecordingSubscription implements Flow.Subscription {
+        private boolean cancelled;
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private record ResponseInfo(String encoding) implements HttpResponse.ResponseInfo {
+        @Override
+        public int statusCode() {
+            return 200;
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            List<String> values = new ArrayList<>(List.of(encoding));
+            return HttpHeaders.of(Map.of("Content-Encoding", values), (name, value) -> true);
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return HttpClient.Version.HTTP_1_1;
+        }
+    }
+}
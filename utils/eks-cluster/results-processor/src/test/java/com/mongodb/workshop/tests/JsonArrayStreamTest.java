@@ -0,0 +1,174 @@
+package com.mongodb.workshop.tests;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonArrayStreamTest {
+
+    @Test
+    void readsElementsInOrder() throws IOException {
+        try (JsonArrayStream stream = new JsonArrayStream(body("[{\"name\": \"a\"}, 2, \"three\", [4], null]"))) {
+            assertEquals("a", stream.nextObject().getString("name"));
+            assertEquals(2, stream.next());
+            assertEquals("three", stream.next());
+            assertEquals(4, ((JSONArray) stream.next()).getInt(0));
+            assertEquals(JSONObject.NULL, stream.next());
+            assertFalse(stream.hasNext());
+            assertTrue(stream.isComplete());
+            assertEquals(5, stream.count());
+        }
+    }
+
+    @Test
+    void emptyArrayHasNoElements() throws IOException {
+        try (JsonArrayStream stream = new JsonArrayStream(body("  [ ] "))) {
+            assertFalse(stream.hasNext());
+            assertTrue(stream.isComplete());
+            assertThrows(NoSuchElementException.class, stream::next);
+        }
+    }
+
+    @Test
+    void hasNextDoesNotConsumeTheElement() throws IOException {
+        try (JsonArrayStream stream = new JsonArrayStream(body("[1, 2]"))) {
+            assertTrue(stream.hasNext());
+            assertTrue(stream.hasNext());
+            assertEquals(1, stream.next());
+            assertEquals(2, stream.next());
+            assertEquals(2, stream.count());
+        }
+    }
+
+    @Test
+    void tracksPeakElementSize() throws IOException {
+        try (JsonArrayStream stream = new JsonArrayStream(body("[{\"a\":1},{\"longer\":\"value\"}]"))) {
+            while (stream.hasNext()) {
+                stream.next();
+            }
+            assertEquals("{\"longer\":\"value\"}".length(), stream.getPeakElementChars());
+            assertEquals("[{\"a\":1},{\"longer\":\"value\"}]".length(), stream.getCharsRead());
+        }
+    }
+
+    @Test
+    void rejectsNonArrayBody() {
+        JsonArrayStream stream = new JsonArrayStream(body("{\"name\": \"a\"}"));
+        assertThrows(JSONException.class, stream::hasNext);
+    }
+
+    @Test
+    void rejectsMissingSeparator() throws IOException {
+        try (JsonArrayStream stream = new JsonArrayStream(body("[1 {\"a\": 2}]"))) {
+            assertEquals(1, stream.next());
+            assertThrows(JSONException.class, stream::hasNext);
+        }
+    }
+
+    @Test
+    void nextObjectRejectsOtherValues() throws IOException {
+        try (JsonArrayStream stream = new JsonArrayStream(body("[1]"))) {
+            assertThrows(JSONException.class, stream::nextObject);
+        }
+    }
+
+    @Test
+    void surfacesReadFailuresAsIOException() {
+        InputStream failing = new InputStream() {
+            private int reads;
+
+            @Override
+            public int read() throws IOException {
+                if (reads++ == 0) {
+                    return '[';
+                }
+                throw new ResponseTooLargeException(1);
+            }
+        };
+        JsonArrayStream stream = new JsonArrayStream(failing);
+        assertThrows(ResponseTooLargeException.class, stream::hasNext);
+    }
+
+    @Test
+    void nothingIsReadBeforeFirstHasNext() throws IOException {
+        CountingInputStream counting = new CountingInputStream(body("[1, 2, 3]"));
+        JsonArrayStream stream = new JsonArrayStream(counting);
+        assertEquals(0, counting.reads);
+        stream.close();
+        assertTrue(counting.closed);
+        assertFalse(stream.isComplete());
+    }
+
+    @Test
+    void textPrefixShowsANonArrayBody() {
+        JsonArrayStream stream = new JsonArrayStream(body("{\"error\": \"not implemented\"}"));
+        assertThrows(JSONException.class, stream::hasNext);
+        assertEquals("{\"error\": \"not implemented\"}", stream.readTextPrefix());
+    }
+
+    @Test
+    void textPrefixIsBounded() throws IOException {
+        String element = "{\"name\": \"listing\"}";
+        String json = "[" + (element + ", ").repeat(100) + "}]";
+        try (JsonArrayStream stream = new JsonArrayStream(body(json))) {
+            assertThrows(JSONException.class, () -> {
+                while (stream.hasNext()) {
+                    stream.next();
+                }
+            });
+            String prefix = stream.readTextPrefix();
+            assertEquals(json.substring(0, JsonArrayStream.TEXT_PREFIX_CHARS) + "...", prefix);
+        }
+    }
+
+    @Test
+    void textPrefixOfAShortBodyIsNotMarkedAsCut() throws IOException {
+        try (JsonArrayStream stream = new JsonArrayStream(body("[1, 2"))) {
+            stream.next();
+            stream.next();
+            assertThrows(JSONException.class, stream::hasNext);
+            assertEquals("[1, 2", stream.readTextPrefix());
+        }
+    }
+
+    private static InputStream body(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class CountingInputStream extends InputStream {
+        private final InputStream delegate;
+        private int reads;
+        private boolean closed;
+
+        CountingInputStream(InputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int read() throws IOException {
+            reads++;
+            return delegate.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            reads++;
+            return delegate.read(buffer, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            delegate.close();
+        }
+    }
+}
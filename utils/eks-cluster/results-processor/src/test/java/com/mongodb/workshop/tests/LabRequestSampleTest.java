@@ -0,0 +1,104 @@
+package com.mongodb.workshop.tests;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LabRequestSampleTest {
+
+    private final LabRequestStats stats = new LabRequestStats("crud-1", "/api/test");
+
+    @Test
+    void streamedBodyIsRecordedAtItsLastByteNotWhenClosed() throws Exception {
+        LabRequestSample sample = new LabRequestSample(stats);
+        HttpResponse.BodySubscriber<InputStream> subscriber = sample.recordOnLastByte(HttpResponse.BodySubscribers.ofInputStream(), 200);
+        subscriber.onSubscribe(new NoOpSubscription());
+        byte[] body = "[1, 2, 3]".getBytes(StandardCharsets.UTF_8);
+        sample.addBytes(body.length);
+        subscriber.onNext(List.of(ByteBuffer.wrap(body)));
+        subscriber.onComplete();
+
+        assertEquals(Map.of("200", 1L), stats.getStatusCodes());
+        long recorded = stats.getLatency().getMaxMicros();
+
+        // Work done by the test before it closes the stream is not part of the latency
+        Thread.sleep(200);
+        try (InputStream stream = subscriber.getBody().toCompletableFuture().join()) {
+            assertArrayEquals(body, stream.readAllBytes());
+        }
+        assertEquals(1, stats.getLatency().getCount());
+        assertEquals(recorded, stats.getLatency().getMaxMicros());
+        assertTrue(recorded < 200_000, "latency " + recorded + " us");
+        assertEquals(body.length, stats.getResponseBytes());
+    }
+
+    @Test
+    void streamStoppedEarlyIsRecordedAtItsLastByteReceived() throws Exception {
+        LabRequestSample sample = new LabRequestSample(stats);
+        HttpResponse.BodySubscriber<InputStream> subscriber = sample.recordOnLastByte(HttpResponse.BodySubscribers.ofInputStream(), 200);
+        NoOpSubscription subscription = new NoOpSubscription();
+        subscriber.onSubscribe(subscription);
+        subscriber.onNext(List.of(ByteBuffer.wrap("[1, ".getBytes(StandardCharsets.UTF_8))));
+
+        Thread.sleep(200);
+        subscriber.getBody().toCompletableFuture().join().close();
+
+        assertTrue(subscription.cancelled);
+        assertEquals(Map.of("200", 1L), stats.getStatusCodes());
+        assertTrue(stats.getLatency().getMaxMicros() < 200_000, "latency " + stats.getLatency().getMaxMicros() + " us");
+    }
+
+    @Test
+    void bodyErrorIsRecordedAsAnError() {
+        LabRequestSample sample = new LabRequestSample(stats);
+        HttpResponse.BodySubscriber<InputStream> subscriber = sample.recordOnLastByte(HttpResponse.BodySubscribers.ofInputStream(), 200);
+        subscriber.onSubscribe(new NoOpSubscription());
+        subscriber.onError(new IOException("Truncated gzip body"));
+        subscriber.onComplete();
+
+        assertEquals(Map.of(LabRequestStats.STATUS_ERROR, 1L), stats.getStatusCodes());
+    }
+
+    @Test
+    void failuresAreRecordedByKind() {
+        new LabRequestSample(stats).fail(new CompletionException(new HttpTimeoutException("request timed out")));
+        new LabRequestSample(stats).fail(new ConnectException("Connection refused"));
+        new LabRequestSample(stats).fail(new ServiceUnavailableException("http://backend:5000", 3));
+        assertEquals(Map.of(LabRequestStats.STATUS_TIMEOUT, 1L, LabRequestStats.STATUS_ERROR, 1L,
+            LabRequestStats.STATUS_UNAVAILABLE, 1L), stats.getStatusCodes());
+    }
+
+    @Test
+    void sampleIsRecordedOnce() {
+        LabRequestSample sample = new LabRequestSample(stats);
+        sample.complete(200);
+        sample.complete(200);
+        sample.fail(new IOException("closed"));
+        assertEquals(1, stats.getLatency().getCount());
+    }
+
+    private static final class NoOpSubscription implements Flow.Subscription {
+        private volatile boolean cancelled;
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
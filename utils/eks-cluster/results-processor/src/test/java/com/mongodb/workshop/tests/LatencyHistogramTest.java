@@ -0,0 +1,84 @@
+package com.mongodb.workshop.tests;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    private static final long MAX_VALUE = (1L << 28) - 1;
+
+    @Test
+    void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileMicros(50));
+        assertEquals(0, histogram.getMeanMicros());
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        for (long value = 0; value < 32; value++) {
+            assertEquals(value, upperBoundOf(value), "value " + value);
+        }
+    }
+
+    @Test
+    void bucketBoundsStayWithinOneSixteenth() {
+        for (long value = 32; value < MAX_VALUE; value = value * 3 / 2 + 1) {
+            long upperBound = upperBoundOf(value);
+            assertTrue(upperBound >= value, "value " + value + " bound " + upperBound);
+            assertTrue(upperBound - value <= value / 16, "value " + value + " bound " + upperBound);
+        }
+    }
+
+    @Test
+    void bucketEdgesSplitPowersOfTwo() {
+        // 32..63 has 16 buckets of width 2, 1024..2047 of width 64
+        assertEquals(33, upperBoundOf(32));
+        assertEquals(35, upperBoundOf(34));
+        assertEquals(63, upperBoundOf(62));
+        assertEquals(1087, upperBoundOf(1024));
+        assertEquals(1087, upperBoundOf(1087));
+        assertEquals(1151, upperBoundOf(1088));
+        assertEquals(2047, upperBoundOf(2047));
+    }
+
+    @Test
+    void valuesAreClampedToTheRange() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(0, histogram.getPercentileMicros(50));
+        assertEquals(MAX_VALUE, histogram.getPercentileMicros(100));
+        assertEquals(MAX_VALUE, histogram.getMaxMicros());
+    }
+
+    @Test
+    void percentilesFollowTheRecordedDistribution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long millis = 1; millis <= 100; millis++) {
+            histogram.record(millis * 1000);
+        }
+        assertWithin(50_000, histogram.getPercentileMicros(50));
+        assertWithin(95_000, histogram.getPercentileMicros(95));
+        assertWithin(99_000, histogram.getPercentileMicros(99));
+        assertEquals(100_000, histogram.getPercentileMicros(100));
+        assertEquals(50_500, histogram.getMeanMicros(), 0.001);
+        assertEquals(100, histogram.getCount());
+    }
+
+    /**
+     * Gets the upper bound of the bucket holding a value, by recording it below a larger one
+     */
+    private static long upperBoundOf(long value) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(value);
+        histogram.record(MAX_VALUE);
+        return histogram.getPercentileMicros(50);
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual - expected <= expected / 16, "expected about " + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,130 @@
+package com.mongodb.workshop.tests;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServiceCircuitBreakerTest {
+
+    private ServiceCircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        ServiceCircuitBreaker.configure(3);
+        // Breakers are process-wide, so every test gets a service of its own
+        breaker = ServiceCircuitBreaker.forService("http://" + UUID.randomUUID() + ":5000");
+    }
+
+    @Test
+    void opensAfterConsecutiveConnectionFailures() {
+        breaker.recordError(new ConnectException("Connection refused"));
+        breaker.recordError(new HttpConnectTimeoutException("HTTP connect timed out"));
+        assertFalse(breaker.isOpen());
+        breaker.recordError(new SocketException("Connection reset"));
+        assertTrue(breaker.isOpen());
+        assertThrows(ServiceUnavailableException.class, breaker::beforeRequest);
+    }
+
+    @Test
+    void opensAfterConsecutiveGatewayErrors() {
+        breaker.recordResponse(502);
+        breaker.recordResponse(503);
+        breaker.recordResponse(504);
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    void requestTimeoutsDoNotCount() {
+        for (int i = 0; i < 5; i++) {
+            breaker.recordError(new HttpTimeoutException("request timed out"));
+        }
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    void otherErrorsDoNotCount() {
+        for (int i = 0; i < 5; i++) {
+            breaker.recordError(new IOException("HTTP/1.1 header parser received no bytes"));
+            breaker.recordError(new CancellationException());
+            breaker.recordResponse(500);
+        }
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    void anyOtherResponseResetsTheCount() {
+        breaker.recordResponse(503);
+        breaker.recordResponse(503);
+        breaker.recordResponse(404);
+        breaker.recordResponse(503);
+        breaker.recordResponse(503);
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    void responseTooLargeShowsTheServiceAnswered() {
+        breaker.recordResponse(503);
+        breaker.recordResponse(503);
+        breaker.recordError(new ResponseTooLargeException(1024));
+        breaker.recordResponse(503);
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    void halfOpenLetsOneProbeThrough() throws Exception {
+        openBreaker();
+        breaker.halfOpen();
+        assertFalse(breaker.isOpen());
+
+        breaker.beforeRequest();
+        assertThrows(ServiceUnavailableException.class, breaker::beforeRequest);
+
+        breaker.recordResponse(200);
+        breaker.beforeRequest();
+        breaker.beforeRequest();
+    }
+
+    @Test
+    void failedProbeReopensTheBreaker() throws Exception {
+        openBreaker();
+        breaker.halfOpen();
+        breaker.beforeRequest();
+        breaker.recordError(new CompletionException(new ConnectException("Connection refused")));
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    void zeroThresholdDisablesTheBreaker() {
+        ServiceCircuitBreaker.configure(0);
+        for (int i = 0; i < 10; i++) {
+            breaker.recordError(new ConnectException("Connection refused"));
+        }
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    void classifiesConnectionFailuresThroughCauses() {
+        assertTrue(ServiceCircuitBreaker.isConnectionFailure(new ConnectException()));
+        assertTrue(ServiceCircuitBreaker.isConnectionFailure(new IOException("wrapped", new ConnectException())));
+        assertTrue(ServiceCircuitBreaker.isConnectionFailure(new IOException("Connection reset by peer")));
+        assertFalse(ServiceCircuitBreaker.isConnectionFailure(new HttpTimeoutException("request timed out")));
+        assertFalse(ServiceCircuitBreaker.isConnectionFailure(new IOException("closed")));
+    }
+
+    private void openBreaker() {
+        for (int i = 0; i < 3; i++) {
+            breaker.recordError(new ConnectException("Connection refused"));
+        }
+        assertTrue(breaker.isOpen());
+    }
+}